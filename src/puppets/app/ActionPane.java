@@ -70,6 +70,9 @@ public class ActionPane extends ViewOwner {
      */
     protected void initUI()
     {
+        // Fit actions to puppet in background (from cache if available) - ActionView fits lazily until then
+        _appPane.getPuppet().getFitCache().fitActionsLater(_actions.getActions());
+
         // Create ActionView
         _actView = new ActionView(_appPane.getPuppet());
         _actView.addEventFilter(e -> _actView.setTimeless(true), MouseRelease);
@@ -161,7 +164,6 @@ public class ActionPane extends ViewOwner {
             int ind2 = ind<_actions.getActionCount() ? ind : _actions.getActionCount()-1;
             PuppetAction action = ind2>=0 ? _actions.getAction(ind2) : null;
             setActionAndMove(action, null);
-            _actions.saveActions();
         }
 
         // Handle MoveUpActionMenu, MoveDownActionMenu
@@ -170,7 +172,6 @@ public class ActionPane extends ViewOwner {
             int ind2 = anEvent.equals("MoveUpActionMenu") ? (ind-1) : (ind+1);
             PuppetAction action = _actions.removeAction(ind); _actions.addAction(action, ind2);
             setActionAndMove(action, _moveTable.getSelItem());
-            _actions.saveActions();
         }
 
         // Handle MoveTable
@@ -187,7 +188,7 @@ public class ActionPane extends ViewOwner {
             if (pose==null) { pose = _actView.getPose(); pose.setName(name); }
             PuppetMove move = action.addMoveForPoseAndTime(pose, 200);
             setActionAndMove(action, move);
-            _actions.saveActions();
+            _actions.actionDidChange(action);
         }
 
         // Handle CopyMoveMenu
@@ -204,7 +205,7 @@ public class ActionPane extends ViewOwner {
             int ind = _moveTable.getSelIndex() + 1;
             action.addMove(move, ind);
             setActionAndMove(action, move);
-            _actions.saveActions();
+            _actions.actionDidChange(action);
         }
 
         // Handle PastePoseMenu
@@ -213,7 +214,7 @@ public class ActionPane extends ViewOwner {
             PuppetMove srcMove = _copyMove!=null ? _copyMove.clone() : null; if (srcMove==null) { beep(); return; }
             PuppetMove dstMove = _moveTable.getSelItem(); if (dstMove==null) { beep(); return; }
             action.replacePose(dstMove.getPoseName(), srcMove.getPose());
-            _actions.saveActions();
+            _actions.actionDidChange(action);
             _actView.setPose(dstMove.getPose());
         }
 
@@ -224,7 +225,7 @@ public class ActionPane extends ViewOwner {
             action.removeMove(ind);
             int ind2 = ind<action.getMoveCount() ? ind : action.getMoveCount()-1;
             setActionAndMove(action, ind2>=0 ? action.getMove(ind2) : null);
-            _actions.saveActions();
+            _actions.actionDidChange(action);
         }
 
         // Handle MoveUpMoveMenu, MoveDownMoveMenu
@@ -234,7 +235,7 @@ public class ActionPane extends ViewOwner {
             int ind2 = anEvent.equals("MoveUpMoveMenu") ? (ind-1) : (ind+1);
             PuppetMove move = action.removeMove(ind); action.addMove(move, ind2);
             setActionAndMove(action, move);
-            _actions.saveActions();
+            _actions.actionDidChange(action);
         }
 
         // Handle PlayButton
@@ -269,7 +270,7 @@ public class ActionPane extends ViewOwner {
         if (col==1) {
             move.setTime(Integer.valueOf(text));
             _moveTable.updateItems(move);
-            _actions.saveActions();
+            _actions.actionDidChange(_actionList.getSelItem());
             resetLater();
         }
     }
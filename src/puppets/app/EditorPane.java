@@ -66,6 +66,13 @@ public void setPuppet(Puppet aPuppet)
 {
     _puppet = aPuppet;
     
+    // Start decoding part images in parallel and fitting actions to puppet in background (so action/sprite panes
+    // are ready when shown)
+    if(aPuppet!=null) {
+        aPuppet.preloadImages();
+        aPuppet.getFitCache().fitActionsLater(PuppetUtils.getActionFile().getActions());
+    }
+    
     if(!isUISet()) return;
     
     _pupView.setPuppet(aPuppet);
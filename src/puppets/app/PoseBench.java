@@ -0,0 +1,175 @@
+package puppets.app;
+import java.lang.management.*;
+import java.util.*;
+import java.util.function.IntSupplier;
+import puppets.puppet.*;
+import snap.geom.Point;
+
+/**
+ * A benchmark to measure time and allocation of sampling action poses into a reused pose (as for baking/playback),
+ * both from actions and from actions fit to reference puppet at view scale (as ActionView does when posing by
+ * kinematics). Exits with non-zero status if warm sampling allocates.
+ */
+public class PoseBench {
+
+/**
+ * Main method: optional args are number of passes over actions and frame step in millis.
+ */
+public static void main(String args[])
+{
+    // Get passes and step
+    int passes = args.length>0? Integer.parseInt(args[0]) : 200;
+    int step = args.length>1? Integer.parseInt(args[1]) : 25;
+    
+    // Get actions (or test action if no action file)
+    List <PuppetAction> actions0 = PuppetUtils.getActionFile().getActions();
+    List <PuppetAction> actions = actions0.size()>0? actions0 : Collections.singletonList(getTestAction());
+    
+    // Get actions fit to reference puppet (if any) and scale of default imager puppet height
+    PuppetActionFit fits[] = getFits(actions);
+    double scale = PuppetView.getScaleForHeight(PuppetImager.DEFAULT_HEIGHT);
+    
+    // Warm up (compiles timelines, caches packed move poses and lets JIT settle)
+    PackedPose pose = new PackedPose();
+    sampleActions(actions, pose, step, 20);
+    if(fits!=null) sampleFits(fits, scale, pose, step, 20);
+    
+    // Sample actions and fits and measure time and allocation
+    System.out.println("PoseBench: " + actions.size() + " actions");
+    boolean allocs = measure("actions", () -> sampleActions(actions, pose, step, passes));
+    if(fits!=null) allocs |= measure("fits", () -> sampleFits(fits, scale, pose, step, passes));
+    else System.out.println("PoseBench: No reference puppet, so fits not measured");
+    
+    // If warm sampling allocated, complain and exit with error status
+    if(allocs) { System.err.println("PoseBench: Warm sampling allocates"); System.exit(1); }
+}
+
+/**
+ * Runs given sampling (which returns frame count) a few times, prints time and allocation per frame of steady state
+ * run (least allocation, since first runs can include one time JIT allocations) and returns whether it allocated.
+ */
+static boolean measure(String aName, IntSupplier aRun)
+{
+    // Run and measure time and allocation (less allocation of measuring itself) and keep run with least allocation
+    long overhead = getAllocatedBytesOverhead(), bytes = Long.MAX_VALUE, nanoTime = 0; int frames = 0;
+    for(int i=0;i<3;i++) {
+        long bytes0 = getAllocatedBytes(), time0 = System.nanoTime();
+        int frms = aRun.getAsInt();
+        long time1 = System.nanoTime(), bytes1 = getAllocatedBytes();
+        long byts = Math.max(bytes1 - bytes0 - overhead, 0);
+        if(byts<bytes) { bytes = byts; nanoTime = time1 - time0; frames = frms; }
+    }
+    
+    // Print results and return whether allocated
+    double nanos = nanoTime/(double)frames;
+    String bytesStr = overhead>=0? String.format("%.2f", bytes/(double)frames) : "n/a";
+    System.out.println(String.format("PoseBench: %s: %d frames, %.1f ns/frame, %s bytes allocated/frame", aName,
+        frames, nanos, bytesStr));
+    return overhead>=0 && bytes>0;
+}
+
+/**
+ * Samples given actions at given step for given number of passes and returns frame count.
+ */
+static int sampleActions(List <PuppetAction> theActions, PackedPose aPose, int aStep, int aPasses)
+{
+    int frames = 0;
+    for(int p=0; p<aPasses; p++)
+        for(int i=0, iMax=theActions.size(); i<iMax; i++) { PuppetAction action = theActions.get(i);
+            for(int t=0, tMax=action.getMaxTime(); t<=tMax; t+=aStep) {
+                action.getPackedPoseForTime(t, aPose);
+                frames++;
+            }
+        }
+    return frames;
+}
+
+/**
+ * Samples given fits at given scale and step for given number of passes and returns frame count.
+ */
+static int sampleFits(PuppetActionFit theFits[], double aScale, PackedPose aPose, int aStep, int aPasses)
+{
+    int frames = 0;
+    for(int p=0; p<aPasses; p++)
+        for(PuppetActionFit fit : theFits) {
+            for(int t=0, tMax=fit.getAction().getMaxTime(); t<=tMax; t+=aStep) {
+                fit.getPoseForTime(t, aScale, aPose);
+                frames++;
+            }
+        }
+    return frames;
+}
+
+/**
+ * Returns given actions fit to reference puppet (or null if no puppets).
+ */
+static PuppetActionFit[] getFits(List <PuppetAction> theActions)
+{
+    // Get reference puppet (just return if none) and wait for it to load
+    PuppetUtils.PuppetFile pfile = PuppetUtils.getPuppetFile(); if(pfile.getPuppetCount()==0) return null;
+    Puppet puppet = pfile.getPuppet(0);
+    puppet.getLoadFuture().join();
+    
+    // Get fit for each action
+    PuppetActionFit fits[] = new PuppetActionFit[theActions.size()];
+    for(int i=0;i<fits.length;i++) fits[i] = puppet.getFitCache().getFit(theActions.get(i));
+    return fits;
+}
+
+/**
+ * Returns the bytes allocated by measuring allocated bytes (least of a few tries, or -1 if not supported by VM).
+ */
+static long getAllocatedBytesOverhead()
+{
+    if(getAllocatedBytes()<0) return -1;
+    long overhead = Long.MAX_VALUE;
+    for(int i=0;i<5;i++) { long bytes0 = getAllocatedBytes(), bytes1 = getAllocatedBytes();
+        overhead = Math.min(overhead, bytes1 - bytes0); }
+    return overhead;
+}
+
+/**
+ * Returns the bytes allocated by current thread (or -1 if not supported by VM).
+ */
+static long getAllocatedBytes()
+{
+    ThreadMXBean tbean = ManagementFactory.getThreadMXBean();
+    if(tbean instanceof com.sun.management.ThreadMXBean)
+        return ((com.sun.management.ThreadMXBean)tbean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    return -1;
+}
+
+/**
+ * Returns a test action that swings limbs between two poses (for when there is no action file).
+ */
+static PuppetAction getTestAction()
+{
+    PuppetAction action = new PuppetAction("Test");
+    action.addMoveForPoseAndTime(getTestPose("Pose1", 1), 500);
+    action.addMoveForPoseAndTime(getTestPose("Pose2", -1), 500);
+    action.addMoveForPoseAndTime(action.getPose(0), 500);
+    return action;
+}
+
+/**
+ * Returns a test pose with each outer joint hanging from previous joint at an angle.
+ */
+static PuppetPose getTestPose(String aName, double aSwing)
+{
+    // Get schema and pose
+    PuppetSchema schema = new PuppetSchema();
+    PuppetPose pose = new PuppetPose(aName);
+    
+    // Iterate over root joints and add point for each joint in chain
+    for(int i=0, iMax=schema.getRootJointCount(); i<iMax; i++) {
+        double x = (i - 2)*20, y = i==0? 150 : 100;
+        for(String name = schema.getRootJointName(i); name!=null; name = schema.getNextJointNameForName(name)) {
+            pose.setMarkerPoint(name, new Point(x, y));
+            double ang = -Math.PI/2 + aSwing*(i - 2)*.2;
+            x += Math.cos(ang)*40; y += Math.sin(ang)*40;
+        }
+    }
+    return pose;
+}
+
+}
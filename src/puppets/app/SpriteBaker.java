@@ -0,0 +1,295 @@
+package puppets.app;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import puppets.puppet.*;
+import snap.geom.Insets;
+import snap.gfx.Image;
+
+/**
+ * A headless command line tool to bake sprite frames for puppets and actions at given heights.
+ *
+ * Usage: SpriteBaker [-root dir] [-puppets file] [-actions file] [-puppet names] [-action names]
+ *     [-heights 200,400] [-insets n] [-workers n] [-atlas]
+ *     [-adaptive px] [-maxinterval ms] [-binary] -out dir
+ *
+ * Frames are written as PNG files to out/Puppet/Height/Action_NNN.png (or with -atlas, as trimmed sprite atlas
+ * pages to out/Puppet/Height/Action_N.png with frame table in out/Puppet/Height/Action.xml). With -binary, puppet
+ * binary files (.pupb, next to .pup files) are written first, so later loads read one mapped file.
+ */
+public class SpriteBaker {
+
+    // The puppets and actions to bake
+    List <Puppet>        _puppets = new ArrayList();
+    List <PuppetAction>  _actions = new ArrayList();
+    
+    // The puppet heights to bake
+    List <Double>        _heights = new ArrayList();
+    
+    // The insets around puppet in frames
+    Insets               _insets = Insets.EMPTY;
+    
+    // The output directory
+    File                 _outDir;
+    
+    // Whether to write frames as sprite atlas
+    boolean              _atlas;
+    
+    // Whether to write puppet binary files
+    boolean              _binary;
+    
+    // The number of frames written, frames rendered and bytes written
+    AtomicInteger        _frameCount = new AtomicInteger(), _renderCount = new AtomicInteger();
+    long                 _byteCount;
+    
+    // The number of jobs that failed
+    AtomicInteger        _failCount = new AtomicInteger();
+
+/**
+ * Main method.
+ */
+public static void main(String args[])
+{
+    // Run without display and set graphics environment explicitly (there's no app window to do it)
+    System.setProperty("java.awt.headless", "true");
+    snap.swing.AWTEnv.set();
+    
+    // Get args (print usage and exit on unknown arg, missing value or bad number)
+    String root = null, pupPath = null, actPath = null, pupNames = null, actNames = null, out = null;
+    List <Double> heights = Collections.singletonList(400d); int insets = 0, workers = 0;
+    boolean atlas = false, binary = false; double adaptive = 0; int maxInterval = 0;
+    try {
+        for(int i=0;i<args.length;i++) { String arg = args[i];
+            switch(arg) {
+                case "-root": root = getArg(args, i++); break;
+                case "-puppets": pupPath = getArg(args, i++); break;
+                case "-actions": actPath = getArg(args, i++); break;
+                case "-puppet": pupNames = getArg(args, i++); break;
+                case "-action": actNames = getArg(args, i++); break;
+                case "-heights": heights = new ArrayList();
+                    for(String h : getArg(args, i++).split(",")) heights.add(getNumber(arg, h.trim()));
+                    break;
+                case "-insets": insets = (int)getNumber(arg, getArg(args, i++)); break;
+                case "-workers": workers = (int)getNumber(arg, getArg(args, i++)); break;
+                case "-atlas": atlas = true; break;
+                case "-binary": binary = true; break;
+                case "-adaptive": adaptive = getNumber(arg, getArg(args, i++)); break;
+                case "-maxinterval": maxInterval = (int)getNumber(arg, getArg(args, i++)); break;
+                case "-out": out = getArg(args, i++); break;
+                default: throw new IllegalArgumentException("Unknown arg: " + arg);
+            }
+        }
+        if(out==null) throw new IllegalArgumentException("No output dir");
+    }
+    catch(IllegalArgumentException e) { printUsage(e.getMessage()); System.exit(1); }
+    
+    // Set root and file paths
+    if(root!=null) PuppetUtils.ROOT = root.endsWith("/")? root : root + '/';
+    if(pupPath!=null) PuppetUtils.getPuppetFile().setPath(pupPath);
+    if(actPath!=null) PuppetUtils.getActionFile().setPath(actPath);
+    if(workers>0) PuppetImager.setWorkerCount(workers);
+    if(adaptive>0) PuppetImager.setAdaptiveThreshold(adaptive);
+    if(maxInterval>0) PuppetImager.setAdaptiveMaxInterval(maxInterval);
+    
+    // Create baker and configure
+    SpriteBaker baker = new SpriteBaker();
+    baker._outDir = new File(out);
+    baker._insets = new Insets(insets);
+    baker._atlas = atlas;
+    baker._binary = binary;
+    baker._heights.addAll(heights);
+    
+    // Get puppets (all or named)
+    PuppetUtils.PuppetFile pfile = PuppetUtils.getPuppetFile();
+    if(pupNames==null) for(int i=0;i<pfile.getPuppetCount();i++) baker._puppets.add(pfile.getPuppet(i));
+    else for(String name : pupNames.split(",")) { Puppet pup = pfile.getPuppetForName(name.trim());
+        if(pup!=null) baker._puppets.add(pup); else System.err.println("SpriteBaker: Puppet not found: " + name); }
+    
+    // Composite ORA stacks at the largest scale they will be drawn at (no need for full resolution)
+    double scale = Math.min(PuppetView.getScaleForHeight(Collections.max(baker._heights)), 1);
+    for(Puppet pup : baker._puppets)
+        for(Puppet p = pup; p!=null; p = p.getParent())
+            if(p instanceof ORAPuppet) ((ORAPuppet)p).setCompositeScale(scale);
+    
+    // Get actions (all or named)
+    PuppetUtils.ActionFile afile = PuppetUtils.getActionFile();
+    if(actNames==null) baker._actions.addAll(afile.getActions());
+    else for(String name : actNames.split(",")) { PuppetAction act = afile.getActionForName(name.trim());
+        if(act!=null) baker._actions.add(act); else System.err.println("SpriteBaker: Action not found: " + name); }
+    
+    // Bake and exit with failure if any jobs failed
+    baker.bake();
+    System.exit(baker._failCount.get()>0? 2 : 0);
+}
+
+/**
+ * Bakes all puppet/action/height combinations in parallel and prints summary.
+ */
+public void bake()
+{
+    // Decode part images in parallel and wait for puppets (and reference puppet that fits are relative to) to load,
+    // so fits are complete and cached
+    List <CompletableFuture> loads = new ArrayList();
+    Puppet refPuppet = PuppetUtils.getPuppetFile().getPuppet(0);
+    loads.add(refPuppet.preloadImages()); loads.add(refPuppet.getLoadFuture());
+    for(Puppet puppet : _puppets) { loads.add(puppet.preloadImages()); loads.add(puppet.getLoadFuture()); }
+    CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).join();
+    
+    // If requested, write puppet binary files
+    if(_binary)
+        for(Puppet puppet : _puppets) if(PuppetBinary.getBinaryFile(puppet)!=null) PuppetBinary.write(puppet);
+    
+    // Fit actions to puppets up front (in parallel, and from cache if available)
+    for(Puppet puppet : _puppets)
+        puppet.getFitCache().fitActions(_actions);
+    
+    // Limit jobs in flight (so finished frames don't pile up in memory waiting to be written)
+    int jobCount = _puppets.size()*_actions.size()*_heights.size();
+    Semaphore inFlight = new Semaphore(PuppetImager.getWorkerCount()*2);
+    List <CompletableFuture> futures = new ArrayList(jobCount);
+    System.out.println("SpriteBaker: Baking " + jobCount + " jobs with " + PuppetImager.getWorkerCount() + " workers");
+    
+    // Iterate over combinations and submit imager for each (frames are written by worker when done)
+    long time0 = System.nanoTime();
+    for(Puppet puppet : _puppets)
+    for(double height : _heights)
+    for(PuppetAction action : _actions) {
+        inFlight.acquireUninterruptibly();
+        PuppetImager imager = PuppetImager.getImager(puppet, action, height/PuppetImager.DEFAULT_HEIGHT, _insets,
+            PuppetImager.PRIORITY_DEFAULT, _atlas);
+        CompletableFuture future = imager.getFuture().handle((img, exc) -> {
+            try { if(exc!=null) jobFailed(imager, exc); else writeFrames(imager, height); }
+            finally { inFlight.release(); }
+            return null;
+        });
+        futures.add(future);
+    }
+    
+    // Wait for all jobs
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    long time1 = System.nanoTime();
+    
+    // Print summary
+    double secs = (time1 - time0)/1e9;
+    int frames = _frameCount.get();
+    System.out.println(String.format("SpriteBaker: %d frames (%d jobs, %d failed) in %.2f s: %.1f frames/s, %.1f MB written",
+        frames, jobCount, _failCount.get(), secs, frames/secs, _byteCount/1e6));
+    System.out.println(String.format("SpriteBaker: %d frames rendered (%d repeated or cached frames skipped)",
+        _renderCount.get(), frames - _renderCount.get()));
+    System.out.println(String.format("SpriteBaker: Peak heap %.1f MB", getPeakHeapBytes()/1e6));
+    for(Puppet puppet : _puppets)
+        System.out.println(String.format("SpriteBaker: %s: part images preloaded in %.1f ms", puppet.getName(),
+            puppet.getPreloadTime()));
+}
+
+/**
+ * Writes frames for given finished imager.
+ */
+void writeFrames(PuppetImager anImager, double aHeight)
+{
+    // Get frame dir
+    String hstr = aHeight==Math.rint(aHeight)? String.valueOf((int)aHeight) : String.valueOf(aHeight);
+    File dir = new File(_outDir, anImager.getPuppet().getName() + '/' + hstr);
+    if(!dir.isDirectory() && !dir.mkdirs()) { jobFailed(anImager, new IOException("Can't create dir " + dir)); return; }
+    
+    // Add rendered frames (frames read from cache weren't rendered)
+    PuppetFramePlan plan = anImager.getFramePlan();
+    if(plan!=null) _renderCount.addAndGet(plan.getKeyFrameCount());
+    
+    // If atlas, write pages and frame table
+    String aname = anImager.getAction().getName();
+    SpriteAtlas atlas = anImager.getAtlas();
+    if(atlas!=null) {
+        for(int i=0;i<atlas.getPageCount();i++)
+            if(!writeBytes(anImager, new File(dir, aname + '_' + i + ".png"), atlas.getPage(i).getBytesPNG())) return;
+        if(!writeBytes(anImager, new File(dir, aname + ".xml"), atlas.toXML(null).getBytes())) return;
+        _frameCount.addAndGet(atlas.getFrameCount());
+        return;
+    }
+    
+    // Iterate over images and write as PNG (repeated frames reuse image, so just reuse bytes)
+    List <Image> images = anImager.getImages(); byte bytes[] = null;
+    for(int i=0;i<images.size();i++) {
+        if(i==0 || images.get(i)!=images.get(i-1)) bytes = images.get(i).getBytesPNG();
+        File file = new File(dir, String.format("%s_%03d.png", aname, i));
+        if(!writeBytes(anImager, file, bytes)) return;
+        _frameCount.incrementAndGet();
+    }
+}
+
+/**
+ * Writes given bytes to given file for imager (returns false if failed).
+ */
+boolean writeBytes(PuppetImager anImager, File aFile, byte theBytes[])
+{
+    try (OutputStream out = new FileOutputStream(aFile)) { out.write(theBytes); }
+    catch(IOException e) { jobFailed(anImager, e); return false; }
+    synchronized (this) { _byteCount += theBytes.length; }
+    return true;
+}
+
+/**
+ * Called when a job fails.
+ */
+void jobFailed(PuppetImager anImager, Throwable anExc)
+{
+    System.err.println("SpriteBaker: Failed " + anImager.getPuppet().getName() + ' ' + anImager.getAction().getName() +
+        ": " + anExc);
+    _failCount.incrementAndGet();
+}
+
+/**
+ * Returns the sum of peak usage of heap memory pools.
+ */
+static long getPeakHeapBytes()
+{
+    long bytes = 0;
+    for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        if(pool.getType()==MemoryType.HEAP && pool.getPeakUsage()!=null)
+            bytes += pool.getPeakUsage().getUsed();
+    return bytes;
+}
+
+/**
+ * Returns the value for arg at given index (throws IllegalArgumentException if missing).
+ */
+static String getArg(String args[], int anIndex)
+{
+    if(anIndex+1>=args.length || args[anIndex+1].startsWith("-") && !isNumber(args[anIndex+1]))
+        throw new IllegalArgumentException("Missing value for " + args[anIndex]);
+    return args[anIndex+1];
+}
+
+/**
+ * Returns the number for given arg and value (throws IllegalArgumentException if not a non-negative number).
+ */
+static double getNumber(String anArg, String aValue)
+{
+    double value = isNumber(aValue)? Double.parseDouble(aValue) : -1;
+    if(!(value>=0)) throw new IllegalArgumentException("Bad value for " + anArg + ": " + aValue);
+    return value;
+}
+
+/**
+ * Returns whether given string is a number.
+ */
+static boolean isNumber(String aStr)
+{
+    try { Double.parseDouble(aStr); return true; }
+    catch(NumberFormatException e) { return false; }
+}
+
+/**
+ * Prints usage with given message.
+ */
+static void printUsage(String aMsg)
+{
+    System.err.println("SpriteBaker: " + aMsg);
+    System.err.println("Usage: SpriteBaker [-root dir] [-puppets file] [-actions file] [-puppet names] " +
+        "[-action names] [-heights 200,400] [-insets n] [-workers n] [-atlas] [-adaptive px] [-maxinterval ms] " +
+        "[-binary] -out dir");
+}
+
+}
@@ -2,7 +2,6 @@ package puppets.app;
 import puppets.puppet.*;
 import java.util.*;
 
-import snap.geom.Transform;
 import snap.view.*;
 import snap.gfx.*;
 
@@ -14,8 +13,11 @@ public class SpritePane extends ViewOwner {
     // The AppPane
     AppPane                  _appPane;
     
-    // The image view
-    ImageView                _imgView;
+    // The atlas view
+    SpriteAtlasView          _atlasView;
+    
+    // The preview view (plays frames streamed on demand while atlas is rendered)
+    PuppetFrameStreamView    _previewView;
     
     // A ListView to show actions
     ListView <PuppetAction>  _actionList;
@@ -25,6 +27,15 @@ public class SpritePane extends ViewOwner {
     
     // Whether to loop anim
     boolean                  _loopAnim;
+    
+    // The imager rendering atlas for selected action
+    PuppetImager             _imager;
+    
+    // The puppet height for sprites
+    static final double      SPRITE_HEIGHT = 200;
+    
+    // The number of preview frames rendered ahead of playback
+    static final int         PREVIEW_BUFFER_SIZE = 8;
 
 /**
  * Creates SpritePane.
@@ -39,12 +50,16 @@ public SpritePane(AppPane aAP)
  */
 protected void initUI()
 {
-    // Create ImageView
-    _imgView = new ImageView();
+    // Create AtlasView and PreviewView
+    _atlasView = new SpriteAtlasView(); _atlasView.setBorder(Color.LIGHTGRAY, 1);
+    _previewView = new PuppetFrameStreamView(); _previewView.setBorder(Color.LIGHTGRAY, 1);
     
-    // Get PuppetBox and add ActionView
+    // Get PuppetBox and add AtlasView
     BoxView pupBox = getView("PuppetBox", BoxView.class);
-    pupBox.setContent(_imgView);
+    pupBox.setContent(_atlasView);
+    
+    // Fit actions to puppet in background (from cache if available) - imagers fit lazily until then
+    _appPane.getPuppet().getFitCache().fitActionsLater(PuppetUtils.getActionFile().getActions());
     
     // Set ActionList
     _actionList = getView("ActionList", ListView.class);
@@ -52,7 +67,11 @@ protected void initUI()
     _actionList.setItems(PuppetUtils.getActionFile().getActions());
     _actionList.setSelIndex(0);
     
-    getUI().addPropChangeListener(pc -> runLater(() -> setSpriteImage()), View.Showing_Prop);
+    // Set sprite image when showing (and cancel imager when hidden)
+    getUI().addPropChangeListener(pc -> {
+        if(getUI().isShowing()) runLater(() -> setSpriteImage());
+        else cancelImager();
+    }, View.Showing_Prop);
 }
 
 /**
@@ -78,115 +97,87 @@ protected void respondUI(ViewEvent anEvent)
     // Handle FlipXSwitch
     if(anEvent.equals("FlipXSwitch")) {
         _flipImage = anEvent.getBoolValue();
-        runLater(() -> runLater(() -> setSpriteImage()));
+        _atlasView.setFlipX(_flipImage);
+        _previewView.setFlipX(_flipImage);
     }
 }
 
 /**
- * Sets the sprite image.
+ * Requests the sprite atlas for selected action (cancels request for previous action).
  */
 protected void setSpriteImage()
 {
+    // Cancel previous request and clear atlas (just return if no action)
+    cancelImager();
+    _atlasView.setAtlas(null);
     Puppet puppet = _appPane.getPuppet();
-    PuppetAction action = _actionList.getSelItem();
-    Image img = getImage(puppet, action);
-    if(_flipImage)
-        img = getImagesFlipped(img);
+    PuppetAction action = _actionList.getSelItem(); if(action==null) return;
     
-    // Create/set new ImageView
-    _imgView = new ImageView(img); _imgView.setBorder(Color.LIGHTGRAY, 1);
-    BoxView pupBox = getView("PuppetBox", BoxView.class);
-    pupBox.setContent(_imgView);
+    // Request atlas from imager and set when done
+    double scale = SPRITE_HEIGHT/PuppetImager.DEFAULT_HEIGHT;
+    PuppetImager imager = _imager = PuppetImager.getImager(puppet, action, scale, null, PuppetImager.PRIORITY_VISIBLE,
+        true);
+    imager.getFuture().whenComplete((img, exc) -> runLater(() -> imagerFinished(imager, exc)));
     
-    // Play anim
-    playAnim();
+    // If atlas isn't ready, play preview from frames streamed on demand until it is
+    if(!imager.isDone()) {
+        _previewView.setStream(new PuppetFrameStream(puppet, action, scale, null, PREVIEW_BUFFER_SIZE, false));
+        _previewView.setFlipX(_flipImage);
+        setPreviewShowing(true);
+        _previewView.play(true);
+    }
 }
 
 /**
- * Play anim.
+ * Called when imager finishes to set atlas in AtlasView and play anim.
  */
-void playAnim()
+void imagerFinished(PuppetImager anImager, Throwable anExc)
 {
-    PuppetAction action = _actionList.getSelItem();
-    int time = action.getMaxTime();
-    _imgView.getAnimCleared(time).setValue("Frame", _imgView.getFrameCount()).setLinear().play();
-    if(_loopAnim)
-        _imgView.getAnim(0).setOnFinish(a -> animFinished());
+    // If imager no longer current or cancelled, just return
+    if(anImager!=_imager || anImager.isCancelled()) return;
+    _imager = null; setPreviewShowing(false);
+    
+    // If failed, complain and return
+    if(anExc!=null) {
+        System.err.println("SpritePane: Failed " + anImager.getAction().getName() + ": " + anExc); return; }
+    
+    // Set atlas in AtlasView and play anim
+    _atlasView.setAtlas(anImager.getAtlas());
+    _atlasView.setFlipX(_flipImage);
+    playAnim();
 }
 
 /**
- * Stop Anim.
+ * Cancels current imager request (if any).
  */
-void stopAnim()
+void cancelImager()
 {
-    _imgView.getAnimCleared(0).stop();
-    _imgView.setFrame(0);
+    if(_imager!=null) _imager.cancel();
+    _imager = null; setPreviewShowing(false);
 }
 
 /**
- * Called when anim is done.
+ * Sets whether preview is showing in place of atlas (preview stream is dropped when hidden).
  */
-void animFinished()
+void setPreviewShowing(boolean aValue)
 {
-    if(_loopAnim) {
-        playAnim();
-        //_imgView.setAnimTimeDeep(200);
-    }
+    BoxView pupBox = getView("PuppetBox", BoxView.class);
+    pupBox.setContent(aValue? _previewView : _atlasView);
+    if(!aValue) _previewView.setStream(null);
 }
 
 /**
- * Returns an image for given action.
+ * Play anim.
  */
-public Image getImage(Puppet aPuppet, PuppetAction anAction)
-{
-    ActionView actView = new ActionView(aPuppet);
-    actView.setPuppetHeight(200);
-    actView.setPuppet(aPuppet);
-    actView.setPosable(true);
-    actView.setAction(anAction);
-    actView.setFill(null);
-    actView.setBorder(null);
-    
-    int FRAME_DELAY_MILLIS = 25, frameCount = anAction.getMaxTime()/25 + 1;
-    List <Image> images = new ArrayList();
-    for(int i=0; i<frameCount; i++) {
-        actView.setActionTime(i*25);
-        actView.finishPose();
-        Image img = ViewUtils.getImage(actView);
-        images.add(img);
-    }
-    
-    ImageSet imgSet = new ImageSet(images);
-    Image img = imgSet.getImage(0);
-    return img;
-}
+void playAnim()  { _atlasView.play(_loopAnim); }
 
 /**
- * Returns the flipped image.
+ * Stop Anim.
  */
-public Image getImageFlipped(Image anImage)
+void stopAnim()
 {
-    int w = (int)Math.round(anImage.getWidth()), h = (int)Math.round(anImage.getHeight());
-    Image img = Image.get(w, h, anImage.hasAlpha());
-    Painter pntr = img.getPainter();
-    Transform xfm = new Transform(w/2, h/2); xfm.scale(-1, 1); xfm.translate(-w/2, -h/2);
-    pntr.transform(xfm);
-    pntr.drawImage(anImage, 0, 0);
-    return img;
+    _atlasView.stop();
+    _atlasView.setFrame(0);
 }
 
-/**
- * Returns the flipped image.
- */
-public Image getImagesFlipped(Image anImage)
-{
-    ImageSet iset = anImage.getImageSet();
-    int count = iset.getCount();
-    List <Image> imgs2 = new ArrayList(count);
-    for(int i=0;i<count;i++) { Image img = iset.getImage(i);
-        imgs2.add(getImageFlipped(img)); }
-    ImageSet iset2 = new ImageSet(imgs2);
-    return iset2.getImage(0);
 }
-
-}
\ No newline at end of file
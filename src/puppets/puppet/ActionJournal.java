@@ -0,0 +1,313 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import snap.util.*;
+import snap.web.WebURL;
+
+/**
+ * A class to record edits to an actions XML file as small deltas in an append-only journal file (.journal, next to
+ * actions .xml file), and fold them into the XML file (and binary library) in the background once edits go idle.
+ *
+ * Each record has a sequence number, an op (add, set or remove action at index) and the action XML (for add or set).
+ * The actions XML file stores the sequence number of the last record folded in, so records are only applied once,
+ * even if compaction is interrupted. Unfolded records are replayed when actions are loaded.
+ */
+public class ActionJournal {
+
+    // The actions XML file path
+    String                   _path;
+    
+    // The journal file and journal file being folded into actions XML file
+    File                     _file, _foldFile;
+    
+    // The journal output stream
+    DataOutputStream         _out;
+    
+    // The sequence number of last record
+    int                      _seq;
+    
+    // The scheduled compaction
+    ScheduledFuture          _compactFuture;
+    
+    // The lock held while writing actions XML file
+    final Object             _writeLock = new Object();
+    
+    // The delay after last edit before journal is folded into actions XML file (in millis)
+    private static int       _compactDelay = 2000;
+    
+    // The thread to fold journals into actions XML files
+    private static ScheduledExecutorService  _compactor;
+    
+    // The open journals (folded on exit)
+    private static Set <ActionJournal>  _openJournals = new LinkedHashSet();
+    
+    // Whether exit hook to fold open journals has been added
+    private static boolean   _exitHookAdded;
+    
+    // Constants for record ops
+    public static final byte ADD = 1, SET = 2, REMOVE = 3;
+    
+    // The file extension
+    public static final String EXT = ".journal";
+
+/**
+ * Creates an ActionJournal for given actions XML file path and sequence number of last record folded into it.
+ */
+public ActionJournal(String aPath, int aSeq)
+{
+    _path = aPath; _seq = aSeq;
+    String base = aPath.substring(0, aPath.length() - 4);
+    _file = new File(base + EXT); _foldFile = new File(base + EXT + ".fold");
+    
+    // Add to open journals (and add exit hook to fold their remaining records, if not yet added)
+    synchronized (_openJournals) {
+        _openJournals.add(this);
+        if(!_exitHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> compactOpenJournals(), "ActionJournal-Exit"));
+            _exitHookAdded = true;
+        }
+    }
+}
+
+/**
+ * Returns the journal for given actions XML file path and sequence number (or null if path isn't a local .xml file).
+ */
+public static ActionJournal getJournal(String aPath, int aSeq)
+{
+    if(SnapUtils.isTeaVM || aPath.startsWith("http") || !aPath.endsWith(".xml")) return null;
+    return new ActionJournal(aPath, aSeq);
+}
+
+/**
+ * Returns the sequence number of last record.
+ */
+public synchronized int getSeq()  { return _seq; }
+
+/**
+ * Returns the delay after last edit before journal is folded into actions XML file (in millis).
+ */
+public static int getCompactDelay()  { return _compactDelay; }
+
+/**
+ * Sets the delay after last edit before journal is folded into actions XML file (in millis).
+ */
+public static void setCompactDelay(int aValue)  { _compactDelay = aValue; }
+
+/**
+ * Appends a record for given op, action index and action (null for remove) and schedules compaction.
+ */
+public void append(byte anOp, int anIndex, PuppetAction anAction)
+{
+    // Get action XML bytes (before lock, since it's the slow part)
+    byte bytes[] = anAction!=null? anAction.toXML(null).getBytes() : new byte[0];
+    
+    // Append record and flush (so it survives a crash)
+    synchronized (this) {
+        try {
+            if(_out==null) _out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file, true)));
+            _out.writeInt(++_seq); _out.writeByte(anOp); _out.writeInt(anIndex);
+            _out.writeInt(bytes.length); _out.write(bytes);
+            _out.flush();
+        }
+        catch(IOException e) { System.err.println("ActionJournal.append: " + _file + ": " + e); }
+    }
+    
+    // Schedule compaction
+    compactLater();
+}
+
+/**
+ * Applies records newer than given sequence number to given actions (call when loading actions).
+ */
+public synchronized void replay(List <PuppetAction> theActions, int aSeq)
+{
+    // Get records from file being folded and journal
+    List <Record> records = readRecords(_foldFile); records.addAll(readRecords(_file));
+    
+    // Apply records newer than sequence number
+    int count = 0;
+    for(Record record : records) {
+        if(record._seq<=aSeq) continue;
+        if(record._op==REMOVE) theActions.remove(record._index);
+        else { PuppetAction action = new PuppetAction().fromXML(null, XMLElement.getElement(record._bytes));
+            if(record._op==ADD) theActions.add(record._index, action);
+            else theActions.set(record._index, action); }
+        _seq = Math.max(_seq, record._seq); count++;
+    }
+    
+    // If records were applied, fold them into actions XML file
+    if(count>0) { System.out.println("ActionJournal: Replayed " + count + " edits to " + _path); compactLater(); }
+}
+
+/**
+ * Schedules compaction after compact delay (replacing previously scheduled compaction, so it waits for idle).
+ */
+public synchronized void compactLater()
+{
+    if(_compactFuture!=null) _compactFuture.cancel(false);
+    _compactFuture = getCompactor().schedule(() -> compact(), _compactDelay, TimeUnit.MILLISECONDS);
+}
+
+/**
+ * Folds journal records into actions XML file and binary library (off UI thread, from files, not live actions).
+ */
+public void compact()
+{
+    synchronized (_writeLock) {
+    
+        // Move journal to fold file (unless fold file remains from interrupted compaction) so edits can continue
+        synchronized (this) {
+            if(!_foldFile.exists() && _file.length()>0) {
+                try { if(_out!=null) _out.close(); } catch(IOException e) { }
+                _out = null;
+                if(!_file.renameTo(_foldFile)) { System.err.println("ActionJournal: Can't move " + _file); return; }
+            }
+        }
+        if(!_foldFile.exists()) return;
+    
+        // Read actions XML file elements and sequence number
+        WebURL url = WebURL.getURL(_path);
+        XMLElement actionsXML = url.getText()!=null? XMLElement.getElement(url) : null;
+        List <XMLElement> actionXMLs = actionsXML!=null? new ArrayList(actionsXML.getElements()) : new ArrayList();
+        int seq = actionsXML!=null? actionsXML.getAttributeIntValue("Seq", 0) : 0;
+    
+        // Apply records newer than file
+        for(Record record : readRecords(_foldFile)) {
+            if(record._seq<=seq) continue;
+            if(record._op==REMOVE) actionXMLs.remove(record._index);
+            else { XMLElement actionXML = XMLElement.getElement(record._bytes);
+                if(record._op==ADD) actionXMLs.add(record._index, actionXML);
+                else actionXMLs.set(record._index, actionXML); }
+            seq = record._seq;
+        }
+    
+        // Write actions XML file and library
+        List <PuppetAction> actions = new ArrayList();
+        for(XMLElement actionXML : actionXMLs) actions.add(new PuppetAction().fromXML(null, actionXML));
+        writeActions(_path, actions, seq);
+    
+        // Delete fold file
+        _foldFile.delete();
+    }
+    
+    // If more records came in while folding, fold them later
+    synchronized (this) { if(_file.length()>0 && (_compactFuture==null || _compactFuture.isDone())) compactLater(); }
+}
+
+/**
+ * Closes journal: remaining records are folded in background and journal is no longer folded on exit.
+ */
+public void close()
+{
+    // Remove from open journals and cancel scheduled compaction
+    synchronized (_openJournals) { _openJournals.remove(this); }
+    synchronized (this) { if(_compactFuture!=null) _compactFuture.cancel(false); _compactFuture = null; }
+    
+    // Fold remaining records and close journal output stream
+    getCompactor().execute(() -> {
+        compact();
+        synchronized (this) { try { if(_out!=null) _out.close(); } catch(IOException e) { } _out = null; }
+    });
+}
+
+/**
+ * Folds remaining records of open journals (called on exit).
+ */
+static void compactOpenJournals()
+{
+    List <ActionJournal> journals; synchronized (_openJournals) { journals = new ArrayList(_openJournals); }
+    for(ActionJournal journal : journals) journal.compact();
+}
+
+/**
+ * Writes given actions as actions XML file and library with current sequence number and clears journal.
+ */
+public void save(List <PuppetAction> theActions)
+{
+    synchronized (_writeLock) {
+        int seq; synchronized (this) { seq = _seq; }
+        writeActions(_path, theActions, seq);
+        synchronized (this) {
+            try { if(_out!=null) _out.close(); } catch(IOException e) { }
+            _out = null;
+            _file.delete(); _foldFile.delete();
+        }
+    }
+}
+
+/**
+ * Writes given actions to given actions XML file path and binary library, with given sequence number.
+ */
+public static void writeActions(String aPath, List <PuppetAction> theActions, int aSeq)
+{
+    // Create element for actions and iterate over actions and add each
+    XMLElement actionsXML = new XMLElement("Actions");
+    if(aSeq>0) actionsXML.add("Seq", aSeq);
+    for(PuppetAction action : theActions) {
+        XMLElement actionXML = action.toXML(null);
+        actionsXML.add(actionXML);
+    }
+    
+    // Get as bytes and write to file and write binary library
+    byte bytes[] = actionsXML.getBytes();
+    SnapUtils.writeBytes(bytes, aPath);
+    PuppetActionLibrary.write(aPath, theActions, aSeq);
+}
+
+/**
+ * Reads records from given journal file (stops at truncated record, from crash during write).
+ */
+static List <Record> readRecords(File aFile)
+{
+    List <Record> records = new ArrayList(); if(!aFile.exists()) return records;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(aFile)))) {
+        while(true) {
+            Record record = new Record();
+            record._seq = in.readInt(); record._op = in.readByte(); record._index = in.readInt();
+            record._bytes = new byte[in.readInt()]; in.readFully(record._bytes);
+            records.add(record);
+        }
+    }
+    catch(EOFException e) { }
+    catch(IOException e) { System.err.println("ActionJournal.readRecords: " + aFile + ": " + e); }
+    return records;
+}
+
+/**
+ * Returns the thread to fold journals into actions XML files.
+ */
+private static synchronized ScheduledExecutorService getCompactor()
+{
+    if(_compactor!=null) return _compactor;
+    return _compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ActionJournal");
+        thread.setDaemon(true);
+        return thread;
+    });
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "ActionJournal: " + _file + ", seq=" + _seq; }
+
+/**
+ * A class to describe a journal record.
+ */
+static class Record {
+
+    // The sequence number
+    int       _seq;
+    
+    // The op
+    byte      _op;
+    
+    // The action index
+    int       _index;
+    
+    // The action XML bytes
+    byte      _bytes[];
+}
+
+}
@@ -27,6 +27,12 @@ public class ActionView extends PuppetView {
     
     // The action time when play last started
     int             _startTime;
+    
+    // The pose buffer used to sample action poses
+    PackedPose      _poseBuf = new PackedPose();
+    
+    // The action fit to puppet
+    PuppetActionFit _actFit;
 
     // Constants for properties
     public static final String Action_Prop = "Action";
@@ -148,10 +154,26 @@ protected void setMoveForTime(int aTime)
  */
 protected void setPoseForTime(int aTime)
 {
-    PuppetPose pose = _action.getPoseForTime(getPuppet(), aTime); if(pose==null) return;
+    // If posing by kinematics, set pose from action fit to puppet
+    if(isPosingByKinematics()) {
+        PackedPose pose = getActionFit().getPoseForTime(aTime, _scale, _poseBuf); if(pose==null) return;
+        setPoseFitted(pose); return;
+    }
+    
+    // Otherwise set action pose
+    PackedPose pose = _action.getPackedPoseForTime(aTime, _poseBuf); if(pose==null) return;
     setPose(pose);
 }
 
+/**
+ * Returns the action fit to puppet (refit if action or puppet changed).
+ */
+public PuppetActionFit getActionFit()
+{
+    if(_actFit!=null && _actFit.getPuppet()==getPuppet() && _actFit.isValid(_action)) return _actFit;
+    return _actFit = getPuppet().getFitCache().getFit(_action);
+}
+
 /**
  * Returns whether ActionView is showing pose not associated with current Action/Move.
  */
@@ -224,7 +246,7 @@ void timerFired()
  */
 public void finishPose()
 {
-    _phys.resolveMouseJoints();
+    if(_phys!=null) _phys.resolveMouseJoints();
 }
 
 }
\ No newline at end of file
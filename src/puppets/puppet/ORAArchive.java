@@ -0,0 +1,136 @@
+package puppets.puppet;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * A class to read entries of an ORA (zip) archive directly from a memory-mapped file.
+ *
+ * The central directory is indexed once when opened, and entry bytes are only read (and inflated) when requested.
+ */
+public class ORAArchive {
+
+    // The file
+    File                  _file;
+    
+    // The mapped file bytes
+    MappedByteBuffer      _buf;
+    
+    // The entries by name
+    Map <String,Entry>    _entries = new LinkedHashMap();
+    
+    // Constants for zip record signatures
+    static final int  LOCAL_SIG = 0x04034b50, CENTRAL_SIG = 0x02014b50, END_SIG = 0x06054b50;
+
+/**
+ * Creates an ORAArchive for given file (maps file and indexes central directory).
+ */
+public ORAArchive(File aFile) throws IOException
+{
+    // Map file
+    _file = aFile;
+    try (FileChannel channel = new RandomAccessFile(aFile, "r").getChannel()) {
+        _buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); }
+    _buf.order(ByteOrder.LITTLE_ENDIAN);
+    
+    // Find end of central directory record (search back from end, past max comment length)
+    int end = -1;
+    for(int i=_buf.limit() - 22, iMin=Math.max(_buf.limit() - 22 - 0xffff, 0); i>=iMin && end<0; i--)
+        if(_buf.getInt(i)==END_SIG) end = i;
+    if(end<0) throw new ZipException("No zip central directory: " + aFile);
+    
+    // Get central directory entry count and offset (zip64 archives aren't supported)
+    int count = _buf.getShort(end + 10) & 0xffff;
+    long offset = _buf.getInt(end + 16) & 0xffffffffL;
+    if(offset==0xffffffffL || count==0xffff) throw new ZipException("Zip64 not supported: " + aFile);
+    
+    // Iterate over central directory records and add entry for each
+    int pos = (int)offset;
+    for(int i=0;i<count;i++) {
+        if(_buf.getInt(pos)!=CENTRAL_SIG) throw new ZipException("Bad zip central directory: " + aFile);
+        Entry entry = new Entry();
+        entry._method = _buf.getShort(pos + 10) & 0xffff;
+        entry._compSize = _buf.getInt(pos + 20) & 0xffffffffL;
+        entry._size = _buf.getInt(pos + 24) & 0xffffffffL;
+        int nameLen = _buf.getShort(pos + 28) & 0xffff, extraLen = _buf.getShort(pos + 30) & 0xffff;
+        int commentLen = _buf.getShort(pos + 32) & 0xffff;
+        entry._offset = _buf.getInt(pos + 42) & 0xffffffffL;
+        byte nameBytes[] = new byte[nameLen];
+        ByteBuffer nbuf = _buf.duplicate(); nbuf.position(pos + 46); nbuf.get(nameBytes);
+        entry._name = new String(nameBytes, "UTF-8");
+        _entries.put(entry._name, entry);
+        pos += 46 + nameLen + extraLen + commentLen;
+    }
+}
+
+/**
+ * Returns the file.
+ */
+public File getFile()  { return _file; }
+
+/**
+ * Returns the entry names.
+ */
+public Set <String> getEntryNames()  { return _entries.keySet(); }
+
+/**
+ * Returns whether archive has entry for given name.
+ */
+public boolean hasEntry(String aName)  { return _entries.containsKey(aName); }
+
+/**
+ * Returns the bytes for entry with given name (or null if not found).
+ */
+public byte[] getBytes(String aName)
+{
+    // Get entry (just return if not found)
+    Entry entry = _entries.get(aName); if(entry==null) return null;
+    
+    // Get data start from local header (its name and extra lengths can differ from central directory)
+    int pos = (int)entry._offset;
+    if(_buf.getInt(pos)!=LOCAL_SIG) { System.err.println("ORAArchive: Bad local header: " + aName); return null; }
+    int start = pos + 30 + (_buf.getShort(pos + 26) & 0xffff) + (_buf.getShort(pos + 28) & 0xffff);
+    
+    // Get compressed bytes (duplicate buffer, since position isn't thread safe)
+    byte comp[] = new byte[(int)entry._compSize];
+    ByteBuffer buf = _buf.duplicate(); buf.position(start); buf.get(comp);
+    if(entry._method==0) return comp;
+    
+    // Inflate
+    if(entry._method!=8) { System.err.println("ORAArchive: Unsupported method: " + aName); return null; }
+    Inflater inflater = new Inflater(true); inflater.setInput(comp);
+    byte bytes[] = new byte[(int)entry._size];
+    try {
+        for(int len = 0; len<bytes.length && !inflater.finished(); ) {
+            int n = inflater.inflate(bytes, len, bytes.length - len); len += n;
+            if(n==0 && (inflater.needsInput() || inflater.needsDictionary())) throw new DataFormatException("Truncated");
+        }
+    }
+    catch(DataFormatException e) { System.err.println("ORAArchive: " + aName + ": " + e); return null; }
+    finally { inflater.end(); }
+    return bytes;
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "ORAArchive: " + _file + ", entries=" + _entries.size(); }
+
+/**
+ * A class to describe an entry in archive central directory.
+ */
+static class Entry {
+
+    // The name
+    String    _name;
+    
+    // The compression method (0 = stored, 8 = deflated)
+    int       _method;
+    
+    // The compressed and uncompressed sizes and local header offset
+    long      _compSize, _size, _offset;
+}
+
+}
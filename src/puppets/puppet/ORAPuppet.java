@@ -35,6 +35,7 @@ public void setSource(String aPath)
     
     // Get name
     String name = FilePathUtils.getFileName(aPath); if(name.startsWith("CT")) name = name.substring(2);
+    if(name.toLowerCase().endsWith(".ora")) name = name.substring(0, name.length() - 4);
     setName(name);
     
     // Get stack, body stack and joint stack
@@ -43,6 +44,11 @@ public void setSource(String aPath)
     _jointStack = (Stack)getLayer("RL_Bone_Human");
 }
 
+/**
+ * Sets the scale (pixels per point) that layer stacks are composited at (for parts not yet loaded).
+ */
+public void setCompositeScale(double aScale)  { if(_stack!=null) _stack.setScale(aScale); }
+
 /**
  * Returns the part for given name.
  */
@@ -53,6 +59,11 @@ protected PuppetPart createPart(String aName)
     return new ORAPart(aName, layer);
 }
 
+/**
+ * Returns whether this puppet can create given part (ORA puppets create all parts from layers).
+ */
+protected boolean canCreatePart(String aName)  { return true; }
+
 /**
  * Returns the joint for given name.
  */
@@ -159,13 +170,22 @@ private class ORAPart extends PuppetPart {
     Layer  _lyr;
     
     /** Creates an ORAPart for given layer. */
-    public ORAPart(String aName, Layer aLayer)  { _name = aName; _lyr = aLayer; _x = aLayer.x; _y = aLayer.y; }
+    public ORAPart(String aName, Layer aLayer)
+    {
+        _name = aName; _lyr = aLayer; _x = aLayer.x; _y = aLayer.y;
+        _imageDirty = true; // Image isn't from a part image file
+    }
         
-    /** Returns the image. */
-    protected snap.gfx.Image getImageImpl()  { return _lyr.getImage(); }
+    /** Returns the image (and releases it from layer, since part holds it now). */
+    protected snap.gfx.Image getImageImpl()
+    {
+        snap.gfx.Image img = _lyr.getImage();
+        if(img!=null && img.isLoaded()) _lyr._img = null;
+        return img;
+    }
     
     /** Returns the images that need to be loaded for this part. */
-    protected Loadable getLoadable()  { return _lyr.getLoadable(); }
+    protected Loadable getLoadable()  { return _img!=null? _img : _lyr.getLoadable(); }
 }
 
 }
\ No newline at end of file
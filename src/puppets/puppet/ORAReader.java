@@ -1,4 +1,5 @@
 package puppets.puppet;
+import java.io.*;
 import java.util.*;
 import snap.gfx.*;
 import snap.util.*;
@@ -12,18 +13,35 @@ public class ORAReader {
     // The source path
     String      _srcPath;
     
+    // The archive (if reading from .ora file instead of unpacked directory)
+    ORAArchive  _archive;
+    
     int _indent = -1;
+    
+    // The max size of a stack composite (in pixels)
+    static final int  MAX_COMPOSITE_SIZE = 5000;
+    
+    // The size of the scratch tiles that stacks are composited in before downsampling (in points)
+    static final int  TILE_SIZE = 512;
 
 /**
- * Read file.
+ * Read file (an .ora archive or unpacked directory).
  */
 public Stack readFile(String aPath)
 {
     _srcPath = aPath; //"/tmp/CTLady";
-        
-    WebURL url = WebURL.getURL(_srcPath + "/stack.xml");
+    
+    // If .ora archive, open it (layer images are read from it when needed)
+    if(aPath.toLowerCase().endsWith(".ora")) {
+        try { _archive = new ORAArchive(new File(aPath)); }
+        catch(IOException e) { System.err.println("ORAReader.readFile: " + e); return null; }
+    }
+    
+    // Get stack.xml from archive or directory
+    Object src = _archive!=null? _archive.getBytes("stack.xml") : WebURL.getURL(_srcPath + "/stack.xml");
+    if(src==null) { System.err.println("ORAReader.readFile: stack.xml not found in " + aPath); return null; }
 
-    XMLElement imgXML = XMLElement.getElement(url);
+    XMLElement imgXML = XMLElement.getElement(src);
     XMLElement stackXML = imgXML.getElement(0);
     
     Stack stack = readStack(stackXML);
@@ -66,7 +84,8 @@ Layer readLayer(XMLElement aXML)
     String name = aXML.getAttributeValue("name");
     if(name==null || name.startsWith("Mask")) return null;
     
-    String src = _srcPath + '/' + aXML.getAttributeValue("src");
+    String src = aXML.getAttributeValue("src");
+    if(_archive==null) src = _srcPath + '/' + src;
     String visibility = aXML.getAttributeValue("visibility");
     boolean isVis = visibility.equals("visible");
     if(!isVis) return null;
@@ -75,6 +94,7 @@ Layer readLayer(XMLElement aXML)
     double x = aXML.getAttributeDoubleValue("x");
     double y = aXML.getAttributeDoubleValue("y");
     Layer layer = new Layer(name, src, isVis, x, y);
+    layer.archive = _archive;
     
     //for(int i=0;i<_indent;i++) System.out.print("    "); System.out.println(layer);
     return layer;
@@ -95,6 +115,9 @@ public static class Layer {
     
     public Stack stack;
     
+    // The archive that src is entry of (null if src is file path)
+    public ORAArchive archive;
+    
     Image  _img;
     
     /** Creates an ORA Layer. */
@@ -106,11 +129,12 @@ public static class Layer {
         name = strip(aName); src = aSrc; visible = isVis; x = aX; y = aY;
     }
     
-    /** Returns the image. */
+    /** Returns the image (decoded on first call, from archive entry bytes if from archive). */
     public Image getImage()
     {
         if(_img!=null) return _img;
-        return _img = Image.get(src);
+        Object isrc = archive!=null? archive.getBytes(src) : src; if(isrc==null) return null;
+        return _img = Image.get(isrc);
     }
     
     /** Returns the image(s) that need to be loaded for this layer. */
@@ -134,9 +158,25 @@ public static class Stack extends Layer {
     // The list of layers (or nested stacks) in this stack
     public List <Layer> entries = new ArrayList();
     
+    // The scale (pixels per point) that stack is composited at
+    double  _scale = 1;
+    
     /** Creates an ORA Stack. */
     public Stack(String aName)  { super(aName); }
     
+    /** Returns the scale (pixels per point) that stack is composited at. */
+    public double getScale()  { return _scale; }
+    
+    /**
+     * Sets the scale (pixels per point) that stack and nested stacks are composited at (for instance, the scale
+     * puppet is drawn at). Composites keep the same size in points, so this only changes their resolution.
+     */
+    public void setScale(double aScale)
+    {
+        _scale = aScale;
+        for(Layer entry : entries) if(entry instanceof Stack) ((Stack)entry).setScale(aScale);
+    }
+    
     /** Loads the x/y vals. */
     public void getXY()
     {
@@ -163,25 +203,60 @@ public static class Stack extends Layer {
             my = Math.max(my, entry.y + (int)img.getHeight());
         }
         
-        // Get pixels wide/tall
+        // Get points wide/tall (just return if empty or composite pixel size too big)
         int px = (int)Math.ceil(mx - x);
         int py = (int)Math.ceil(my - y);
-        if(px<1 || py<1 || px>5000 || py>5000) { //System.out.println("Stack.getImage: No image for layer: " + name);
+        if(px<1 || py<1 || Math.ceil(px*_scale)>MAX_COMPOSITE_SIZE || Math.ceil(py*_scale)>MAX_COMPOSITE_SIZE) {
+            //System.out.println("Stack.getImage: No image for layer: " + name);
             return null; }
             
-        // Create image and render layer images in it
-        Image img = Image.get(px, py, true);
+        // Create image at composite scale
+        Image img = Image.getImageForSizeAndScale(px, py, true, _scale);
         Painter pntr = img.getPainter();
-        for(int i=entries.size()-1; i>=0; i--) { Layer entry = entries.get(i);
-            if(!entry.visible) continue;
-            Image im = entry.getImage(); if(im==null) continue;
-            pntr.drawImage(im, entry.x - x, entry.y - y);
+        
+        // If not downsampling, draw visible layer images (back to front) directly
+        if(_scale>=1)
+            drawEntries(pntr, 0, 0, px, py);
+        
+        // Otherwise, draw layer images into full resolution scratch tile and downsample tile into composite
+        else {
+            Image tile = Image.getImageForSizeAndScale(TILE_SIZE, TILE_SIZE, true, 1);
+            Painter tpntr = tile.getPainter();
+            for(int ty=0; ty<py; ty+=TILE_SIZE)
+            for(int tx=0; tx<px; tx+=TILE_SIZE) {
+                int tw = Math.min(TILE_SIZE, px - tx), th = Math.min(TILE_SIZE, py - ty);
+                tpntr.clearRect(0, 0, TILE_SIZE, TILE_SIZE);
+                if(!drawEntries(tpntr, tx, ty, tw, th)) continue;
+                pntr.drawImage(tile, 0, 0, tw, th, tx, ty, tw, th);
+            }
         }
         
+        // Release entry images (full size layers and nested composites), since only composite is needed now
+        for(Layer entry : entries)
+            if(entry._img!=null && entry._img.isLoaded())
+                entry._img = null;
+        
         // Return image
         return _img = img;
     }
     
+    /**
+     * Draws visible layer images (back to front) that intersect given rect of composite, with rect origin at painter
+     * origin. Returns whether any were drawn.
+     */
+    boolean drawEntries(Painter aPntr, double aX, double aY, double aW, double aH)
+    {
+        boolean drawn = false;
+        for(int i=entries.size()-1; i>=0; i--) { Layer entry = entries.get(i);
+            if(!entry.visible) continue;
+            Image im = entry.getImage(); if(im==null) continue;
+            double ex = entry.x - x - aX, ey = entry.y - y - aY;
+            if(ex>=aW || ey>=aH || ex + im.getWidth()<=0 || ey + im.getHeight()<=0) continue;
+            aPntr.drawImage(im, ex, ey); drawn = true;
+        }
+        return drawn;
+    }
+    
     /** Returns the layer with given name. */
     public Layer getLayer(String aName)
     {
@@ -201,6 +276,7 @@ public static class Stack extends Layer {
     /** Returns the image(s) that need to be loaded for this stack. */
     public Loadable getLoadable()
     {
+        if(_img!=null) return _img;
         List <Loadable> list = new ArrayList();
         for(Layer entry : entries) { if(!entry.visible) continue;
             list.add(entry.getLoadable()); }
@@ -0,0 +1,209 @@
+package puppets.puppet;
+import java.util.*;
+import snap.geom.Point;
+
+/**
+ * A pose stored as a packed array of marker coords, laid out as x/y pairs by pose key index (see PuppetSchema).
+ */
+public class PackedPose {
+
+    // The pose name
+    String      _name;
+    
+    // The marker coords, laid out as x/y pairs by pose key index (NaN for missing marker)
+    double      _coords[];
+    
+    // The schema that defines pose key indexes
+    static PuppetSchema  _schema = new PuppetSchema();
+
+/**
+ * Creates a new PackedPose.
+ */
+public PackedPose()
+{
+    _coords = new double[_schema.getPoseKeyCount()*2];
+    Arrays.fill(_coords, Double.NaN);
+}
+
+/**
+ * Creates a new PackedPose for given pose.
+ */
+public PackedPose(PuppetPose aPose)  { this(); setPose(aPose); }
+
+/**
+ * Returns the name.
+ */
+public String getName()  { return _name; }
+
+/**
+ * Sets the name.
+ */
+public void setName(String aName)  { _name = aName; }
+
+/**
+ * Returns the number of markers.
+ */
+public int getCount()  { return _coords.length/2; }
+
+/**
+ * Returns the marker X for given pose key index.
+ */
+public double getX(int anIndex)  { return _coords[anIndex*2]; }
+
+/**
+ * Returns the marker Y for given pose key index.
+ */
+public double getY(int anIndex)  { return _coords[anIndex*2+1]; }
+
+/**
+ * Sets the marker X/Y for given pose key index.
+ */
+public void setXY(int anIndex, double aX, double aY)  { _coords[anIndex*2] = aX; _coords[anIndex*2+1] = aY; }
+
+/**
+ * Returns whether marker is set for given pose key index.
+ */
+public boolean isSet(int anIndex)  { return !Double.isNaN(_coords[anIndex*2]); }
+
+/**
+ * Returns the raw coords array.
+ */
+public double[] getCoords()  { return _coords; }
+
+/**
+ * Sets markers from given pose (map form).
+ */
+public void setPose(PuppetPose aPose)
+{
+    // Set name and clear coords
+    _name = aPose.getName();
+    Arrays.fill(_coords, Double.NaN);
+    
+    // Iterate over markers and set coords for pose keys
+    for(Map.Entry <String,Point> entry : aPose.getMarkers().entrySet()) {
+        int index = _schema.getPoseKeyIndex(entry.getKey()); if(index<0) continue;
+        Point pnt = entry.getValue();
+        setXY(index, pnt.x, pnt.y);
+    }
+}
+
+/**
+ * Sets markers from given packed pose.
+ */
+public void setPose(PackedPose aPose)
+{
+    _name = aPose._name;
+    System.arraycopy(aPose._coords, 0, _coords, 0, _coords.length);
+}
+
+/**
+ * Returns this pose in map form.
+ */
+public PuppetPose toPose()
+{
+    // Iterate over pose keys and add point for each set marker
+    int count = getCount();
+    Map <String,Point> map = new LinkedHashMap(count*2);
+    for(int i=0;i<count;i++) { if(!isSet(i)) continue;
+        map.put(_schema.getPoseKey(i), new Point(getX(i), getY(i))); }
+    
+    // Return pose
+    return new PuppetPose(_name, map);
+}
+
+/**
+ * Returns a copy of this pose.
+ */
+public PackedPose copy()
+{
+    PackedPose copy = new PackedPose();
+    copy.setPose(this);
+    return copy;
+}
+
+/**
+ * Returns the max distance any marker moved between this pose and given pose (infinity if markers set don't match).
+ */
+public double getMaxDistance(PackedPose aPose)
+{
+    double coords[] = aPose._coords, max = 0;
+    for(int i=0;i<_coords.length;i+=2) {
+        double dx = _coords[i] - coords[i], dy = _coords[i+1] - coords[i+1];
+        if(Double.isNaN(dx)) { if(Double.isNaN(_coords[i])!=Double.isNaN(coords[i])) return Double.POSITIVE_INFINITY; }
+        else max = Math.max(max, dx*dx + dy*dy);
+    }
+    return Math.sqrt(max);
+}
+
+/**
+ * Returns a blended pose with this pose and another pose at given ratio.
+ */
+public PackedPose getBlendPose(PackedPose aPose, double aRatio)
+{
+    PackedPose pose = new PackedPose();
+    pose.setBlendPose(this, aPose, aRatio);
+    return pose;
+}
+
+/**
+ * Sets this pose to the blend of two poses at given ratio (root joints are interpolated, outer joints are rotated).
+ * This pose can't be either of the given poses.
+ */
+public void setBlendPose(PackedPose aPose0, PackedPose aPose1, double aRatio)  { setBlendPose(aPose0, aPose1, aRatio, .2); }
+
+/**
+ * Sets this pose to the blend of two poses at given ratio, with given padding added to bone lengths.
+ * This pose can't be either of the given poses.
+ */
+public void setBlendPose(PackedPose aPose0, PackedPose aPose1, double aRatio, double aPad)
+{
+    // Start with first pose
+    setPose(aPose0);
+    double c0[] = aPose0._coords, c1[] = aPose1._coords, c2[] = _coords;
+    
+    // Iterate over root joint indexes
+    for(int r0=0, r0Max=_schema.getRootPoseKeyCount(); r0<r0Max; r0++) { int root = _schema.getRootPoseKeyIndex(r0);
+    
+        // Set blend marker point for root joint
+        int r = root*2;
+        c2[r] = c0[r] + (c1[r] - c0[r])*aRatio;
+        c2[r+1] = c0[r+1] + (c1[r+1] - c0[r+1])*aRatio;
+    
+        // Iterate over outer joints
+        for(int ind0 = root, ind1 = _schema.getNextPoseKeyIndex(root); ind1>=0; ind0 = ind1,
+            ind1 = _schema.getNextPoseKeyIndex(ind1)) {
+    
+            // Get start/end points of start line and end line (just continue if end points are equal)
+            int i0 = ind0*2, i1 = ind1*2;
+            double x0 = c0[i0], y0 = c0[i0+1], x1 = c1[i0], y1 = c1[i0+1];
+            double x2 = c0[i1], y2 = c0[i1+1], x3 = c1[i1], y3 = c1[i1+1];
+            if(x2==x3 && y2==y3) continue;
+    
+            // Get angle of start line, end line and blend line
+            double ang0 = Math.atan2(y2 - y0, x2 - x0);
+            double ang1 = Math.atan2(y3 - y1, x3 - x1);
+            double dang = ang1 - ang0; if(Math.abs(dang)>Math.PI) dang = Math.copySign(2*Math.PI - Math.abs(dang), -dang);
+            double ang2 = ang0 + dang*aRatio;
+    
+            // Get distance of end line and calculate end point of blend line from blended start point and set
+            double dist = Point.getDistance(x1, y1, x3, y3) + aPad;
+            c2[i1] = c2[i0] + Math.cos(ang2)*dist;
+            c2[i1+1] = c2[i0+1] + Math.sin(ang2)*dist;
+        }
+    }
+}
+
+/**
+ * Creates a clone pose adjusted to given puppet at scale.
+ */
+public PackedPose cloneForPuppetAtScale(Puppet toPup, double toScale)
+{
+    return toPup.getRetarget(toScale).getPose(this);
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "PackedPose:" + getName(); }
+
+}
@@ -1,5 +1,7 @@
 package puppets.puppet;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import snap.geom.Point;
 import snap.geom.Rect;
@@ -24,11 +26,19 @@ public class Puppet {
     // The description of puppet parts and joints
     PuppetSchema             _schema = new PuppetSchema();
     
-    // Cached parts
-    Map <String,PuppetPart>  _parts = new HashMap();
+    // Cached parts and joints (indexed by schema part/joint id)
+    PuppetPart               _parts[] = new PuppetPart[_schema.getPartCount()];
+    PuppetJoint              _joints[] = new PuppetJoint[_schema.getJointCount()];
     
-    // Cached joints
-    Map <String,PuppetJoint> _joints = new HashMap();
+    // The puppet that provides each missing part (resolved when read, null if not resolved)
+    Puppet                   _partOwners[];
+    
+    // Whether each part/joint was found missing (so lookups fail fast and complain once)
+    boolean                  _partMissing[] = new boolean[_parts.length], _jointMissing[] = new boolean[_joints.length];
+    
+    // Cached arrays of parts and joints in natural and paint order
+    PuppetPart               _partsNatural[], _partsPaint[];
+    PuppetJoint              _jointsNatural[], _jointsPaint[];
     
     // The puppet that this puppet is based on
     Puppet                   _parent;
@@ -38,6 +48,37 @@ public class Puppet {
 
     // The bounds of joints
     Rect                     _jntBnds;
+    
+    // The joint version (incremented when joints change)
+    int                      _jointVersion;
+    
+    // Cached retarget profiles by scale (and last one used)
+    Map <Double,PuppetRetarget> _retargets = new HashMap();
+    PuppetRetarget           _retarget;
+    
+    // The cache of actions fit to this puppet
+    PuppetFitCache           _fitCache;
+    
+    // The content key (hash of part images and joints, zero if not yet computed)
+    long                     _contentKey;
+    
+    // The future that completes when part images are loaded
+    CompletableFuture <Puppet>  _loadFuture;
+    
+    // The future that completes when mother part images are preloaded
+    CompletableFuture <Void>    _preloadFuture;
+    
+    // The time in millis it took to preload part images
+    volatile double          _preloadTime;
+    
+    // The number of pins that keep this puppet from being evicted from PuppetCache
+    volatile int             _pinCount;
+    
+    // The pool of threads to preload part images
+    private static ExecutorService  _loadPool;
+    
+    // The pool of threads to encode part images on save
+    private static ExecutorService  _encodePool;
 
 /**
  * Creates a Puppet.
@@ -147,22 +188,59 @@ public PuppetSchema getSchema()  { return _schema; }
  */
 public Puppet getParent()  { return _parent; }
 
+/**
+ * Pins this puppet so it isn't evicted from PuppetCache (call unpin when done).
+ */
+public synchronized void pin()  { _pinCount++; }
+
+/**
+ * Unpins this puppet.
+ */
+public synchronized void unpin()  { if(_pinCount>0) _pinCount--; }
+
+/**
+ * Returns whether this puppet is pinned.
+ */
+public boolean isPinned()  { return _pinCount>0; }
+
 /**
  * Returns the part for given name.
  */
 public PuppetPart getPart(String aName)
 {
-    // Get cached part (just return if found)
-    PuppetPart part = _parts.get(aName); if(part!=null) return part;
+    int id = _schema.getPartId(aName);
+    if(id<0) { System.out.println("Puppet.getPart: part not found " + getName() + ' ' + aName); return null; }
+    return getPart(id);
+}
+
+/**
+ * Returns the part for given schema part id.
+ */
+public synchronized PuppetPart getPart(int anId)
+{
+    // Get cached part (just return if found or known missing)
+    PuppetPart part = _parts[anId]; if(part!=null || _partMissing[anId]) return part;
+    
+    // If part owner resolved to other puppet, get part from it
+    String name = _schema.getPartName(anId);
+    Puppet owner = _partOwners!=null? _partOwners[anId] : null;
+    if(owner!=null && owner!=this)
+        part = owner.getPart(anId);
+    
+    // Otherwise try to create part
+    else {
+        part = createPart(name);
+        if(part==null)
+            part = createDerivedPart(name);
+        if(part==null && _parent!=null)
+            part = _parent.getPart(anId);
+    }
     
-    // Try to create part
-    part = createPart(aName);
-    if(part==null)
-        part = createDerivedPart(aName);
-    if(part==null && _parent!=null)
-        part = _parent.getPart(aName);
+    // If not found, complain (once) and return null
     if(part==null) {
-        System.out.println("Puppet.getPart: part not found " + getName() + ' ' + aName); return null; }
+        System.out.println("Puppet.getPart: part not found " + getName() + ' ' + name);
+        _partMissing[anId] = true; return null;
+    }
     
     // Add part to cache and return
     setPart(part);
@@ -179,13 +257,24 @@ protected PuppetPart createPart(String aName)  { return null; }
  */
 protected PuppetPart createDerivedPart(String aName)  { return PuppetPart.createDerivedPart(this, aName); }
 
+/**
+ * Returns whether this puppet can create given missing part itself (otherwise it comes from parent).
+ */
+protected boolean canCreatePart(String aName)  { return PuppetPart.isDerivedPartName(aName); }
+
 /**
  * Sets a part.
  */
-public void setPart(PuppetPart aPart)
+public synchronized void setPart(PuppetPart aPart)
 {
-    _parts.put(aPart.getName(), aPart);
+    // Get part id (just complain and return if not in schema)
+    int id = _schema.getPartId(aPart.getName());
+    if(id<0) { System.out.println("Puppet.setPart: unknown part " + getName() + ' ' + aPart.getName()); return; }
+    
+    // Set part and clear cached arrays
+    _parts[id] = aPart; _partMissing[id] = false;
     if(aPart._puppet==null) aPart._puppet = this;
+    _partsNatural = _partsPaint = null; _contentKey = 0;
 }
 
 /**
@@ -193,15 +282,28 @@ public void setPart(PuppetPart aPart)
  */
 public PuppetJoint getJoint(String aName)
 {
-    // Get cached joint (just return if found)
-    PuppetJoint joint = _joints.get(aName); if(joint!=null) return joint;
+    int id = _schema.getJointId(aName);
+    if(id<0) { System.out.println("Puppet.getJoint: part not found " + aName); return null; }
+    return getJoint(id);
+}
+
+/**
+ * Returns the joint for given schema joint id.
+ */
+public synchronized PuppetJoint getJoint(int anId)
+{
+    // Get cached joint (just return if found or known missing)
+    PuppetJoint joint = _joints[anId]; if(joint!=null || _jointMissing[anId]) return joint;
     
     // Try to create joint
-    joint = createJoint(aName);
+    String name = _schema.getJointName(anId);
+    joint = createJoint(name);
     if(joint==null && _parent!=null)
-        joint = _parent.getJoint(aName);
+        joint = _parent.getJoint(anId);
     if(joint==null) {
-        System.out.println("Puppet.getJoint: part not found " + aName); return null; }
+        System.out.println("Puppet.getJoint: part not found " + name);
+        _jointMissing[anId] = true; return null;
+    }
     
     // Add joint to cache and return
     setJoint(joint);
@@ -216,21 +318,65 @@ protected PuppetJoint createJoint(String aName)  { return null; }
 /**
  * Sets a joint.
  */
-public void setJoint(PuppetJoint aJoint)
+public synchronized void setJoint(PuppetJoint aJoint)
 {
-    _joints.put(aJoint.getName(), aJoint);
+    // Get joint id (just complain and return if not in schema)
+    int id = _schema.getJointId(aJoint.getName());
+    if(id<0) { System.out.println("Puppet.setJoint: unknown joint " + getName() + ' ' + aJoint.getName()); return; }
+    
+    // Set joint, clear cached arrays and update version
+    _joints[id] = aJoint; _jointMissing[id] = false;
     if(aJoint._puppet==null) aJoint._puppet = this;
+    _jointsNatural = _jointsPaint = null; _contentKey = 0;
+    _jointVersion++;
 }
 
 /**
- * Returns the parts in natural order.
+ * Returns the joint version, which changes whenever joints of this puppet (or parent) change.
  */
-public PuppetPart[] getParts()  { return getPartsForNames(getSchema().getPartNamesNaturalOrder()); }
+public int getJointVersion()  { return _jointVersion + (_parent!=null? _parent.getJointVersion() : 0); }
 
 /**
- * Returns the parts in paint order.
+ * Resolves parts and joints missing from this puppet against parent (called once when read).
+ * Missing joints are taken from parent and missing parts that this puppet can't create are marked to come from parent.
  */
-public PuppetPart[] getPartsPaintOrder()  { return getPartsForNames(getSchema().getPartNames()); }
+protected synchronized void resolveParent()
+{
+    // If no parent, just return
+    if(_parent==null) return;
+    
+    // Take missing joints from parent
+    for(int i=0;i<_joints.length;i++)
+        if(_joints[i]==null) { PuppetJoint joint = _parent.getJoint(i);
+            if(joint!=null) setJoint(joint); }
+    
+    // Mark owner of each part (this puppet if it has or can create part, otherwise parent)
+    _partOwners = new Puppet[_parts.length];
+    for(int i=0;i<_parts.length;i++)
+        _partOwners[i] = _parts[i]!=null || canCreatePart(_schema.getPartName(i))? this : _parent;
+}
+
+/**
+ * Returns the parts in natural order (shared array, don't modify).
+ */
+public synchronized PuppetPart[] getParts()
+{
+    if(_partsNatural!=null) return _partsNatural;
+    PuppetPart parts[] = new PuppetPart[_schema.getPaintPartCount()];
+    for(int i=0;i<parts.length;i++) parts[i] = getPart(_schema.getPartNameNaturalOrder(i));
+    return _partsNatural = parts;
+}
+
+/**
+ * Returns the parts in paint order (shared array, don't modify).
+ */
+public synchronized PuppetPart[] getPartsPaintOrder()
+{
+    if(_partsPaint!=null) return _partsPaint;
+    PuppetPart parts[] = new PuppetPart[_schema.getPaintPartCount()];
+    for(int i=0;i<parts.length;i++) parts[i] = getPart(i);
+    return _partsPaint = parts;
+}
 
 /**
  * Returns the parts for given names.
@@ -243,14 +389,26 @@ public PuppetPart[] getPartsForNames(String theNames[])
 }
 
 /**
- * Returns the joints in natural order.
+ * Returns the joints in natural order (shared array, don't modify).
  */
-public PuppetJoint[] getJoints()  { return getJointsForNames(getSchema().getJointNamesNaturalOrder()); }
+public synchronized PuppetJoint[] getJoints()
+{
+    if(_jointsNatural!=null) return _jointsNatural;
+    PuppetJoint joints[] = new PuppetJoint[_schema.getJointCount()];
+    for(int i=0;i<joints.length;i++) joints[i] = getJoint(_schema.getJointNameNaturalOrder(i));
+    return _jointsNatural = joints;
+}
 
 /**
- * Returns the joints in paint order.
+ * Returns the joints in paint order (shared array, don't modify).
  */
-public PuppetJoint[] getJointsPaintOrder()  { return getJointsForNames(getSchema().getJointNames()); }
+public synchronized PuppetJoint[] getJointsPaintOrder()
+{
+    if(_jointsPaint!=null) return _jointsPaint;
+    PuppetJoint joints[] = new PuppetJoint[_joints.length];
+    for(int i=0;i<joints.length;i++) joints[i] = getJoint(i);
+    return _jointsPaint = joints;
+}
 
 /**
  * Returns the joints for given names.
@@ -290,7 +448,7 @@ public Rect getBounds()
     
     // If not loaded, just return bounds for current loaded parts
     if(!isLoaded()) {
-        PuppetPart parts[] = _parts.values().toArray(new PuppetPart[0]);
+        PuppetPart parts[] = getPartsLoaded();
         Rect bnds = getBoundsForParts(parts);
         if(getParent()!=null) {
             Rect pbnds = getParent().getBounds();
@@ -304,6 +462,16 @@ public Rect getBounds()
     return _bounds = getBoundsForParts(parts);
 }
 
+/**
+ * Returns the parts currently set (not including missing parts that haven't been created or resolved yet).
+ */
+protected synchronized PuppetPart[] getPartsLoaded()
+{
+    List <PuppetPart> parts = new ArrayList(_parts.length);
+    for(PuppetPart part : _parts) if(part!=null) parts.add(part);
+    return parts.toArray(new PuppetPart[parts.size()]);
+}
+
 /**
  * Returns the bounds for given parts.
  */
@@ -350,7 +518,8 @@ public PuppetPose getPose(double aScale)
 {
     // Iterate over pose keys and add pose marker and x/y location to map
     Map <String, Point> map = new LinkedHashMap();
-    for(String pkey : getSchema().getPoseKeys()) { PuppetJoint pjnt = getJoint(pkey);
+    for(int i=0, iMax=_schema.getPoseKeyCount(); i<iMax; i++) { String pkey = _schema.getPoseKey(i);
+        PuppetJoint pjnt = getJoint(pkey);
         Point pnt = new Point(pjnt.getX()*aScale, pjnt.getY()*aScale);
         map.put(pkey, pnt);
     }
@@ -359,6 +528,51 @@ public PuppetPose getPose(double aScale)
     return new PuppetPose("Untitled", map);
 }
 
+/**
+ * Returns a pose of puppet as defined, in packed form.
+ */
+public PackedPose getPackedPose(double aScale)
+{
+    // Iterate over pose keys and set joint x/y location
+    PackedPose pose = new PackedPose(); pose.setName("Untitled");
+    for(int i=0, iMax=_schema.getPoseKeyCount(); i<iMax; i++) { PuppetJoint pjnt = getJoint(_schema.getPoseKey(i));
+        pose.setXY(i, pjnt.getX()*aScale, pjnt.getY()*aScale); }
+    return pose;
+}
+
+/**
+ * Returns the profile to fit poses to this puppet at given scale (cached until joints change).
+ */
+public synchronized PuppetRetarget getRetarget(double aScale)
+{
+    // Get last or cached profile (just return if still valid)
+    PuppetRetarget rtgt = _retarget!=null && _retarget.getScale()==aScale? _retarget : _retargets.get(aScale);
+    if(rtgt!=null && rtgt.isValid()) return _retarget = rtgt;
+    
+    // Create new profile and cache (unless reference puppet not yet loaded)
+    rtgt = new PuppetRetarget(this, aScale);
+    if(rtgt._refLoaded) _retargets.put(aScale, _retarget = rtgt);
+    return rtgt;
+}
+
+/**
+ * Returns a key (hash of part images and bounds and joint points) that changes whenever puppet content changes.
+ */
+public synchronized long getContentKey()
+{
+    if(_contentKey!=0) return _contentKey;
+    return _contentKey = PuppetFrameCache.getPuppetKey(this);
+}
+
+/**
+ * Returns the cache of actions fit to this puppet.
+ */
+public synchronized PuppetFitCache getFitCache()
+{
+    if(_fitCache!=null) return _fitCache;
+    return _fitCache = new PuppetFitCache(this);
+}
+
 /**
  * Returns whether resource is loaded.
  */
@@ -373,6 +587,90 @@ public boolean isLoaded()
  */
 public void addLoadListener(Runnable aRun)  { getLoadable().addLoadListener(aRun); }
 
+/**
+ * Returns a future that completes with this puppet when part images are loaded.
+ */
+public synchronized CompletableFuture <Puppet> getLoadFuture()
+{
+    // If future is set and still valid (not done or still loaded), just return it
+    if(_loadFuture!=null && (!_loadFuture.isDone() || isLoaded())) return _loadFuture;
+    
+    // Create future and complete when loaded (check again after adding listener, in case load finished in between)
+    CompletableFuture <Puppet> future = _loadFuture = new CompletableFuture();
+    if(isLoaded()) future.complete(this);
+    else {
+        addLoadListener(() -> future.complete(this));
+        if(isLoaded()) future.complete(this);
+    }
+    return future;
+}
+
+/**
+ * Loads and decodes all mother part images in parallel and returns a future that completes when they are done.
+ */
+public synchronized CompletableFuture <Void> preloadImages()
+{
+    // If already preloading (or can't preload because images load asynchronously), just return
+    if(_preloadFuture!=null) return _preloadFuture;
+    if(SnapUtils.isTeaVM) return _preloadFuture = CompletableFuture.completedFuture(null);
+    
+    // Get mother parts and queue decode of each image on load pool
+    PuppetPart parts[] = getMotherParts();
+    CompletableFuture futures[] = new CompletableFuture[parts.length];
+    long time0 = System.nanoTime();
+    for(int i=0;i<parts.length;i++) { PuppetPart part = parts[i];
+        futures[i] = CompletableFuture.runAsync(() -> preloadImage(part), getLoadPool()); }
+    
+    // Return future that completes (and records total time) when all are done
+    return _preloadFuture = CompletableFuture.allOf(futures).thenRun(() ->
+        _preloadTime = (System.nanoTime() - time0)/1e6);
+}
+
+/**
+ * Returns the time in millis it took to preload part images (or 0 if not preloaded).
+ */
+public double getPreloadTime()  { return _preloadTime; }
+
+/**
+ * Loads and decodes image for given part.
+ */
+private static void preloadImage(PuppetPart aPart)
+{
+    try { Image img = aPart.getImage(); if(img!=null) img.getNative(); }
+    catch(Exception e) { System.err.println("Puppet.preloadImage: " + aPart.getName() + ": " + e); }
+}
+
+/**
+ * Returns the pool of threads to preload part images and fit actions (bounded, since work is CPU and memory bound).
+ */
+static synchronized ExecutorService getLoadPool()
+{
+    if(_loadPool!=null) return _loadPool;
+    int count = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+    AtomicInteger threadCount = new AtomicInteger();
+    return _loadPool = Executors.newFixedThreadPool(count, r -> {
+        Thread thread = new Thread(r, "PuppetLoader-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+}
+
+/**
+ * Returns the pool of threads to encode part images on save (separate from load pool, so save doesn't wait behind
+ * preloads and fits).
+ */
+static synchronized ExecutorService getEncodePool()
+{
+    if(_encodePool!=null) return _encodePool;
+    int count = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+    AtomicInteger threadCount = new AtomicInteger();
+    return _encodePool = Executors.newFixedThreadPool(count, r -> {
+        Thread thread = new Thread(r, "PuppetEncoder-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+}
+
 /**
  * Returns the default loadable (the image).
  */
@@ -389,6 +687,9 @@ protected Loadable getLoadable()
  */
 public void readSource()
 {
+    // If binary file is current, just read it (it is written on save or by SpriteBaker -binary)
+    if(PuppetBinary.isBinaryFileCurrent(this) && PuppetBinary.read(this)) return;
+    
     // Get file string as XMLElement
     WebURL url = getSourceURL(); if(url==null) { System.err.println("Puppet.readSource: No source"); return; }
     String text = url.getText(); if(text==null) { System.err.println("Puppet.readSource: No text at "+url); return; }
@@ -417,12 +718,61 @@ public void save()
     byte bytes[] = puppetXML.getBytes();
     SnapUtils.writeBytes(bytes, url.getJavaFile());
     
-    // Write images
-    PuppetPart motherParts[] = getMotherParts();
-    for(PuppetPart part : motherParts) {
-        if(part.getPuppet()!=this) continue;
-        part.saveImage();
+    // Write images (only for parts changed since loaded or saved)
+    Map <PuppetPart,byte[]> encoded = saveImages();
+    
+    // Write binary file (with images encoded by this save, so they aren't read back)
+    PuppetBinary.write(this, encoded);
+}
+
+/**
+ * Writes part images that have changed since loaded or saved, using manifest of image hashes to skip unchanged files
+ * (changed images are encoded in parallel). Returns the PNG bytes encoded for each changed part.
+ */
+protected Map <PuppetPart,byte[]> saveImages()
+{
+    // Get manifest (if none, just save each image)
+    Map <PuppetPart,byte[]> encoded = new HashMap();
+    PuppetManifest manifest = PuppetManifest.getManifest(this);
+    if(manifest==null) {
+        for(PuppetPart part : getMotherParts()) if(part.getPuppet()==this) part.saveImage();
+        return encoded;
     }
+    
+    // Get parts whose image has been set or whose file has changed since last save
+    List <PuppetPart> parts = new ArrayList();
+    for(PuppetPart part : getMotherParts()) { if(part.getPuppet()!=this) continue;
+        java.io.File file = part.getImageURL().getJavaFile();
+        if(!part.isImageDirty() && manifest.isCurrent(part.getName(), file)) continue;
+        
+        // If image is from file but not in manifest, just record file hash (avoids encode)
+        if(!part.isImageDirty() && !manifest.hasEntry(part.getName()) && file.isFile()) {
+            byte bytes[] = part.getImageURL().getBytes();
+            if(bytes!=null) { manifest.put(part.getName(), PuppetManifest.getHash(bytes), file); continue; }
+        }
+        parts.add(part);
+    }
+    
+    // Encode images in parallel
+    List <CompletableFuture <byte[]>> futures = new ArrayList();
+    for(PuppetPart part : parts) futures.add(CompletableFuture.supplyAsync(() -> {
+        Image img = part.getImage(); return img!=null? img.getBytesPNG() : null; }, getEncodePool()));
+    
+    // Iterate over parts and write image if hash differs from manifest or file has changed
+    for(int i=0;i<parts.size();i++) { PuppetPart part = parts.get(i);
+        byte bytes[] = futures.get(i).join(); if(bytes==null) continue;
+        java.io.File file = part.getImageURL().getJavaFile();
+        long hash = PuppetManifest.getHash(bytes);
+        if(hash!=manifest.getHash(part.getName()) || !manifest.isCurrent(part.getName(), file))
+            SnapUtils.writeBytes(bytes, file);
+        manifest.put(part.getName(), hash, file);
+        part._imageDirty = false;
+        encoded.put(part, bytes);
+    }
+    
+    // Save manifest and return encoded bytes
+    manifest.save();
+    return encoded;
 }
 
 /**
@@ -480,41 +830,61 @@ public Puppet fromXML(XMLElement anElement)
     }
     
     // Iterate over parts element and load
+    List <PuppetPart> parts = new ArrayList();
     XMLElement partsXML = anElement.getElement("Parts");
     for(XMLElement partXML : partsXML.getElements()) {
         PuppetPart part = new PuppetPart().fromXML(partXML);
-        setPart(part);
+        parts.add(part);
     }
 
     // Iterate over joints element and load
+    List <PuppetJoint> joints = new ArrayList();
     XMLElement jointsXML = anElement.getElement("Joints");
     for(XMLElement jointXML : jointsXML.getElements()) {
         PuppetJoint joint = new PuppetJoint().fromXML(jointXML);
-        setJoint(joint);
+        joints.add(joint);
     }
     
-    // Convert part and joints to zero
+    // Set parts and joints
     int version = anElement.getAttributeIntValue("Version", 0);
-    if(version==0) {
-        PuppetJoint anchor = _joints.get(PuppetSchema.Anchor_Joint);
+    setPartsAndJoints(parts, joints, version);
+
+    // Return this
+    return this;
+}
+
+/**
+ * Sets parts and joints read from source of given version (converting legacy coords of version 0) and resolves
+ * missing parts and joints against parent.
+ */
+protected void setPartsAndJoints(List <PuppetPart> theParts, List <PuppetJoint> theJoints, int aVersion)
+{
+    // Set parts and joints
+    for(PuppetPart part : theParts) setPart(part);
+    for(PuppetJoint joint : theJoints) setJoint(joint);
+    
+    // Convert part and joints to zero
+    if(aVersion==0) {
+        PuppetJoint anchor = _joints[_schema.getJointId(PuppetSchema.Anchor_Joint)];
         double ancX = anchor!=null? anchor.getX() : 419;
         double ancY = anchor!=null? anchor.getY() : 1063;
         double scale = 575d/977;
         
-        for(PuppetPart part : _parts.values()) {
+        for(PuppetPart part : _parts) { if(part==null) continue;
             part._x = (part._x - ancX)*scale;
             part._y = (ancY - part.getMaxY())*scale;
             part._w *= scale;
             part._h *= scale;
         }
-        for(PuppetJoint jnt : _joints.values()) {
+        for(PuppetJoint jnt : _joints) { if(jnt==null) continue;
             jnt._x = (jnt._x - ancX)*scale;
             jnt._y = (ancY - jnt._y)*scale;
         }
+        _jointVersion++;
     }
-
-    // Return this
-    return this;
+    
+    // Resolve missing parts and joints against parent
+    resolveParent();
 }
 
 /**
@@ -533,6 +903,7 @@ public static Puppet getPuppetForSource(Object aSource)
         // Handle old ORA puppets
         if(src.equals("Man") || src.equals("Lady")) {
             src = PuppetUtils.ROOT + "chars/CT" + src;
+            if(!SnapUtils.isTeaVM && new java.io.File(src + ".ora").isFile()) src += ".ora";
             return new ORAPuppet(src);
         }
         
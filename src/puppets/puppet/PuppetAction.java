@@ -15,6 +15,9 @@ public class PuppetAction {
     
     // A list of moves
     List <PuppetMove>  _moves = new ArrayList();
+    
+    // The compiled timeline of moves (cleared when moves are added, removed or retimed)
+    Timeline           _timeline;
 
 /**
  * Creates a PuppetAction.
@@ -123,6 +126,8 @@ public void addMove(PuppetMove aMove, int anIndex)
 {
     // Add to moves list
     getMoves().add(anIndex, aMove);
+    aMove._action = this;
+    movesDidChange();
     
     // If pose not in PoseList, add it
     String poseName = aMove.getPoseName();
@@ -136,41 +141,39 @@ public void addMove(PuppetMove aMove, int anIndex)
 public PuppetMove removeMove(int anIndex)
 {
     PuppetMove move = getMoves().remove(anIndex);
+    if(move._action==this) move._action = null;
+    movesDidChange();
     return move;
 }
 
 /**
- * Returns the max time for action.
+ * Returns the compiled timeline of moves.
  */
-public int getMaxTime()
+public Timeline getTimeline()
 {
-    int t = 0;
-    for(int i=0, iMax=getMoveCount()-1; i<iMax; i++) t += getMove(i).getTime();
-    return t;
+    Timeline timeline = _timeline; if(timeline!=null) return timeline;
+    return _timeline = new Timeline(getMoves());
 }
 
+/**
+ * Called when moves are added, removed or retimed to clear timeline.
+ */
+protected void movesDidChange()  { _timeline = null; }
+
+/**
+ * Returns the max time for action.
+ */
+public int getMaxTime()  { return getTimeline().getMaxTime(); }
+
 /**
  * Returns the move index for given time.
  */
-public int getMoveIndexAtTime(int aTime)
-{
-    int time = 0;
-    for(int i=0, iMax=getMoveCount(); i<iMax; i++) { PuppetMove move = getMove(i);
-        time += move.getTime();
-        if(aTime<time)
-            return i;
-    }
-    return getMoveCount()-1;
-}
+public int getMoveIndexAtTime(int aTime)  { return getTimeline().getMoveIndexAtTime(aTime); }
 
 /**
  * Returns the move index for given time.
  */
-public int getMoveStartTime(int anIndex)
-{
-    int time = 0; for(int i=0; i<anIndex; i++) time += getMove(i).getTime();
-    return time;
-}
+public int getMoveStartTime(int anIndex)  { return getTimeline().getMoveStartTime(anIndex); }
 
 /**
  * Returns the puppet pose for given global time.
@@ -178,15 +181,17 @@ public int getMoveStartTime(int anIndex)
 public PuppetPose getPoseForTime(Puppet aPuppet, int aTime)
 {
     // If at start or end, just return appropriate pose
-    if(getMoveCount()==0) return null;
+    Timeline timeline = getTimeline();
+    int moveCount = timeline.getMoveCount();
+    if(moveCount==0) return null;
     if(aTime==0) return getMovePose(0);
-    if(aTime>=getMaxTime()) return getMovePose(getMoveCount()-1);
+    if(aTime>=timeline.getMaxTime()) return getMovePose(moveCount-1);
     
     // Get surrounding moves, get blend pose and set
-    int moveIndex = getMoveIndexAtTime(aTime);
+    int moveIndex = timeline.getMoveIndexAtTime(aTime);
     PuppetMove move0 = getMove(moveIndex);
     PuppetMove move1 = getMove(moveIndex+1);
-    double moveTime = aTime - getMoveStartTime(moveIndex);
+    double moveTime = aTime - timeline.getMoveStartTime(moveIndex);
     double moveRatio = moveTime/move0.getTime();
     
     // Get surrounding poses, get blend pose and set
@@ -196,6 +201,38 @@ public PuppetPose getPoseForTime(Puppet aPuppet, int aTime)
     return pose2;
 }
 
+/**
+ * Returns the puppet pose for given global time in packed form.
+ */
+public PackedPose getPackedPoseForTime(int aTime)  { return getPackedPoseForTime(aTime, new PackedPose()); }
+
+/**
+ * Sets the puppet pose for given global time in given packed pose and returns it (or null if no moves).
+ * This doesn't allocate, so it can be called for every frame with a reused pose.
+ */
+public PackedPose getPackedPoseForTime(int aTime, PackedPose aPose)
+{
+    // If at start or end, just set appropriate pose
+    Timeline timeline = getTimeline();
+    int moveCount = timeline.getMoveCount();
+    if(moveCount==0) return null;
+    if(aTime==0) { aPose.setPose(getMovePose(0).getPacked()); return aPose; }
+    if(aTime>=timeline.getMaxTime()) { aPose.setPose(getMovePose(moveCount-1).getPacked()); return aPose; }
+    
+    // Get surrounding moves and ratio
+    int moveIndex = timeline.getMoveIndexAtTime(aTime);
+    PuppetMove move0 = getMove(moveIndex);
+    PuppetMove move1 = getMove(moveIndex+1);
+    double moveTime = aTime - timeline.getMoveStartTime(moveIndex);
+    double moveRatio = moveTime/move0.getTime();
+    
+    // Get surrounding poses and set blend pose
+    PackedPose pose0 = move0.getPose().getPacked();
+    PackedPose pose1 = move1.getPose().getPacked();
+    aPose.setBlendPose(pose0, pose1, moveRatio);
+    return aPose;
+}
+
 /**
  * Replaces first pose with second pose.
  */
@@ -265,8 +302,9 @@ public PuppetAction fromXML(XMLArchiver anArchiver, XMLElement anElement)
     if(movesXML==null) movesXML = anElement.getElement("Steps"); // Can go soon
     for(XMLElement moveXML : movesXML.getElements()) {
         PuppetMove move = new PuppetMove().fromXML(this, moveXML);
-        _moves.add(move);
+        _moves.add(move); move._action = this;
     }
+    movesDidChange();
     
     // Can go soon
     if(getMoveCount()==0)
@@ -276,4 +314,52 @@ public PuppetAction fromXML(XMLArchiver anArchiver, XMLElement anElement)
     return this;
 }
 
+/**
+ * An immutable, compiled form of action moves timing, with move start times for binary search lookup.
+ */
+public static class Timeline {
+    
+    // The move start times, followed by the end time of last move
+    private final int  _starts[];
+    
+    // The max time (start time of last move)
+    private final int  _maxTime;
+    
+    /** Creates a Timeline for given moves. */
+    public Timeline(List <PuppetMove> theMoves)
+    {
+        int count = theMoves.size();
+        _starts = new int[count+1];
+        for(int i=0;i<count;i++) _starts[i+1] = _starts[i] + theMoves.get(i).getTime();
+        _maxTime = count>0? _starts[count-1] : 0;
+    }
+    
+    /** Returns the number of moves. */
+    public int getMoveCount()  { return _starts.length - 1; }
+    
+    /** Returns the max time (start time of last move). */
+    public int getMaxTime()  { return _maxTime; }
+    
+    /** Returns the start time of move at given index. */
+    public int getMoveStartTime(int anIndex)
+    {
+        if(anIndex<=0) return 0;
+        return _starts[Math.min(anIndex, getMoveCount())];
+    }
+    
+    /** Returns the index of move active at given time (last move if time is beyond end). */
+    public int getMoveIndexAtTime(int aTime)
+    {
+        // Binary search for first move that ends after given time
+        int lo = 0, hi = getMoveCount();
+        while(lo<hi) { int mid = (lo + hi) >>> 1;
+            if(aTime<_starts[mid+1]) hi = mid;
+            else lo = mid + 1;
+        }
+        
+        // Return index (or last move if time beyond end)
+        return Math.min(lo, getMoveCount()-1);
+    }
+}
+
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+package puppets.puppet;
+import java.util.List;
+
+/**
+ * A class to hold the move poses of an action fit ahead of time to a puppet (at scale 1).
+ *
+ * Fitting is linear in scale, so poses for any scale are just the blended fit poses scaled.
+ */
+public class PuppetActionFit {
+
+    // The action
+    PuppetAction    _action;
+    
+    // The puppet
+    Puppet          _puppet;
+    
+    // The key (hash of fit profile and source pose data)
+    long            _key;
+    
+    // The move poses fit to puppet at scale 1
+    PackedPose      _poses[];
+    
+    // The fit profile and source move poses this fit was validated for (to quickly check whether still valid)
+    PuppetRetarget  _retarget;
+    PackedPose      _srcPoses[];
+
+/**
+ * Creates a new PuppetActionFit for given puppet and action.
+ */
+public PuppetActionFit(Puppet aPuppet, PuppetAction anAction)
+{
+    _puppet = aPuppet;
+    PuppetRetarget rtgt = aPuppet.getRetarget(1);
+    PackedPose srcPoses[] = getSourcePoses(anAction);
+    
+    // Fit source poses
+    _poses = new PackedPose[srcPoses.length];
+    for(int i=0;i<srcPoses.length;i++)
+        _poses[i] = rtgt.getPose(srcPoses[i]);
+    
+    // Set action, key and validation info
+    setAction(anAction, rtgt, srcPoses, getKey(rtgt, srcPoses));
+}
+
+/**
+ * Creates a new PuppetActionFit for given puppet, key and fit poses (as read from cache).
+ */
+protected PuppetActionFit(Puppet aPuppet, long aKey, PackedPose thePoses[])
+{
+    _puppet = aPuppet; _key = aKey; _poses = thePoses;
+}
+
+/**
+ * Returns the action.
+ */
+public PuppetAction getAction()  { return _action; }
+
+/**
+ * Sets the action with profile, source poses and key (once fit poses are known to match).
+ */
+protected void setAction(PuppetAction anAction, PuppetRetarget aRetarget, PackedPose theSrcPoses[], long aKey)
+{
+    _action = anAction; _retarget = aRetarget; _srcPoses = theSrcPoses; _key = aKey;
+}
+
+/**
+ * Returns the puppet.
+ */
+public Puppet getPuppet()  { return _puppet; }
+
+/**
+ * Returns the key (hash of fit profile and source pose data).
+ */
+public long getKey()  { return _key; }
+
+/**
+ * Returns the number of fit move poses.
+ */
+public int getPoseCount()  { return _poses.length; }
+
+/**
+ * Returns the fit move pose at given index.
+ */
+public PackedPose getPose(int anIndex)  { return _poses[anIndex]; }
+
+/**
+ * Returns whether fit is still valid for given action (same action, move poses and puppet profile).
+ */
+public boolean isValid(PuppetAction anAction)
+{
+    // If different action or move count, return false
+    if(anAction!=_action || _srcPoses==null) return false;
+    int moveCount = anAction.getMoveCount(); if(moveCount!=_srcPoses.length) return false;
+    
+    // If any move pose changed (pose packed forms are replaced on change), return false
+    for(int i=0;i<moveCount;i++)
+        if(anAction.getMove(i).getPose().getPacked()!=_srcPoses[i])
+            return false;
+    
+    // Return whether puppet profile is unchanged
+    return _puppet.getRetarget(1)==_retarget;
+}
+
+/**
+ * Sets the fit pose for given global time and scale in given pose and returns it (or null if no moves).
+ * This doesn't allocate, so it can be called for every frame with a reused pose.
+ */
+public PackedPose getPoseForTime(int aTime, double aScale, PackedPose aPose)
+{
+    // If at start or end, just set appropriate pose
+    PuppetAction.Timeline timeline = _action.getTimeline();
+    int moveCount = timeline.getMoveCount();
+    if(moveCount==0) return null;
+    if(aTime==0) aPose.setPose(_poses[0]);
+    else if(aTime>=timeline.getMaxTime()) aPose.setPose(_poses[moveCount-1]);
+    
+    // Otherwise, get surrounding moves and ratio and set blend pose (fit bones don't need padding)
+    else {
+        int moveIndex = timeline.getMoveIndexAtTime(aTime);
+        double moveTime = aTime - timeline.getMoveStartTime(moveIndex);
+        double moveRatio = moveTime/_action.getMove(moveIndex).getTime();
+        aPose.setBlendPose(_poses[moveIndex], _poses[moveIndex+1], moveRatio, 0);
+    }
+    
+    // Scale pose and return
+    double coords[] = aPose.getCoords();
+    for(int i=0;i<coords.length;i++) coords[i] *= aScale;
+    return aPose;
+}
+
+/**
+ * Returns the packed source move poses for given action.
+ */
+protected static PackedPose[] getSourcePoses(PuppetAction anAction)
+{
+    List <PuppetMove> moves = anAction.getMoves();
+    PackedPose poses[] = new PackedPose[moves.size()];
+    for(int i=0;i<poses.length;i++) poses[i] = moves.get(i).getPose().getPacked();
+    return poses;
+}
+
+/**
+ * Returns a key for given fit profile and source poses (64-bit FNV-1a hash of all their values).
+ */
+protected static long getKey(PuppetRetarget aRetarget, PackedPose theSrcPoses[])
+{
+    long hash = 0xcbf29ce484222325L;
+    hash = hash(hash, aRetarget._rootCos); hash = hash(hash, aRetarget._rootSin);
+    hash = hash(hash, aRetarget._rootScales); hash = hash(hash, aRetarget._boneLengths);
+    for(PackedPose pose : theSrcPoses) hash = hash(hash, pose.getCoords());
+    return hash;
+}
+
+/** Adds given values to given FNV-1a hash. */
+private static long hash(long aHash, double theVals[])
+{
+    for(double val : theVals) { long bits = Double.doubleToLongBits(val);
+        for(int i=0;i<64;i+=8) { aHash ^= (bits>>>i) & 0xff; aHash *= 0x100000001b3L; } }
+    return aHash;
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()
+{
+    String aname = _action!=null? _action.getName() : null;
+    return "PuppetActionFit: puppet=" + _puppet.getName() + ", action=" + aname + ", poses=" + _poses.length;
+}
+
+}
@@ -0,0 +1,308 @@
+package puppets.puppet;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import snap.geom.Point;
+import snap.util.SnapUtils;
+
+/**
+ * A class to read/write a list of actions as a binary library file (.acts, next to actions .xml file), read through a
+ * memory-mapped file.
+ *
+ * Layout: header (magic, version, journal sequence of actions XML), marker key table, action index (name, offset of
+ * each action) and actions (poses with marker key index and packed float coords for each marker, moves with pose index
+ * and time). Only the index is read when opened - each action is decoded when first requested.
+ *
+ * Before a library file is replaced, open libraries for it are released (by their owner, or closed), since a mapped
+ * file can't be replaced on some platforms.
+ */
+public class PuppetActionLibrary {
+
+    // The file
+    File                     _file;
+    
+    // The mapped file bytes
+    ByteBuffer               _buf;
+    
+    // The marker keys
+    String                   _keys[];
+    
+    // The action names and offsets
+    String                   _names[];
+    int                      _offsets[];
+    
+    // The action indexes by lower case name
+    Map <String,Integer>     _indexes = new HashMap();
+    
+    // The sequence number of last journal record in actions XML file when library was written
+    int                      _seq;
+    
+    // The handler to release library before its file is replaced (set by owner that still needs its actions)
+    Runnable                 _releaseHandler;
+    
+    // The open libraries
+    private static List <PuppetActionLibrary>  _openLibs = new ArrayList();
+    
+    // Constants for file
+    static final int  MAGIC = 0x50414354, VERSION = 2;
+    
+    // The file extension
+    public static final String EXT = ".acts";
+
+/**
+ * Creates a PuppetActionLibrary for given file (maps file and reads index).
+ */
+public PuppetActionLibrary(File aFile) throws IOException
+{
+    // Map file
+    _file = aFile;
+    try (FileChannel channel = new RandomAccessFile(aFile, "r").getChannel()) {
+        _buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); }
+    
+    // Read header
+    if(_buf.getInt()!=MAGIC || _buf.getInt()!=VERSION) throw new IOException("Bad action library: " + aFile);
+    _seq = _buf.getInt();
+    
+    // Read marker keys
+    _keys = new String[_buf.getInt()];
+    for(int i=0;i<_keys.length;i++) _keys[i] = PuppetBinary.readString(_buf).intern();
+    
+    // Read action index
+    int count = _buf.getInt();
+    _names = new String[count]; _offsets = new int[count];
+    for(int i=0;i<count;i++) {
+        _names[i] = PuppetBinary.readString(_buf); _offsets[i] = _buf.getInt();
+        _indexes.putIfAbsent(_names[i].toLowerCase(), i);
+    }
+    
+    // Add to open libraries
+    synchronized (_openLibs) { _openLibs.add(this); }
+}
+
+/**
+ * Returns the file.
+ */
+public File getFile()  { return _file; }
+
+/**
+ * Returns the sequence number of last journal record in actions XML file when library was written.
+ */
+public int getSeq()  { return _seq; }
+
+/**
+ * Returns the number of actions.
+ */
+public int getActionCount()  { return _names.length; }
+
+/**
+ * Returns the name of action at given index.
+ */
+public String getActionName(int anIndex)  { return _names[anIndex]; }
+
+/**
+ * Returns the index of action with given name (case insensitive, or -1 if not found).
+ */
+public int getActionIndex(String aName)
+{
+    Integer index = _indexes.get(aName.toLowerCase());
+    return index!=null? index : -1;
+}
+
+/**
+ * Returns a new action decoded from library for given index.
+ */
+public PuppetAction getAction(int anIndex)
+{
+    // Get buffer at action (duplicate buffer, since position isn't thread safe)
+    ByteBuffer buf0 = _buf; if(buf0==null) throw new IllegalStateException("Action library closed: " + _file);
+    ByteBuffer buf = buf0.duplicate(); buf.position(_offsets[anIndex]);
+    PuppetAction action = new PuppetAction(_names[anIndex]);
+    
+    // Read poses
+    int poseCount = buf.getInt();
+    for(int i=0;i<poseCount;i++) {
+        String name = PuppetBinary.readString(buf);
+        int markerCount = buf.getShort() & 0xffff;
+        Map <String,Point> markers = new LinkedHashMap(markerCount*2);
+        for(int j=0;j<markerCount;j++) { String key = _keys[buf.getShort() & 0xffff];
+            float x = buf.getFloat(), y = buf.getFloat();
+            markers.put(key, new Point(x, y));
+        }
+        action._poses.add(new PuppetPose(name, markers));
+    }
+    
+    // Read moves
+    int moveCount = buf.getInt();
+    for(int i=0;i<moveCount;i++) {
+        int poseIndex = buf.getInt(), time = buf.getInt();
+        PuppetMove move = new PuppetMove(poseIndex>=0? action._poses.get(poseIndex) : null, time);
+        action._moves.add(move); move._action = action;
+    }
+    action.movesDidChange();
+    
+    // Return action
+    return action;
+}
+
+/**
+ * Sets the handler to release library before its file is replaced (it should stop using library and close it).
+ */
+public void setReleaseHandler(Runnable aRun)  { _releaseHandler = aRun; }
+
+/**
+ * Returns whether library is closed.
+ */
+public boolean isClosed()  { return _buf==null; }
+
+/**
+ * Closes library (unmaps file now if platform allows, so file can be replaced). Actions can't be decoded after close.
+ */
+public void close()
+{
+    // Remove from open libraries and clear buffer (just return if already closed)
+    synchronized (_openLibs) { _openLibs.remove(this); }
+    ByteBuffer buf = _buf; if(buf==null) return;
+    _buf = null;
+    
+    // Unmap file with buffer cleaner, if available (otherwise it is unmapped when buffer is collected)
+    try {
+        Method cleanerMethod = buf.getClass().getMethod("cleaner"); cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buf);
+        if(cleaner!=null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+    }
+    catch(Exception e) { }
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "PuppetActionLibrary: " + _file + ", actions=" + _names.length; }
+
+/**
+ * Releases open libraries for given file (with release handler if set, otherwise just closes).
+ */
+static void releaseLibraries(File aFile)
+{
+    // Get open libraries for file
+    List <PuppetActionLibrary> libs = new ArrayList();
+    synchronized (_openLibs) { for(PuppetActionLibrary lib : _openLibs) if(lib._file.equals(aFile)) libs.add(lib); }
+    
+    // Release each
+    for(PuppetActionLibrary lib : libs) {
+        if(lib._releaseHandler!=null) lib._releaseHandler.run();
+        lib.close();
+    }
+}
+
+/**
+ * Returns the library file for given actions XML file path (or null if path isn't a local .xml file).
+ */
+public static File getLibraryFile(String aPath)
+{
+    if(SnapUtils.isTeaVM || aPath.startsWith("http") || !aPath.endsWith(".xml")) return null;
+    return new File(aPath.substring(0, aPath.length() - 4) + EXT);
+}
+
+/**
+ * Returns the library for given actions XML file path, if library file exists and is at least as new as XML file.
+ */
+public static PuppetActionLibrary getLibrary(String aPath)
+{
+    // Get library file (just return if missing or stale)
+    File file = getLibraryFile(aPath); if(file==null || !file.isFile()) return null;
+    File xfile = new File(aPath);
+    if(xfile.exists() && file.lastModified()<xfile.lastModified()) return null;
+    
+    // Open library
+    try { return new PuppetActionLibrary(file); }
+    catch(IOException e) { System.err.println("PuppetActionLibrary.getLibrary: " + e); return null; }
+}
+
+/**
+ * Writes given actions to library file for given actions XML file path and journal sequence number.
+ */
+public static void write(String aPath, List <PuppetAction> theActions, int aSeq)
+{
+    File file = getLibraryFile(aPath); if(file==null) return;
+    File tfile = new File(file.getPath() + ".tmp");
+    
+    // Get marker keys
+    Map <String,Integer> keys = new LinkedHashMap();
+    for(PuppetAction action : theActions)
+        for(PuppetPose pose : action.getPoses())
+            for(String key : pose.getMarkers().keySet())
+                keys.putIfAbsent(key, keys.size());
+    
+    // Write actions to byte array (so action offsets can be written in index before actions)
+    ByteArrayOutputStream abytes = new ByteArrayOutputStream();
+    int offsets[] = new int[theActions.size()];
+    try (DataOutputStream out = new DataOutputStream(abytes)) {
+        for(int i=0;i<theActions.size();i++) { PuppetAction action = theActions.get(i);
+            offsets[i] = out.size();
+    
+            // Write poses
+            List <PuppetPose> poses = action.getPoses();
+            out.writeInt(poses.size());
+            for(PuppetPose pose : poses) {
+                out.writeUTF(pose.getName()!=null? pose.getName() : "");
+                out.writeShort(pose.getMarkers().size());
+                for(Map.Entry <String,Point> entry : pose.getMarkers().entrySet()) { Point pnt = entry.getValue();
+                    out.writeShort(keys.get(entry.getKey()));
+                    out.writeFloat((float)pnt.x); out.writeFloat((float)pnt.y);
+                }
+            }
+    
+            // Write moves (pose as index in poses)
+            out.writeInt(action.getMoveCount());
+            for(PuppetMove move : action.getMoves()) {
+                int poseIndex = poses.indexOf(move.getPose());
+                if(poseIndex<0 && move.getPose()!=null)
+                    poseIndex = poses.indexOf(action.getPoseForName(move.getPoseName()));
+                out.writeInt(poseIndex); out.writeInt(move.getTime());
+            }
+        }
+    }
+    catch(IOException e) { System.err.println("PuppetActionLibrary.write: " + e); return; }
+    
+    // Write header, keys, index and actions to temp file
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tfile)))) {
+    
+        // Write header and keys
+        out.writeInt(MAGIC); out.writeInt(VERSION); out.writeInt(aSeq);
+        out.writeInt(keys.size());
+        for(String key : keys.keySet()) out.writeUTF(key);
+    
+        // Get index size (to make action offsets absolute)
+        int indexSize = 4;
+        for(PuppetAction action : theActions) indexSize += getUTFLength(action.getName()) + 4;
+        int start = out.size() + indexSize;
+    
+        // Write index and actions
+        out.writeInt(theActions.size());
+        for(int i=0;i<theActions.size();i++) {
+            out.writeUTF(theActions.get(i).getName()); out.writeInt(start + offsets[i]); }
+        abytes.writeTo(out);
+    }
+    catch(IOException e) {
+        System.err.println("PuppetActionLibrary.write: " + tfile + ": " + e); tfile.delete(); return; }
+    
+    // Release open libraries for file and move temp file to file
+    releaseLibraries(file);
+    if(!tfile.renameTo(file)) { file.delete();
+        if(!tfile.renameTo(file)) System.err.println("PuppetActionLibrary.write: Failed to write " + file); }
+}
+
+/**
+ * Returns the number of bytes given string takes when written with DataOutput.writeUTF.
+ */
+static int getUTFLength(String aStr)
+{
+    int len = 2;
+    for(int i=0, iMax=aStr.length(); i<iMax; i++) { char c = aStr.charAt(i);
+        len += c>=1 && c<=0x7f? 1 : c<=0x7ff? 2 : 3; }
+    return len;
+}
+
+}
@@ -0,0 +1,245 @@
+package puppets.puppet;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import snap.gfx.Image;
+import snap.util.SnapUtils;
+import snap.web.WebURL;
+
+/**
+ * A class to read/write a puppet as a single binary file (.pupb, next to .pup file), read through a memory-mapped file.
+ *
+ * Layout: header (magic, version, puppet version, name, path, parent name), parts (name, bounds, image index), joints
+ * (name, point), image index (offset and length of each PNG in file, with length and modified time of its part image
+ * file) and image bytes. Part images are decoded when first needed.
+ *
+ * Binary files are written on save (or by SpriteBaker -binary) - reading a puppet never writes one.
+ */
+public class PuppetBinary {
+
+    // Constants for file
+    static final int  MAGIC = 0x50555042, VERSION = 2;
+    
+    // The file extension
+    public static final String EXT = ".pupb";
+
+/**
+ * Returns the binary file for given puppet (or null if puppet source isn't a local .pup file).
+ */
+public static File getBinaryFile(Puppet aPuppet)
+{
+    if(SnapUtils.isTeaVM) return null;
+    WebURL url = aPuppet.getSourceURL();
+    File file = url!=null? url.getJavaFile() : null; if(file==null) return null;
+    String path = file.getPath(); if(!path.endsWith(".pup")) return null;
+    return new File(path.substring(0, path.length() - 4) + EXT);
+}
+
+/**
+ * Returns whether binary file for given puppet exists and is at least as new as .pup file (read also checks that part
+ * image files haven't changed since binary file was written).
+ */
+public static boolean isBinaryFileCurrent(Puppet aPuppet)
+{
+    File bfile = getBinaryFile(aPuppet); if(bfile==null || !bfile.isFile()) return false;
+    File file = aPuppet.getSourceURL().getJavaFile();
+    return bfile.lastModified()>=file.lastModified();
+}
+
+/**
+ * Reads given puppet from its binary file (returns false if not read, because file is missing, bad or stale).
+ */
+public static boolean read(Puppet aPuppet)
+{
+    File file = getBinaryFile(aPuppet); if(file==null || !file.isFile()) return false;
+    
+    // Map file
+    ByteBuffer buf;
+    try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); }
+    catch(IOException e) { System.err.println("PuppetBinary.read: " + file + ": " + e); return false; }
+    
+    // Read file (complain and return false if truncated or corrupt)
+    try { return read(aPuppet, file, buf); }
+    catch(RuntimeException e) { System.err.println("PuppetBinary.read: Bad file " + file + ": " + e); return false; }
+}
+
+/**
+ * Reads given puppet from given binary file mapped bytes (puppet is only changed if file is good and current).
+ */
+private static boolean read(Puppet aPuppet, File aFile, ByteBuffer buf)
+{
+    // Read header (just return if wrong magic/version)
+    if(buf.getInt()!=MAGIC || buf.getInt()!=VERSION) return false;
+    int version = buf.getInt();
+    String name = readString(buf), path = readString(buf), pname = readString(buf);
+    
+    // Read parts
+    int partCount = buf.getInt();
+    List <BinaryPart> parts = new ArrayList();
+    for(int i=0;i<partCount;i++) { BinaryPart part = new BinaryPart(); parts.add(part);
+        part._name = readString(buf);
+        part._x = buf.getDouble(); part._y = buf.getDouble(); part._w = buf.getDouble(); part._h = buf.getDouble();
+        part._imgIndex = buf.getInt();
+    }
+    
+    // Read joints
+    int jointCount = buf.getInt();
+    List <PuppetJoint> joints = new ArrayList();
+    for(int i=0;i<jointCount;i++) {
+        String jname = readString(buf); double x = buf.getDouble(), y = buf.getDouble();
+        joints.add(new PuppetJoint(jname, x, y));
+    }
+    
+    // Read image index (complain and return if image bytes aren't in file)
+    int imgCount = buf.getInt(); if(imgCount<0) throw new IllegalArgumentException("Bad image count " + imgCount);
+    int offsets[] = new int[imgCount], lengths[] = new int[imgCount];
+    long fileLengths[] = new long[imgCount], fileMods[] = new long[imgCount];
+    for(int i=0;i<imgCount;i++) {
+        long offset = buf.getLong(); int len = buf.getInt();
+        fileLengths[i] = buf.getLong(); fileMods[i] = buf.getLong();
+        if(offset<0 || len<0 || offset + len>buf.limit())
+            throw new IllegalArgumentException("Bad image offset " + offset + " and length " + len);
+        offsets[i] = (int)offset; lengths[i] = len;
+    }
+    
+    // Set image bytes location in parts (images are decoded when part image is requested) - just return if part image
+    // file has changed since binary file was written
+    for(BinaryPart part : parts) { int index = part._imgIndex; if(index<0) continue;
+        if(index>=imgCount) throw new IllegalArgumentException("Bad image index " + index);
+        File ifile = new File(aFile.getParentFile(), part._name + ".png");
+        if(fileLengths[index]>=0 && (ifile.length()!=fileLengths[index] || ifile.lastModified()!=fileMods[index]))
+            return false;
+        part._buf = buf; part._imgOffset = offsets[index]; part._imgLength = lengths[index];
+    }
+    
+    // Set name, path and parent, then set parts and joints like fromXML
+    aPuppet.setName(name);
+    aPuppet.setSourceRelPath(path);
+    if(pname.length()>0)
+        aPuppet._parent = PuppetUtils.getPuppetFile().getPuppetForName(pname);
+    aPuppet.setPartsAndJoints(new ArrayList(parts), joints, version);
+    return true;
+}
+
+/**
+ * Writes given puppet to its binary file (images are written as PNG bytes, from image files if available).
+ */
+public static void write(Puppet aPuppet)  { write(aPuppet, Collections.EMPTY_MAP); }
+
+/**
+ * Writes given puppet to its binary file with given PNG bytes already encoded for parts (other part images are from
+ * current binary file or image files if available).
+ */
+public static void write(Puppet aPuppet, Map <PuppetPart,byte[]> theEncoded)
+{
+    File file = getBinaryFile(aPuppet); if(file==null) return;
+    File tfile = new File(file.getPath() + ".tmp");
+    
+    // Get parts and joints owned by puppet, like toXML (from part and joint arrays, so derived parts aren't created
+    // and missing joints aren't looked up)
+    List <PuppetPart> parts = new ArrayList();
+    for(PuppetPart part : aPuppet._parts)
+        if(part!=null && part.getMotherPart()==null && part.getPuppet()==aPuppet) parts.add(part);
+    List <PuppetJoint> joints = new ArrayList();
+    for(PuppetJoint joint : aPuppet._joints) if(joint!=null && joint.getPuppet()==aPuppet) joints.add(joint);
+    
+    // Get image bytes for parts
+    byte images[][] = new byte[parts.size()][];
+    for(int i=0;i<images.length;i++) { PuppetPart part = parts.get(i);
+        images[i] = theEncoded.containsKey(part)? theEncoded.get(part) : getImageBytes(part); }
+    
+    // Write to byte array (so image offsets can be written in index before images)
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bout)) {
+    
+        // Write header (puppet version is version of part and joint coords, like toXML)
+        out.writeInt(MAGIC); out.writeInt(VERSION); out.writeInt(1);
+        out.writeUTF(aPuppet.getName());
+        out.writeUTF(aPuppet.getSourceRelPath());
+        out.writeUTF(aPuppet.getParent()!=null? aPuppet.getParent().getName() : "");
+    
+        // Write parts
+        out.writeInt(parts.size());
+        for(int i=0;i<parts.size();i++) { PuppetPart part = parts.get(i);
+            out.writeUTF(part.getName());
+            out.writeDouble(part._x); out.writeDouble(part._y); out.writeDouble(part._w); out.writeDouble(part._h);
+            out.writeInt(images[i]!=null? i : -1);
+        }
+    
+        // Write joints
+        out.writeInt(joints.size());
+        for(PuppetJoint joint : joints) {
+            out.writeUTF(joint.getName()); out.writeDouble(joint.getX()); out.writeDouble(joint.getY()); }
+    
+        // Write image index (offsets start after index, with part image file length and modified time, or -1 if none)
+        // and images
+        out.writeInt(images.length);
+        long offset = out.size() + images.length*28L;
+        for(int i=0;i<images.length;i++) { byte bytes[] = images[i]; int len = bytes!=null? bytes.length : 0;
+            WebURL url = parts.get(i).getImageURL(); File ifile = url!=null? url.getJavaFile() : null;
+            boolean hasFile = ifile!=null && ifile.isFile();
+            out.writeLong(offset); out.writeInt(len); offset += len;
+            out.writeLong(hasFile? ifile.length() : -1); out.writeLong(hasFile? ifile.lastModified() : 0);
+        }
+        for(byte bytes[] : images) if(bytes!=null) out.write(bytes);
+    }
+    catch(IOException e) { System.err.println("PuppetBinary.write: " + e); return; }
+    
+    // Write to temp file and move to file
+    try (OutputStream fout = new FileOutputStream(tfile)) { bout.writeTo(fout); }
+    catch(IOException e) { System.err.println("PuppetBinary.write: " + tfile + ": " + e); return; }
+    if(!tfile.renameTo(file)) { file.delete();
+        if(!tfile.renameTo(file)) System.err.println("PuppetBinary.write: Failed to write " + file); }
+}
+
+/**
+ * Returns the PNG bytes for given part image (bytes of binary or image file if unchanged, so image needn't be encoded).
+ */
+static byte[] getImageBytes(PuppetPart aPart)
+{
+    if(aPart._img==null || !aPart.isImageDirty()) {
+        if(aPart instanceof BinaryPart && ((BinaryPart)aPart)._buf!=null) return ((BinaryPart)aPart).getImageBytes();
+        WebURL url = aPart.getImageURL(); byte bytes[] = url!=null? url.getBytes() : null;
+        if(bytes!=null) return bytes;
+    }
+    Image img = aPart.getImage();
+    return img!=null? img.getBytesPNG() : null;
+}
+
+/**
+ * Reads a string written with DataOutput.writeUTF.
+ */
+static String readString(ByteBuffer aBuf)
+{
+    byte bytes[] = new byte[aBuf.getShort() & 0xffff]; aBuf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+}
+
+/**
+ * A PuppetPart subclass that decodes image from bytes in mapped binary file.
+ */
+static class BinaryPart extends PuppetPart {
+
+    // The mapped file and image index, offset and length
+    ByteBuffer  _buf;
+    int         _imgIndex, _imgOffset, _imgLength;
+    
+    /** Sets the image (image bytes in mapped file no longer apply). */
+    public void setImage(Image anImage)  { super.setImage(anImage); _buf = null; }
+    
+    /** Returns the image, decoded from mapped file bytes. */
+    protected Image getImageImpl()  { return _buf!=null? Image.get(getImageBytes()) : super.getImageImpl(); }
+    
+    /** Returns the image bytes from mapped file. */
+    byte[] getImageBytes()
+    {
+        byte bytes[] = new byte[_imgLength];
+        ByteBuffer buf = _buf.duplicate(); buf.position(_imgOffset); buf.get(bytes);
+        return bytes;
+    }
+}
+
+}
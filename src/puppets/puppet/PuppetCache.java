@@ -0,0 +1,116 @@
+package puppets.puppet;
+import java.util.*;
+import snap.gfx.Image;
+
+/**
+ * A class to keep loaded puppets of PuppetFile entries within a memory budget (estimated from loaded part image
+ * pixel sizes when each puppet loads), by evicting least recently used puppets from their entries.
+ *
+ * Puppets that are pinned (by a showing view) or that are the parent of another cached puppet aren't evicted.
+ * Marking a puppet as used is constant time - cache is only trimmed when a puppet loads (or max size changes).
+ */
+public class PuppetCache {
+
+    // The max memory of cached puppet images (in bytes)
+    private static long  _maxSize = 256*1024*1024L;
+    
+    // The estimated memory of cached puppet images (sum of entry sizes, in bytes)
+    private static long  _size;
+    
+    // The entries with loaded puppets and their estimated memory (in bytes), in least recently used order
+    private static LinkedHashMap <PuppetUtils.PuppetEntry,Long>  _entries = new LinkedHashMap(16, .75f, true);
+
+/**
+ * Returns the max memory of cached puppet images (in bytes).
+ */
+public static synchronized long getMaxSize()  { return _maxSize; }
+
+/**
+ * Sets the max memory of cached puppet images (in bytes).
+ */
+public static synchronized void setMaxSize(long aSize)  { _maxSize = aSize; trim(null); }
+
+/**
+ * Returns the number of cached puppets.
+ */
+public static synchronized int getCount()  { return _entries.size(); }
+
+/**
+ * Returns the estimated memory of cached puppet images (in bytes).
+ */
+public static synchronized long getSize()  { return _size; }
+
+/**
+ * Adds given entry with newly loaded puppet (its size is added and cache is trimmed once puppet images are loaded).
+ */
+public static void add(PuppetUtils.PuppetEntry anEntry, Puppet aPuppet)
+{
+    synchronized (PuppetCache.class) { Long size = _entries.put(anEntry, 0L); if(size!=null) _size -= size; }
+    aPuppet.getLoadFuture().thenRun(() -> puppetLoaded(anEntry, aPuppet));
+}
+
+/**
+ * Called when puppet of given entry has loaded to add its size and evict least recently used puppets if over max.
+ */
+static synchronized void puppetLoaded(PuppetUtils.PuppetEntry anEntry, Puppet aPuppet)
+{
+    // If entry was removed or puppet evicted, just return
+    Long old = _entries.get(anEntry); if(old==null || anEntry._puppet!=aPuppet) return;
+    
+    // Set size and trim
+    long size = getMemorySize(aPuppet);
+    _entries.put(anEntry, size); _size += size - old;
+    trim(anEntry);
+}
+
+/**
+ * Marks given entry as most recently used.
+ */
+public static synchronized void touch(PuppetUtils.PuppetEntry anEntry)  { _entries.get(anEntry); }
+
+/**
+ * Removes given entry from cache (without evicting its puppet).
+ */
+public static synchronized void remove(PuppetUtils.PuppetEntry anEntry)
+{
+    Long size = _entries.remove(anEntry);
+    if(size!=null) _size -= size;
+}
+
+/**
+ * Evicts least recently used puppets (other than for given entry) until cache is no bigger than max size.
+ */
+public static synchronized void trim(PuppetUtils.PuppetEntry aKeep)
+{
+    // If under max, just return
+    if(_size<=_maxSize) return;
+    
+    // Get parents of cached puppets (they're needed by children)
+    Set <Puppet> parents = new HashSet();
+    for(PuppetUtils.PuppetEntry entry : _entries.keySet()) { Puppet pup = entry._puppet;
+        if(pup!=null && pup.getParent()!=null) parents.add(pup.getParent()); }
+    
+    // Iterate over entries from least recently used and evict puppet if not kept, pinned or parent
+    for(Iterator <Map.Entry<PuppetUtils.PuppetEntry,Long>> it = _entries.entrySet().iterator(); it.hasNext() &&
+        _size>_maxSize; ) {
+        Map.Entry <PuppetUtils.PuppetEntry,Long> me = it.next();
+        PuppetUtils.PuppetEntry entry = me.getKey(); Puppet pup = entry._puppet;
+        if(entry==aKeep || pup!=null && (pup.isPinned() || parents.contains(pup))) continue;
+        _size -= me.getValue();
+        entry.evict(pup); it.remove();
+    }
+}
+
+/**
+ * Returns the estimated memory of loaded part images of given puppet (in bytes).
+ */
+public static long getMemorySize(Puppet aPuppet)
+{
+    if(aPuppet==null) return 0;
+    long size = 0;
+    for(PuppetPart part : aPuppet._parts) { Image img = part!=null && part._puppet==aPuppet? part._img : null;
+        if(img!=null && img.isLoaded()) size += img.getPixWidth()*(long)img.getPixHeight()*4; }
+    return size;
+}
+
+}
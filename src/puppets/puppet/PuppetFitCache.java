@@ -0,0 +1,185 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import snap.util.SnapUtils;
+import snap.web.WebURL;
+
+/**
+ * A class to hold actions fit to a puppet, persisted in a cache file next to the puppet source.
+ */
+public class PuppetFitCache {
+
+    // The puppet
+    Puppet                         _puppet;
+    
+    // The action fits by action name
+    Map <String,PuppetActionFit>   _fits = new HashMap();
+    
+    // Whether cache file has been read
+    boolean                        _read;
+    
+    // Whether fits have changed since cache file was read/written
+    boolean                        _dirty;
+    
+    // Constants for cache file
+    static final int  MAGIC = 0x50464954, VERSION = 1;
+
+/**
+ * Creates a new PuppetFitCache for given puppet.
+ */
+public PuppetFitCache(Puppet aPuppet)  { _puppet = aPuppet; }
+
+/**
+ * Returns the puppet.
+ */
+public Puppet getPuppet()  { return _puppet; }
+
+/**
+ * Returns the fit of given action to puppet (fitting it if missing or out of date).
+ */
+public PuppetActionFit getFit(PuppetAction anAction)
+{
+    // Get current fit (just return if still valid)
+    String name = anAction.getName();
+    PuppetActionFit fit = getFitForName(name);
+    if(fit!=null && fit.isValid(anAction)) return fit;
+    
+    // If fit (from cache file or earlier version of action) has matching key, just update action and return
+    PuppetRetarget rtgt = _puppet.getRetarget(1);
+    PackedPose srcPoses[] = PuppetActionFit.getSourcePoses(anAction);
+    long key = PuppetActionFit.getKey(rtgt, srcPoses);
+    if(fit!=null && fit.getKey()==key && fit.getPoseCount()==srcPoses.length) {
+        synchronized (this) { fit.setAction(anAction, rtgt, srcPoses, key); } return fit; }
+    
+    // Create new fit and add (only mark dirty if reference puppet was loaded)
+    fit = new PuppetActionFit(_puppet, anAction);
+    synchronized (this) {
+        _fits.put(name, fit);
+        if(rtgt._refLoaded) _dirty = true;
+    }
+    return fit;
+}
+
+/**
+ * Returns the current fit for given action name (reading cache file if needed).
+ */
+protected synchronized PuppetActionFit getFitForName(String aName)
+{
+    if(!_read) readCache();
+    return _fits.get(aName);
+}
+
+/**
+ * Fits given actions to puppet in parallel (on puppet loader threads) and writes cache file if any changed.
+ */
+public void fitActions(List <PuppetAction> theActions)
+{
+    if(SnapUtils.isTeaVM) { theActions.forEach(a -> getFit(a)); writeCache(); }
+    else fitActionsLater(theActions).join();
+}
+
+/**
+ * Fits given actions to puppet in background (on puppet loader threads) and writes cache file if any changed.
+ * Actions are fetched by index on loader threads, so a lazy list (like action library) decodes one action at a time
+ * there instead of all up front.
+ */
+public CompletableFuture <Void> fitActionsLater(List <PuppetAction> theActions)
+{
+    // Get loader pool
+    Executor pool = Puppet.getLoadPool();
+    
+    // Make sure puppet profile is created once (instead of in every thread), then fit each action and write cache
+    return CompletableFuture.runAsync(() -> _puppet.getRetarget(1), pool).thenCompose(v -> {
+        CompletableFuture futures[] = new CompletableFuture[theActions.size()];
+        for(int i=0;i<futures.length;i++) { int index = i;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                PuppetAction action = getAction(theActions, index); if(action!=null) getFit(action); }, pool); }
+        return CompletableFuture.allOf(futures);
+    }).thenRun(() -> writeCache());
+}
+
+/**
+ * Returns the action at given index in given list (or null if list has since shrunk). Lists that change, like the
+ * action file list, synchronize on themselves.
+ */
+private static PuppetAction getAction(List <PuppetAction> theActions, int anIndex)
+{
+    synchronized (theActions) { return anIndex<theActions.size()? theActions.get(anIndex) : null; }
+}
+
+/**
+ * Returns the cache file (or null if puppet source isn't a local file).
+ */
+public File getCacheFile()
+{
+    if(SnapUtils.isTeaVM) return null;
+    WebURL url = _puppet.getSourceURL();
+    File file = url!=null? url.getJavaFile() : null; if(file==null) return null;
+    return new File(file.getParentFile(), _puppet.getName() + ".fits");
+}
+
+/**
+ * Reads the cache file.
+ */
+protected synchronized void readCache()
+{
+    // Get cache file (just return if not found)
+    _read = true;
+    File file = getCacheFile(); if(file==null || !file.exists()) return;
+    
+    // Read header and fit entries
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        int magic = in.readInt(), version = in.readInt(), pkeyCount = in.readInt();
+        if(magic!=MAGIC || version!=VERSION || pkeyCount!=new PackedPose().getCount()) return;
+        for(int i=0, iMax=in.readInt(); i<iMax; i++) {
+            String name = in.readUTF();
+            long key = in.readLong();
+            PackedPose poses[] = new PackedPose[in.readInt()];
+            for(int j=0;j<poses.length;j++) { PackedPose pose = poses[j] = new PackedPose();
+                double coords[] = pose.getCoords();
+                for(int k=0;k<coords.length;k++) coords[k] = in.readDouble(); }
+            _fits.put(name, new PuppetActionFit(_puppet, key, poses));
+        }
+    }
+    
+    // Complain and clear partial read
+    catch(IOException e) { System.err.println("PuppetFitCache.readCache: " + file + ": " + e); _fits.clear(); }
+}
+
+/**
+ * Writes the cache file (if changed).
+ */
+public synchronized void writeCache()
+{
+    // Get cache file (just return if not changed or no file)
+    if(!_dirty) return;
+    File file = getCacheFile(); if(file==null) return;
+    _dirty = false;
+    
+    // Write header and fit entries to temp file and move to cache file
+    File tfile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tfile)))) {
+        out.writeInt(MAGIC); out.writeInt(VERSION); out.writeInt(new PackedPose().getCount());
+        out.writeInt(_fits.size());
+        for(Map.Entry <String,PuppetActionFit> entry : _fits.entrySet()) { PuppetActionFit fit = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(fit.getKey());
+            out.writeInt(fit.getPoseCount());
+            for(int i=0;i<fit.getPoseCount();i++)
+                for(double val : fit.getPose(i).getCoords()) out.writeDouble(val);
+        }
+    }
+    catch(IOException e) { System.err.println("PuppetFitCache.writeCache: " + tfile + ": " + e); return; }
+    
+    // Move temp file to cache file
+    if(!tfile.renameTo(file)) { file.delete();
+        if(!tfile.renameTo(file)) System.err.println("PuppetFitCache.writeCache: Failed to write " + file); }
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "PuppetFitCache: puppet=" + _puppet.getName() + ", fits=" + _fits.size(); }
+
+}
@@ -0,0 +1,195 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import snap.geom.Insets;
+import snap.gfx.*;
+import snap.util.SnapUtils;
+
+/**
+ * A class to cache baked action frames on disk (in ROOT/cache), keyed by a hash of everything that affects them
+ * (puppet part images and joints, action XML and its fit to puppet, puppet height, insets and adaptive sampling
+ * settings).
+ *
+ * Least recently used entries are deleted when the cache dir grows beyond max size.
+ */
+public class PuppetFrameCache {
+
+    // The max size of cache dir (in bytes)
+    private static long   _maxSize = 512*1024*1024L;
+    
+    // Constants for cache file
+    static final int  MAGIC = 0x5046524d, VERSION = 2;
+    
+    // Constant for FNV-1a hash start
+    static final long HASH_START = 0xcbf29ce484222325L;
+
+/**
+ * Returns the cache dir (or null if ROOT isn't a local dir).
+ */
+public static File getCacheDir()
+{
+    if(SnapUtils.isTeaVM || PuppetUtils.ROOT.startsWith("http")) return null;
+    return new File(PuppetUtils.ROOT, "cache");
+}
+
+/**
+ * Returns the max size of cache dir (in bytes).
+ */
+public static long getMaxSize()  { return _maxSize; }
+
+/**
+ * Sets the max size of cache dir (in bytes).
+ */
+public static void setMaxSize(long aSize)  { _maxSize = aSize; }
+
+/**
+ * Returns the key for frames of given puppet, action, puppet height, insets and adaptive sampling threshold and
+ * max interval (puppet must be loaded). The key includes the fit key of action to puppet, since fit poses also depend
+ * on the reference puppet that poses are fit against.
+ */
+public static String getKey(Puppet aPuppet, PuppetAction anAction, double aHeight, Insets theIns, double aThreshold,
+    int aMaxInterval)
+{
+    long hash = hash(HASH_START, aPuppet.getContentKey());
+    hash = hash(hash, anAction.toXML(null).toString());
+    hash = hash(hash, PuppetActionFit.getKey(aPuppet.getRetarget(1), PuppetActionFit.getSourcePoses(anAction)));
+    hash = hash(hash, Double.doubleToLongBits(aHeight));
+    hash = hash(hash, Double.doubleToLongBits(theIns.top)); hash = hash(hash, Double.doubleToLongBits(theIns.right));
+    hash = hash(hash, Double.doubleToLongBits(theIns.bottom)); hash = hash(hash, Double.doubleToLongBits(theIns.left));
+    if(aThreshold>0) { hash = hash(hash, Double.doubleToLongBits(aThreshold)); hash = hash(hash, aMaxInterval); }
+    return String.format("%016x", hash);
+}
+
+/**
+ * Returns the content key for given puppet (hash of part names, bounds and image pixels and joint names and points).
+ */
+protected static long getPuppetKey(Puppet aPuppet)
+{
+    long hash = HASH_START;
+    for(PuppetPart part : aPuppet.getPartsPaintOrder()) { if(part==null) continue;
+        hash = hash(hash, part.getName());
+        hash = hash(hash, Double.doubleToLongBits(part.getX())); hash = hash(hash, Double.doubleToLongBits(part.getY()));
+        hash = hash(hash, Double.doubleToLongBits(part.getWidth()));
+        hash = hash(hash, Double.doubleToLongBits(part.getHeight()));
+        hash = hash(hash, part.getImageHash());
+    }
+    for(PuppetJoint joint : aPuppet.getJoints()) {
+        hash = hash(hash, joint.getName());
+        hash = hash(hash, Double.doubleToLongBits(joint.getX())); hash = hash(hash, Double.doubleToLongBits(joint.getY()));
+    }
+    return hash;
+}
+
+/**
+ * Returns the cached frames for given key and frame pixel size (or null if not cached). Files that are bad or don't
+ * match are deleted, so frames are baked and cached again.
+ */
+public static List <Image> getFrames(String aKey, int aPixW, int aPixH)
+{
+    // Get cache file (just return if not found)
+    File dir = getCacheDir(); if(dir==null) return null;
+    File file = new File(dir, aKey + ".frames"); if(!file.exists()) return null;
+    
+    // Read header (just delete and return if format or frame size doesn't match)
+    List <Image> images = null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        int magic = in.readInt(), version = in.readInt();
+        int pw = in.readInt(), ph = in.readInt(); double scale = in.readDouble(); int count = in.readInt();
+        if(magic!=MAGIC || version!=VERSION || pw!=aPixW || ph!=aPixH || !(scale>0) || count<0)
+            throw new IOException("Bad header or frame size " + pw + "x" + ph);
+    
+        // Read frames: decode each PNG and draw into image at frame size and scale (or reuse last for repeat)
+        images = new ArrayList(Math.min(count, 1024));
+        for(int i=0;i<count;i++) { int len = in.readInt();
+            if(len<-1 || len==-1 && i==0) throw new IOException("Bad frame length " + len + " for frame " + i);
+            if(len<0) { images.add(images.get(i-1)); continue; }
+            byte bytes[] = new byte[len]; in.readFully(bytes);
+            Image png = Image.get(bytes);
+            Image img = Image.getImageForSizeAndScale(pw/scale, ph/scale, true, scale);
+            img.getPainter().drawImage(png, 0, 0, pw/scale, ph/scale);
+            images.add(img);
+        }
+    }
+    
+    // If bad file (or bad PNG), complain, delete file and return null
+    catch(IOException | RuntimeException e) {
+        System.err.println("PuppetFrameCache.getFrames: " + file + ": " + e);
+        file.delete(); return null;
+    }
+    
+    // Mark file as recently used and return images
+    file.setLastModified(System.currentTimeMillis());
+    return images;
+}
+
+/**
+ * Writes given frames to cache for given key (and evicts least recently used entries if cache is too big).
+ */
+public static void putFrames(String aKey, List <Image> theImages)
+{
+    // Get cache dir (just return if none or no images)
+    File dir = getCacheDir(); if(dir==null || theImages.size()==0) return;
+    if(!dir.isDirectory() && !dir.mkdirs()) { System.err.println("PuppetFrameCache: Can't create " + dir); return; }
+    
+    // Create unique temp file (so concurrent puts of same key don't write same file)
+    File file = new File(dir, aKey + ".frames"), tfile;
+    try { tfile = File.createTempFile(aKey, ".tmp", dir); }
+    catch(IOException e) { System.err.println("PuppetFrameCache.putFrames: " + dir + ": " + e); return; }
+    
+    // Write header and frames as PNG to temp file (repeated frames are written as -1)
+    Image img0 = theImages.get(0);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tfile)))) {
+        out.writeInt(MAGIC); out.writeInt(VERSION);
+        out.writeInt(img0.getPixWidth()); out.writeInt(img0.getPixHeight()); out.writeDouble(img0.getDPIScale());
+        out.writeInt(theImages.size());
+        for(int i=0;i<theImages.size();i++) { Image img = theImages.get(i);
+            if(i>0 && img==theImages.get(i-1)) { out.writeInt(-1); continue; }
+            byte bytes[] = img.getBytesPNG();
+            out.writeInt(bytes.length); out.write(bytes); }
+    }
+    catch(IOException e) { System.err.println("PuppetFrameCache.putFrames: " + tfile + ": " + e); tfile.delete(); return; }
+    
+    // Move temp file to cache file and trim cache (under trim lock, so trim never sees cache file half replaced)
+    synchronized (PuppetFrameCache.class) {
+        if(!tfile.renameTo(file)) { file.delete();
+            if(!tfile.renameTo(file)) {
+                System.err.println("PuppetFrameCache.putFrames: Can't move " + tfile + " to " + file);
+                tfile.delete(); return;
+            }
+        }
+        trimCache();
+    }
+}
+
+/**
+ * Deletes least recently used cache files until cache dir is no bigger than max size.
+ */
+public static synchronized void trimCache()
+{
+    // Get cache files and total size (just return if under max)
+    File dir = getCacheDir(); File files[] = dir!=null? dir.listFiles((d,n) -> n.endsWith(".frames")) : null;
+    if(files==null) return;
+    long size = 0; for(File file : files) size += file.length();
+    if(size<=_maxSize) return;
+    
+    // Sort by last used and delete oldest until under max
+    Arrays.sort(files, (f1,f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+    for(int i=0;i<files.length && size>_maxSize;i++) { long len = files[i].length();
+        if(files[i].delete()) size -= len; }
+}
+
+/** Adds given long to given FNV-1a hash. */
+static long hash(long aHash, long aVal)
+{
+    for(int i=0;i<64;i+=8) { aHash ^= (aVal>>>i) & 0xff; aHash *= 0x100000001b3L; }
+    return aHash;
+}
+
+/** Adds given string to given FNV-1a hash. */
+static long hash(long aHash, String aStr)
+{
+    for(int i=0, iMax=aStr.length(); i<iMax; i++) { aHash ^= aStr.charAt(i); aHash *= 0x100000001b3L; }
+    return aHash;
+}
+
+}
@@ -0,0 +1,94 @@
+package puppets.puppet;
+
+/**
+ * A class to plan which frames of an action need to be rendered, by sampling the fit pose at each frame step and
+ * marking frames whose markers moved no more than tolerance from the last rendered frame as repeats of it.
+ *
+ * With a larger tolerance (adaptive sampling), slow motion is rendered only when it has moved enough to show or
+ * when max interval has passed since last rendered frame, while fast motion is still rendered at every step.
+ */
+public class PuppetFramePlan {
+
+    // The number of frames and time between frames (in millis)
+    int            _frameCount, _step;
+    
+    // The index of the rendered frame shown for each frame
+    int            _keys[];
+    
+    // The number of rendered frames
+    int            _keyCount;
+    
+    // The default tolerance for matching poses (in view points)
+    public static final double DEFAULT_TOLERANCE = .25;
+    
+    // The default max interval between rendered frames for adaptive sampling (in millis)
+    public static final int DEFAULT_MAX_INTERVAL = 200;
+
+/**
+ * Creates a new PuppetFramePlan for given action fit, view scale, frame count, frame step and tolerance.
+ */
+public PuppetFramePlan(PuppetActionFit aFit, double aScale, int aFrameCount, int aStep, double aTol)
+{
+    this(aFit, aScale, aFrameCount, aStep, aTol, Integer.MAX_VALUE);
+}
+
+/**
+ * Creates a new PuppetFramePlan for given action fit, view scale, frame count, frame step, tolerance and max interval
+ * between rendered frames (in millis).
+ */
+public PuppetFramePlan(PuppetActionFit aFit, double aScale, int aFrameCount, int aStep, double aTol, int aMaxInterval)
+{
+    _frameCount = aFrameCount; _step = aStep;
+    _keys = new int[aFrameCount];
+    
+    // Iterate over frames and compare pose with last rendered pose (swap buffers when new frame is rendered)
+    PackedPose pose = new PackedPose(), keyPose = new PackedPose();
+    for(int i=0;i<aFrameCount;i++) {
+        PackedPose p = aFit.getPoseForTime(i*aStep, aScale, pose);
+        boolean held = i>0 && (i - _keys[i-1])*aStep<aMaxInterval;
+        if(held && (p==null || pose.getMaxDistance(keyPose)<=aTol)) { _keys[i] = _keys[i-1]; continue; }
+        _keys[i] = i; _keyCount++;
+        PackedPose swap = keyPose; keyPose = pose; pose = swap;
+    }
+}
+
+/**
+ * Returns the number of frames.
+ */
+public int getFrameCount()  { return _frameCount; }
+
+/**
+ * Returns the number of frames that need to be rendered.
+ */
+public int getKeyFrameCount()  { return _keyCount; }
+
+/**
+ * Returns whether frame at given index needs to be rendered.
+ */
+public boolean isKeyFrame(int anIndex)  { return _keys[anIndex]==anIndex; }
+
+/**
+ * Returns the index of rendered frame shown for frame at given index.
+ */
+public int getKeyFrame(int anIndex)  { return _keys[anIndex]; }
+
+/**
+ * Returns the duration (in millis) that rendered frame at given index is shown.
+ */
+public int getDuration(int anIndex)
+{
+    int end = anIndex + 1; while(end<_frameCount && _keys[end]==anIndex) end++;
+    return (end - anIndex)*_step;
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()
+{
+    int saved = _frameCount - _keyCount;
+    return String.format("PuppetFramePlan: %d of %d frames rendered (%d repeats, %.0f%% saved)", _keyCount,
+        _frameCount, saved, _frameCount>0? saved*100d/_frameCount : 0);
+}
+
+}
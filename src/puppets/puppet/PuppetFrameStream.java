@@ -0,0 +1,280 @@
+package puppets.puppet;
+import java.util.Arrays;
+import snap.geom.Insets;
+import snap.gfx.*;
+import snap.view.ViewUtils;
+
+/**
+ * A class to render puppet action frames on demand, just ahead of a playback cursor, into a small buffer of frames.
+ *
+ * Unlike PuppetImager, which renders all frames before any can be shown, the first frame is available as soon as it
+ * is rendered, and memory is bounded by buffer size (unless frames are kept once shown).
+ */
+public class PuppetFrameStream {
+
+    // The Puppet
+    Puppet           _puppet;
+    
+    // The Action
+    PuppetAction     _action;
+    
+    // The ActionView
+    ActionView       _actView;
+    
+    // The frame count
+    int              _frameCount;
+    
+    // Whether frames are kept once shown (instead of dropped when buffer moves past them)
+    boolean          _keepFrames;
+    
+    // Whether playback loops (so frames at start are rendered ahead when cursor is near end)
+    boolean          _loops;
+    
+    // The number of frames rendered ahead of cursor
+    int              _bufSize;
+    
+    // The buffered frame images and the frame index of each (indexed by frame if keeping frames)
+    Image            _images[];
+    int              _imageFrames[];
+    
+    // The playback cursor (frame index)
+    int              _cursor;
+    
+    // Whether frames are being rendered by a worker
+    boolean          _filling;
+    
+    // The error if rendering failed (stream stops rendering)
+    volatile Throwable  _error;
+    
+    // The number of frames rendered
+    int              _renderCount;
+    
+    // The frame image size
+    double           _frameW, _frameH;
+
+/**
+ * Creates PuppetFrameStream for given puppet, action, scale of default puppet height, insets, buffer size and
+ * whether to keep frames once shown.
+ */
+public PuppetFrameStream(Puppet aPuppet, PuppetAction anAction, double aScale, Insets theIns, int aBufSize,
+    boolean keepFrames)
+{
+    _puppet = aPuppet;
+    _action = anAction;
+    _keepFrames = keepFrames;
+    
+    // Create action view
+    _actView = new ActionView(aPuppet);
+    _actView.setFill(null); _actView.setBorder(null);
+    _actView.setPadding(theIns!=null? theIns : Insets.EMPTY);
+    _actView.setPuppetHeight(PuppetImager.DEFAULT_HEIGHT*(aScale>0? aScale : 1));
+    _actView.setPuppet(aPuppet);
+    _actView.setPoseSmoothly(false);
+    _frameW = _actView.getWidth(); _frameH = _actView.getHeight();
+    
+    // Get frame count and buffer size and create buffers
+    _frameCount = anAction.getMaxTime()/PuppetImager.FRAME_DELAY_MILLIS + 1;
+    _bufSize = Math.max(Math.min(aBufSize, _frameCount), 1);
+    int slotCount = keepFrames || _bufSize==_frameCount? _frameCount : _bufSize;
+    _images = new Image[slotCount];
+    _imageFrames = new int[slotCount];
+    Arrays.fill(_imageFrames, -1);
+    
+    // Start rendering from first frame
+    requestFill();
+}
+
+/**
+ * Returns the puppet.
+ */
+public Puppet getPuppet()  { return _puppet; }
+
+/**
+ * Returns the action.
+ */
+public PuppetAction getAction()  { return _action; }
+
+/**
+ * Returns the frame count.
+ */
+public int getFrameCount()  { return _frameCount; }
+
+/**
+ * Returns the number of frames rendered ahead of cursor.
+ */
+public int getBufferSize()  { return _bufSize; }
+
+/**
+ * Returns whether frames are kept once shown.
+ */
+public boolean isKeepFrames()  { return _keepFrames; }
+
+/**
+ * Returns the frame image width.
+ */
+public double getFrameWidth()  { return _frameW; }
+
+/**
+ * Returns the frame image height.
+ */
+public double getFrameHeight()  { return _frameH; }
+
+/**
+ * Returns whether playback loops.
+ */
+public boolean isLooping()  { return _loops; }
+
+/**
+ * Sets whether playback loops.
+ */
+public void setLooping(boolean aValue)  { _loops = aValue; requestFill(); }
+
+/**
+ * Returns the playback cursor (frame index).
+ */
+public int getCursor()  { return _cursor; }
+
+/**
+ * Sets the playback cursor (frame index) and renders frames ahead of it.
+ */
+public void setCursor(int anIndex)
+{
+    synchronized (this) { _cursor = anIndex; }
+    requestFill();
+}
+
+/**
+ * Returns the frame image at given index and moves cursor to it (or null if not yet rendered).
+ */
+public Image getFrame(int anIndex)
+{
+    setCursor(anIndex);
+    return getFrameImpl(anIndex);
+}
+
+/**
+ * Returns whether frame at given index is rendered.
+ */
+public boolean isFrameReady(int anIndex)  { return getFrameImpl(anIndex)!=null; }
+
+/**
+ * Returns the frame image at given index (or null if not rendered).
+ */
+private synchronized Image getFrameImpl(int anIndex)
+{
+    int slot = getSlot(anIndex);
+    return slot>=0? _images[slot] : null;
+}
+
+/**
+ * Returns the slot of frame at given index (or -1 if not rendered).
+ */
+private int getSlot(int anIndex)
+{
+    if(_images.length==_frameCount) return _imageFrames[anIndex]==anIndex? anIndex : -1;
+    for(int i=0;i<_imageFrames.length;i++) if(_imageFrames[i]==anIndex) return i;
+    return -1;
+}
+
+/**
+ * Returns the number of frames rendered.
+ */
+public int getRenderCount()  { return _renderCount; }
+
+/**
+ * Returns whether rendering failed (no more frames are rendered).
+ */
+public boolean isFailed()  { return _error!=null; }
+
+/**
+ * Returns the error if rendering failed.
+ */
+public Throwable getError()  { return _error; }
+
+/**
+ * Returns the index of next frame in buffer ahead of cursor that needs to be rendered (or -1 if buffer is full).
+ */
+private synchronized int getNextFrame()
+{
+    for(int i=0;i<_bufSize;i++) { int index = _cursor + i;
+        if(index>=_frameCount) { if(_loops) index %= _frameCount; else break; }
+        if(getSlot(index)<0) return index;
+    }
+    return -1;
+}
+
+/**
+ * Returns whether frame at given index is in buffer ahead of cursor.
+ */
+private boolean isInBuffer(int anIndex)
+{
+    int dist = anIndex - _cursor; if(dist<0 && _loops) dist += _frameCount;
+    return dist>=0 && dist<_bufSize;
+}
+
+/**
+ * Adds a rendered frame image (dropping a frame that cursor has moved past, if buffer is full).
+ */
+private synchronized void addFrame(int anIndex, Image anImage)
+{
+    // Get slot: frame index if slot for every frame, otherwise first empty slot or slot with frame not in buffer
+    int slot = _images.length==_frameCount? anIndex : -1;
+    for(int i=0;slot<0 && i<_imageFrames.length;i++) if(_imageFrames[i]<0) slot = i;
+    for(int i=0;slot<0 && i<_imageFrames.length;i++) if(!isInBuffer(_imageFrames[i])) slot = i;
+    if(slot<0) return;
+    
+    // Set frame
+    _images[slot] = anImage; _imageFrames[slot] = anIndex;
+    _renderCount++;
+}
+
+/**
+ * Starts a worker rendering frames ahead of cursor (if not already).
+ */
+private void requestFill()
+{
+    synchronized (this) { if(_filling || _error!=null || getNextFrame()<0) return; _filling = true; }
+    PuppetImager.execute(() -> fill(), PuppetImager.PRIORITY_VISIBLE);
+}
+
+/**
+ * Called by worker thread to render frames ahead of cursor until buffer is full.
+ */
+private void fill()
+{
+    // If puppet not loaded, requeue when it is
+    if(!_puppet.isLoaded()) {
+        _puppet.getLoadFuture().thenRun(() -> PuppetImager.execute(() -> fill(), PuppetImager.PRIORITY_VISIBLE));
+        return;
+    }
+    
+    // Set action (poses are set by kinematics, so no physics needed)
+    if(_actView.getAction()!=_action) _actView.setAction(_action);
+    
+    // Render next frame until buffer is full (if render fails, log and mark failed so later requests don't retry)
+    try {
+        while(true) {
+            int index; synchronized (this) { index = getNextFrame(); if(index<0) { _filling = false; return; } }
+            Image img = Image.getImageForSizeAndScale(_frameW, _frameH, true, 0);
+            _actView.setActionTime(index*PuppetImager.FRAME_DELAY_MILLIS);
+            _actView.finishPose();
+            ViewUtils.paintAll(_actView, img.getPainter());
+            addFrame(index, img);
+        }
+    }
+    catch(Throwable t) {
+        System.err.println("PuppetFrameStream: Failed " + _puppet.getName() + ' ' + _action.getName() + ": " + t);
+        synchronized (this) { _error = t; _filling = false; }
+    }
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()
+{
+    return "PuppetFrameStream: " + _puppet.getName() + ' ' + _action.getName() + ", cursor=" + _cursor +
+        ", rendered=" + _renderCount;
+}
+
+}
@@ -0,0 +1,149 @@
+package puppets.puppet;
+import snap.geom.Insets;
+import snap.gfx.*;
+import snap.view.*;
+
+/**
+ * A View to play the frames of a PuppetFrameStream as they are rendered (holding last frame if next isn't ready).
+ */
+public class PuppetFrameStreamView extends View {
+
+    // The frame stream
+    PuppetFrameStream  _stream;
+    
+    // The current frame index
+    int                _frame;
+    
+    // The last frame image painted (shown until current frame is ready)
+    Image              _lastImage;
+    
+    // Whether to draw frames flipped horizontally
+    boolean            _flipX;
+    
+    // Whether playback loops
+    boolean            _loops;
+    
+    // The timer for playback
+    ViewTimer          _timer;
+
+/**
+ * Creates a PuppetFrameStreamView.
+ */
+public PuppetFrameStreamView()  { }
+
+/**
+ * Returns the frame stream.
+ */
+public PuppetFrameStream getStream()  { return _stream; }
+
+/**
+ * Sets the frame stream.
+ */
+public void setStream(PuppetFrameStream aStream)
+{
+    stop(); _stream = aStream; _frame = 0; _lastImage = null;
+    relayoutParent(); repaint();
+}
+
+/**
+ * Returns the current frame index.
+ */
+public int getFrame()  { return _frame; }
+
+/**
+ * Sets the current frame index (moves stream cursor, so frames ahead of it are rendered).
+ */
+public void setFrame(int anIndex)
+{
+    _frame = anIndex;
+    if(_stream!=null) _stream.setCursor(anIndex);
+    repaint();
+}
+
+/**
+ * Returns whether to draw frames flipped horizontally.
+ */
+public boolean isFlipX()  { return _flipX; }
+
+/**
+ * Sets whether to draw frames flipped horizontally.
+ */
+public void setFlipX(boolean aValue)  { _flipX = aValue; repaint(); }
+
+/**
+ * Returns whether frames are playing.
+ */
+public boolean isPlaying()  { return _timer!=null; }
+
+/**
+ * Starts playing frames from start with option to loop.
+ */
+public void play(boolean doLoop)
+{
+    // Stop current playback (just return if no stream)
+    stop(); if(_stream==null) return;
+    
+    // Set looping, create timer and start
+    _loops = doLoop; _stream.setLooping(doLoop); setFrame(0);
+    _timer = new ViewTimer(PuppetImager.FRAME_DELAY_MILLIS, t -> timerFired());
+    _timer.start();
+}
+
+/**
+ * Stops playing frames.
+ */
+public void stop()
+{
+    if(_timer!=null) _timer.stop();
+    _timer = null;
+}
+
+/**
+ * Called when timer fires.
+ */
+void timerFired()
+{
+    // Get frame for timer time (wrap if looping, otherwise stop at end)
+    int count = _stream.getFrameCount(), index = _timer.getTime()/PuppetImager.FRAME_DELAY_MILLIS;
+    if(_loops) index %= count;
+    else if(index>=count) { stop(); return; }
+    setFrame(index);
+}
+
+/**
+ * Returns preferred width.
+ */
+protected double getPrefWidthImpl(double aH)
+{
+    Insets ins = getInsetsAll();
+    return ins.left + (_stream!=null? _stream.getFrameWidth() : 0) + ins.right;
+}
+
+/**
+ * Returns preferred height.
+ */
+protected double getPrefHeightImpl(double aW)
+{
+    Insets ins = getInsetsAll();
+    return ins.top + (_stream!=null? _stream.getFrameHeight() : 0) + ins.bottom;
+}
+
+/**
+ * Paints current frame (or last frame painted if current isn't rendered yet).
+ */
+protected void paintFront(Painter aPntr)
+{
+    // Get current frame image (just return if none yet)
+    Image img = _stream!=null? _stream.getFrame(_frame) : null;
+    if(img!=null) _lastImage = img; else img = _lastImage;
+    if(img==null) return;
+    
+    // Get frame origin (centered in view) and draw frame (flipped if needed)
+    double fw = img.getWidth(), fh = img.getHeight();
+    double x = Math.round((getWidth() - fw)/2), y = Math.round((getHeight() - fh)/2);
+    if(_flipX) { aPntr.save(); aPntr.translate(x + fw, y); aPntr.scale(-1, 1); x = y = 0; }
+    aPntr.drawImage(img, x, y, fw, fh);
+    if(_flipX) aPntr.restore();
+}
+
+}
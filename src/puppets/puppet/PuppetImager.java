@@ -1,5 +1,7 @@
 package puppets.puppet;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import snap.geom.Insets;
 import snap.geom.Transform;
@@ -20,6 +22,15 @@ public class PuppetImager {
     // The images
     List <Image>     _images;
     
+    // Whether to render frames to a sprite atlas (instead of full size images)
+    boolean          _useAtlas;
+    
+    // The sprite atlas (if rendering to atlas)
+    SpriteAtlas      _atlas;
+    
+    // The plan of which frames need to be rendered (repeated frames reuse image)
+    PuppetFramePlan  _plan;
+    
     // The Puppet
     Puppet           _puppet;
     
@@ -29,31 +40,89 @@ public class PuppetImager {
     // The ActionView
     ActionView       _actView;
     
-    // A list of PuppetImagers
-    private static List <PuppetImager>  _imagers = new ArrayList();
+    // The puppet height and insets
+    double           _height;
+    Insets           _ins;
+    
+    // The frame cache key and whether images were read from frame cache
+    String           _cacheKey;
+    boolean          _cached;
+    
+    // The future that completes with first image when all images are loaded
+    CompletableFuture <Image>  _future = new CompletableFuture();
+    
+    // The times (in millis) when imager was queued, started and finished
+    long             _queueTime, _startTime, _endTime;
+    
+    // The queued job that runs imager
+    Job              _job;
+    
+    // The number of subscribers (requests that share this imager) and whether imager was cancelled
+    int              _subscribers = 1;
+    volatile boolean _cancelled;
+    
+    // The dedup key (if imager was requested with getImager)
+    Object           _key;
+    
+    // The number of worker threads to process imagers
+    private static int    _workerCount = Runtime.getRuntime().availableProcessors();
+    
+    // The pool of worker threads to process imagers
+    private static ThreadPoolExecutor  _pool;
     
-    // The thread to process imagers
-    private static Thread     _imagerThread;
+    // The number of worker threads created
+    private static AtomicInteger  _threadCount = new AtomicInteger();
+    
+    // The imagers in flight by dedup key
+    private static Map <Object,PuppetImager>  _inFlight = new HashMap();
+    
+    // The sequence number of last queued job (newer jobs run first among jobs of equal priority, since the latest
+    // request is usually what's showing and older ones are often cancelled before they start)
+    private static AtomicLong  _jobSeq = new AtomicLong();
+    
+    // The motion threshold (in pixels at puppet height) and max interval (in millis) for adaptive sampling (0 is off)
+    private static double _adaptThreshold;
+    private static int    _adaptMaxInterval = PuppetFramePlan.DEFAULT_MAX_INTERVAL;
+    
+    // The default puppet height
+    public static final double DEFAULT_HEIGHT = 400;
+    
+    // The time between frames
+    public static final int FRAME_DELAY_MILLIS = 25;
+    
+    // Constants for job priority
+    public static final int PRIORITY_VISIBLE = 10;
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_PREFETCH = -10;
     
 /**
- * Creates PuppetImager
+ * Creates PuppetImager for given puppet, action, scale of default puppet height and insets.
  */
 public PuppetImager(Puppet aPuppet, PuppetAction anAction, double aScale, Insets theIns)
+{
+    this(aPuppet, anAction, aScale, theIns, false);
+}
+
+/**
+ * Creates PuppetImager for given puppet, action, scale of default puppet height, insets and whether to render atlas.
+ */
+public PuppetImager(Puppet aPuppet, PuppetAction anAction, double aScale, Insets theIns, boolean doAtlas)
 {
     _puppet = aPuppet;
     _action = anAction;
+    _useAtlas = doAtlas;
     
     // Create action view
     _actView = new ActionView(aPuppet);
     _actView.setFill(null); _actView.setBorder(null);
     if(theIns==null) theIns = Insets.EMPTY;
+    _height = DEFAULT_HEIGHT*(aScale>0? aScale : 1); _ins = theIns;
     _actView.setPadding(theIns);
-    _actView.setPuppetHeight(400);
+    _actView.setPuppetHeight(_height);
     _actView.setPuppet(aPuppet);
     _actView.setPoseSmoothly(false);
     
     // Get the frame count
-    int FRAME_DELAY_MILLIS = 25;
     _frameCount = anAction.getMaxTime()/FRAME_DELAY_MILLIS + 1;
     
     // Create first image (empty)
@@ -61,60 +130,277 @@ public PuppetImager(Puppet aPuppet, PuppetAction anAction, double aScale, Insets
     double vh = _actView.getHeight();
     _img = Image.getImageForSizeAndScale(vw, vh, true, 0);
     _img.setLoaded(false);
-    addImager(this);
+    
+    // Queue for worker (it reads frames from cache if available, since getting cache key and reading file are slow)
+    _queueTime = System.currentTimeMillis();
+    _job = new Job(() -> runImager(), PRIORITY_DEFAULT);
+    getPool().execute(_job);
+}
+
+/**
+ * Returns an imager for given puppet, action, scale of default puppet height and insets at given priority.
+ * If an identical request is already in flight, this just subscribes to it (and raises its priority if needed).
+ */
+public static PuppetImager getImager(Puppet aPuppet, PuppetAction anAction, double aScale, Insets theIns, int aPri)
+{
+    return getImager(aPuppet, anAction, aScale, theIns, aPri, false);
+}
+
+/**
+ * Returns an imager for given puppet, action, scale of default puppet height, insets, priority and whether to render
+ * atlas. If an identical request is already in flight, this just subscribes to it (and raises its priority if needed).
+ */
+public static PuppetImager getImager(Puppet aPuppet, PuppetAction anAction, double aScale, Insets theIns, int aPri,
+    boolean doAtlas)
+{
+    // Get key
+    Insets ins = theIns!=null? theIns : Insets.EMPTY;
+    Object key = Arrays.asList(aPuppet, anAction, aScale, ins.top, ins.right, ins.bottom, ins.left, doAtlas);
+    
+    // Look up, create and add in one lock, so identical concurrent requests can't both create an imager
+    PuppetImager imager;
+    synchronized (_inFlight) {
+    
+        // If in flight (and not cancelled), subscribe and return
+        imager = _inFlight.get(key);
+        if(imager!=null && imager.subscribe()) {
+            if(aPri>imager.getPriority()) imager.setPriority(aPri);
+            return imager;
+        }
+    
+        // Create new imager, set priority and add to in flight
+        imager = new PuppetImager(aPuppet, anAction, aScale, theIns, doAtlas);
+        imager.setPriority(aPri);
+        imager._key = key;
+        _inFlight.put(key, imager);
+    }
+    
+    // Remove from in flight when done
+    PuppetImager imager2 = imager;
+    imager._future.whenComplete((img, exc) -> { synchronized (_inFlight) { _inFlight.remove(key, imager2); } });
+    return imager;
+}
+
+/**
+ * Adds a subscriber to this imager (returns false if imager was cancelled).
+ */
+synchronized boolean subscribe()
+{
+    if(_cancelled) return false;
+    _subscribers++; return true;
 }
 
+/**
+ * Returns the job priority (higher runs first).
+ */
+public int getPriority()  { return _job!=null? _job._priority : PRIORITY_DEFAULT; }
+
+/**
+ * Sets the job priority (higher runs first). Re-queues job if it is waiting for a worker.
+ */
+public void setPriority(int aValue)
+{
+    Job job = _job; if(job==null || job._priority==aValue) return;
+    ThreadPoolExecutor pool = getPool();
+    if(pool.remove(job)) { job._priority = aValue; pool.execute(job); }
+    else job._priority = aValue;
+}
+
+/**
+ * Cancels this request: imager is cancelled (removed from queue or stopped between frames) once all subscribers cancel.
+ * Returns whether imager was cancelled.
+ */
+public boolean cancel()
+{
+    // Decrement subscribers (just return if others still waiting or already done)
+    synchronized (this) { if(--_subscribers>0 || _future.isDone()) return false; _cancelled = true; }
+    
+    // Remove from in flight and queue and cancel future
+    if(_key!=null) synchronized (_inFlight) { _inFlight.remove(_key, this); }
+    if(_job!=null) getPool().remove(_job);
+    return _future.cancel(false);
+}
+
+/**
+ * Returns whether imager was cancelled.
+ */
+public boolean isCancelled()  { return _cancelled; }
+
 /**
  * Returns the image.
  */
 public Image getImage()  { return _img; }
 
+/**
+ * Returns the frame images (null until loaded).
+ */
+public List <Image> getImages()  { return _future.isDone()? _images : null; }
+
+/**
+ * Returns the sprite atlas (null unless rendering to atlas and loaded).
+ */
+public SpriteAtlas getAtlas()  { return _future.isDone()? _atlas : null; }
+
 /**
  * Returns the frame count.
  */
 public int getFrameCount()  { return _frameCount; }
 
+/**
+ * Returns the plan of which frames were rendered (null until loaded or if read from frame cache).
+ */
+public PuppetFramePlan getFramePlan()  { return _future.isDone()? _plan : null; }
+
+/**
+ * Returns the puppet.
+ */
+public Puppet getPuppet()  { return _puppet; }
+
+/**
+ * Returns the action.
+ */
+public PuppetAction getAction()  { return _action; }
+
+/**
+ * Returns a future that completes with first image when all images are loaded.
+ */
+public CompletableFuture <Image> getFuture()  { return _future; }
+
+/**
+ * Returns whether images are all loaded.
+ */
+public boolean isDone()  { return _future.isDone(); }
+
+/**
+ * Returns whether images were read from frame cache (instead of baked).
+ */
+public boolean isCached()  { return _cached; }
+
+/**
+ * Returns the time in millis this imager waited in queue before a worker started it (or -1 if not started).
+ */
+public long getWaitTime()  { return _startTime>0? _startTime - _queueTime : -1; }
+
+/**
+ * Returns the time in millis a worker took to render images (or -1 if not done).
+ */
+public long getBakeTime()  { return _endTime>0? _endTime - _startTime : -1; }
+
 /**
  * Loads the images.
  */
 private void loadImages()
 {
     Puppet puppet = _actView.getPuppet();
-    while(!puppet.isLoaded()) {
-        System.out.println("Puppet not loaded: " + puppet.getName() + " (doing yield)");
-        Thread.yield();
-    }
     System.out.println("PuppetImager: Loading images for " + puppet.getName() + " " + _action.getName());
+    
+    // Set initial action (poses are set by kinematics, so no physics needed)
+    _actView.setAction(_action);
+    
+    // Get plan of frames to render (frames with same pose as last rendered frame just reuse its image)
+    _plan = getFramePlan(_actView);
+    
+    // If rendering to atlas, load atlas instead
+    if(_useAtlas) { loadAtlas(); return; }
         
-    // Create list of images and fill with empty images
-    _images = new ArrayList(_frameCount); _images.add(_img);
+    // Create list of images
+    _images = new ArrayList(_frameCount);
     double vw = _img.getWidth();
     double vh = _img.getHeight();
-    for(int i=1; i<_frameCount; i++) {
-        Image img = Image.getImageForSizeAndScale(vw, vh, true, 0);
+    
+    // Iterate over frames, set action pose and paint view into new frame image (or just reuse image for repeat)
+    for(int i=0; i<_frameCount; i++) {
+        //if(i==0 || i==(_frameCount-1) || i%5==0)
+        //    System.out.println("PuppetImager: Loading image " + i + " of " + _frameCount);
+        if(_cancelled) throw new CancellationException();
+        if(!_plan.isKeyFrame(i)) { _images.add(_images.get(i-1)); continue; }
+        Image img = i==0? _img : Image.getImageForSizeAndScale(vw, vh, true, 0);
         _images.add(img);
+        _actView.setActionTime(i*FRAME_DELAY_MILLIS);
+        _actView.finishPose();
+        paintViewInImage(_actView, img);
+        Thread.yield();
     }
     
-    // Set initial action
-    _actView.setPosable(true);
-    _actView.setAction(_action);
+    // Create ImageSet (so first image plays frames) and set image loaded
+    new ImageSet(_images);
+    _img.setLoaded(true);
+}
+
+/**
+ * Loads the images from frame cache (returns false if not cached).
+ */
+private boolean loadCachedImages()
+{
+    // Get cached frames (just return if not found)
+    if(_cacheKey==null) _cacheKey = PuppetFrameCache.getKey(_puppet, _action, _height, _ins,
+        _adaptThreshold, _adaptMaxInterval);
+    List <Image> images = PuppetFrameCache.getFrames(_cacheKey, _img.getPixWidth(), _img.getPixHeight());
+    if(images==null || images.size()!=_frameCount) return false;
     
-    // Iterate over frames, set action pose and paint view into frame image
+    // Paint first frame into first image (it may already be in use) and set images
+    _img.getPainter().drawImage(images.get(0), 0, 0, _img.getWidth(), _img.getHeight());
+    images.set(0, _img); _images = images;
+    new ImageSet(_images);
+    _img.setLoaded(true);
+    return _cached = true;
+}
+
+/**
+ * Loads the sprite atlas (each rendered frame is trimmed and packed into atlas, and also kept in ImageSet of image).
+ */
+private void loadAtlas()
+{
+    // Iterate over frames, set action pose, paint view into frame image and add to atlas with duration (or just reuse
+    // image for repeat)
+    SpriteAtlas.Builder builder = new SpriteAtlas.Builder();
+    _images = new ArrayList(_frameCount);
+    double vw = _img.getWidth(), vh = _img.getHeight();
     for(int i=0; i<_frameCount; i++) {
-        //if(i==0 || i==(_frameCount-1) || i%5==0)
-        //    System.out.println("PuppetImager: Loading image " + i + " of " + _frameCount);
-        Image img = _images.get(i);
-        _actView.setActionTime(i*25);
+        if(_cancelled) throw new CancellationException();
+        if(!_plan.isKeyFrame(i)) { _images.add(_images.get(i-1)); continue; }
+        Image img = i==0? _img : Image.getImageForSizeAndScale(vw, vh, true, 0);
+        _images.add(img);
+        _actView.setActionTime(i*FRAME_DELAY_MILLIS);
         _actView.finishPose();
         paintViewInImage(_actView, img);
+        builder.addFrame(img, _plan.getDuration(i));
         Thread.yield();
     }
     
-    // Create ImageSet and set image loaded
-    ImageSet imgSet = new ImageSet(_images);
+    // Build atlas, create ImageSet (so first image plays frames too) and set image loaded
+    _atlas = builder.build();
+    new ImageSet(_images);
     _img.setLoaded(true);
 }
 
+/**
+ * Called by worker thread to render images and complete future.
+ */
+private void runImager()
+{
+    // If cancelled, just return
+    if(_cancelled) return;
+    
+    // If puppet not loaded, requeue when it is (worker is free for other jobs meanwhile)
+    if(!_puppet.isLoaded()) {
+        _puppet.getLoadFuture().thenRun(() -> getPool().execute(_job));
+        return;
+    }
+    
+    // Load images (from frame cache if available) and complete future (just return if cancelled)
+    _startTime = System.currentTimeMillis();
+    try { if(_useAtlas || !loadCachedImages()) loadImages(); }
+    catch(CancellationException e) { return; }
+    catch(Throwable t) { _future.completeExceptionally(t); throw t; }
+    finally { _endTime = System.currentTimeMillis(); }
+    _future.complete(_img);
+    
+    // If images were baked, add to frame cache
+    if(!_useAtlas && !_cached)
+        PuppetFrameCache.putFrames(_cacheKey, _images);
+}
+
 /**
  * Returns the flipped image.
  */
@@ -168,58 +454,124 @@ private static void paintViewInImage(View aView, Image anImage)
 }
 
 /**
- * Adds a puppet imager.
+ * Returns the plan of frames to render for given ActionView's action (adaptive if adaptive threshold is set).
  */
-private static synchronized void addImager(PuppetImager aPI)
+public static PuppetFramePlan getFramePlan(ActionView aView)
 {
-    _imagers.add(aPI);
-    
-    if(_imagers.size()==1)
-        startImagerThread();
+    PuppetAction action = aView.getAction();
+    int frameCount = action.getMaxTime()/FRAME_DELAY_MILLIS + 1;
+    PuppetActionFit fit = aView.getActionFit(); double scale = aView.getScale();
+    if(_adaptThreshold>0)
+        return new PuppetFramePlan(fit, scale, frameCount, FRAME_DELAY_MILLIS, _adaptThreshold, _adaptMaxInterval);
+    return new PuppetFramePlan(fit, scale, frameCount, FRAME_DELAY_MILLIS, PuppetFramePlan.DEFAULT_TOLERANCE);
 }
 
 /**
- * Returns a puppet imager.
+ * Returns the motion threshold (in pixels at puppet height) for adaptive sampling (0 if off).
  */
-private static synchronized PuppetImager getImager()
-{
-    if(_imagers.size()==0) return null;
-    PuppetImager pi = _imagers.get(0);
-    return pi;
-}
+public static double getAdaptiveThreshold()  { return _adaptThreshold; }
 
 /**
- * Removes a puppet imager.
+ * Sets the motion threshold (in pixels at puppet height) for adaptive sampling (0 to turn off).
  */
-private static synchronized PuppetImager removeImager()
+public static void setAdaptiveThreshold(double aValue)  { _adaptThreshold = aValue; }
+
+/**
+ * Returns the max interval between rendered frames (in millis) for adaptive sampling.
+ */
+public static int getAdaptiveMaxInterval()  { return _adaptMaxInterval; }
+
+/**
+ * Sets the max interval between rendered frames (in millis) for adaptive sampling.
+ */
+public static void setAdaptiveMaxInterval(int aValue)  { _adaptMaxInterval = aValue; }
+
+/**
+ * Returns the number of worker threads used to process imagers.
+ */
+public static int getWorkerCount()  { return _workerCount; }
+
+/**
+ * Sets the number of worker threads used to process imagers.
+ */
+public static synchronized void setWorkerCount(int aCount)
 {
-    if(_imagers.size()==0) return null;
-    PuppetImager pi = _imagers.remove(0);
-    return pi;
+    // Set count and update pool (order matters, since core size can't exceed max size)
+    _workerCount = Math.max(aCount, 1); if(_pool==null) return;
+    if(_workerCount>_pool.getMaximumPoolSize()) {
+        _pool.setMaximumPoolSize(_workerCount); _pool.setCorePoolSize(_workerCount); }
+    else { _pool.setCorePoolSize(_workerCount); _pool.setMaximumPoolSize(_workerCount); }
 }
 
 /**
- * Starts the Imager thread.
+ * Returns the number of imagers waiting for a worker thread.
+ */
+public static int getQueueDepth()  { return _pool!=null? _pool.getQueue().size() : 0; }
+
+/**
+ * Returns the number of imagers currently being rendered by worker threads.
  */
-private static void startImagerThread()
+public static int getActiveCount()  { return _pool!=null? _pool.getActiveCount() : 0; }
+
+/**
+ * Queues given runnable to run on a worker thread at given priority and returns job.
+ */
+public static Job execute(Runnable aRun, int aPriority)
 {
-    System.out.println("Starting ImagerThread");
-    _imagerThread = new Thread(() -> processImagers());
-    _imagerThread.start();
+    Job job = new Job(aRun, aPriority);
+    getPool().execute(job);
+    return job;
 }
 
-private static void processImagers()
+/**
+ * Returns the pool of worker threads to process imagers.
+ */
+private static synchronized ThreadPoolExecutor getPool()
 {
-    while(_imagers.size()>0) {
-        PuppetImager pi = getImager(); if(pi==null) break;
-        if(!pi._puppet.isLoaded()) {
-            pi._puppet.addLoadListener(() -> startImagerThread());
-            break;
-        }
-        pi.loadImages();
-        removeImager();
-    }
-    _imagerThread = null;
+    // If already set, just return
+    if(_pool!=null) return _pool;
+    
+    // Create pool with daemon threads that time out when idle
+    System.out.println("Starting PuppetImager pool with " + _workerCount + " workers");
+    ThreadFactory tfact = r -> {
+        Thread thread = new Thread(r, "PuppetImager-" + _threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    };
+    BlockingQueue <Runnable> queue = new PriorityBlockingQueue();
+    _pool = new ThreadPoolExecutor(_workerCount, _workerCount, 10, TimeUnit.SECONDS, queue, tfact);
+    _pool.allowCoreThreadTimeOut(true);
+    return _pool;
 }
     
-}
\ No newline at end of file
+/**
+ * A queued job, ordered by priority (higher first) and then by recency (newer first). Newest first is intended: among
+ * jobs of equal priority, the latest request is the one most likely to be showing.
+ */
+public static class Job implements Runnable, Comparable <Job> {
+    
+    // The runnable
+    Runnable      _run;
+    
+    // The priority and sequence number
+    volatile int  _priority;
+    long          _seq = _jobSeq.incrementAndGet();
+    
+    /** Creates a new Job. */
+    Job(Runnable aRun, int aPriority)  { _run = aRun; _priority = aPriority; }
+    
+    /** Returns the priority. */
+    public int getPriority()  { return _priority; }
+    
+    /** Runs the runnable. */
+    public void run()  { _run.run(); }
+    
+    /** Compares by priority then by recency. */
+    public int compareTo(Job aJob)
+    {
+        if(_priority!=aJob._priority) return _priority>aJob._priority? -1 : 1;
+        return Long.compare(aJob._seq, _seq);
+    }
+}
+
+}
@@ -0,0 +1,130 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import snap.util.SnapUtils;
+
+/**
+ * A class to record a content hash of each part image file written for a puppet (in .hashes file, next to .pup file),
+ * with file length and modified time, so save can skip images that haven't changed without reading files back.
+ *
+ * Each line has part name, hash of PNG bytes, file length and file modified time.
+ */
+public class PuppetManifest {
+
+    // The manifest file
+    File                  _file;
+    
+    // The entries by part name
+    Map <String,Entry>    _entries = new LinkedHashMap();
+    
+    // Whether manifest has changed since read
+    boolean               _changed;
+    
+    // The file extension
+    public static final String EXT = ".hashes";
+
+/**
+ * Creates a PuppetManifest for given file (reads entries if file exists).
+ */
+public PuppetManifest(File aFile)
+{
+    _file = aFile; if(!aFile.isFile()) return;
+    
+    // Read lines and add entry for each (ignore bad lines)
+    try (BufferedReader reader = new BufferedReader(new FileReader(aFile))) {
+        for(String line = reader.readLine(); line!=null; line = reader.readLine()) {
+            String strs[] = line.split("\t"); if(strs.length<4) continue;
+            try {
+                Entry entry = new Entry(); entry._hash = Long.parseUnsignedLong(strs[1], 16);
+                entry._length = Long.parseLong(strs[2]); entry._modified = Long.parseLong(strs[3]);
+                _entries.put(strs[0], entry);
+            }
+            catch(NumberFormatException e) { }
+        }
+    }
+    catch(IOException e) { System.err.println("PuppetManifest: " + aFile + ": " + e); }
+}
+
+/**
+ * Returns the manifest for given puppet (or null if puppet source isn't a local .pup file).
+ */
+public static PuppetManifest getManifest(Puppet aPuppet)
+{
+    if(SnapUtils.isTeaVM) return null;
+    File file = aPuppet.getSourceURL()!=null? aPuppet.getSourceURL().getJavaFile() : null; if(file==null) return null;
+    String path = file.getPath(); if(!path.endsWith(".pup")) return null;
+    return new PuppetManifest(new File(path.substring(0, path.length() - 4) + EXT));
+}
+
+/**
+ * Returns whether manifest has entry for given part name.
+ */
+public boolean hasEntry(String aName)  { return _entries.containsKey(aName); }
+
+/**
+ * Returns the hash for given part name (or 0 if not found).
+ */
+public long getHash(String aName)
+{
+    Entry entry = _entries.get(aName);
+    return entry!=null? entry._hash : 0;
+}
+
+/**
+ * Returns whether given image file for given part name is unchanged since it was recorded.
+ */
+public boolean isCurrent(String aName, File aFile)
+{
+    Entry entry = _entries.get(aName);
+    return entry!=null && aFile.length()==entry._length && aFile.lastModified()==entry._modified;
+}
+
+/**
+ * Records the hash for given part name and image file.
+ */
+public void put(String aName, long aHash, File aFile)
+{
+    Entry entry = new Entry(); entry._hash = aHash;
+    entry._length = aFile.length(); entry._modified = aFile.lastModified();
+    _entries.put(aName, entry); _changed = true;
+}
+
+/**
+ * Writes manifest file (if changed).
+ */
+public void save()
+{
+    if(!_changed) return;
+    try (PrintWriter writer = new PrintWriter(new FileWriter(_file))) {
+        for(Map.Entry <String,Entry> me : _entries.entrySet()) { Entry entry = me.getValue();
+            writer.print(me.getKey() + '\t' + Long.toHexString(entry._hash) + '\t' + entry._length + '\t');
+            writer.println(entry._modified);
+        }
+    }
+    catch(IOException e) { System.err.println("PuppetManifest.save: " + _file + ": " + e); return; }
+    _changed = false;
+}
+
+/**
+ * Returns the FNV-1a hash of given bytes.
+ */
+public static long getHash(byte theBytes[])
+{
+    long hash = PuppetFrameCache.HASH_START;
+    for(byte b : theBytes) { hash ^= b & 0xff; hash *= 0x100000001b3L; }
+    return hash;
+}
+
+/**
+ * A class to describe a manifest entry.
+ */
+static class Entry {
+
+    // The hash of image file bytes
+    long      _hash;
+    
+    // The image file length and modified time
+    long      _length, _modified;
+}
+
+}
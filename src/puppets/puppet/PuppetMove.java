@@ -12,6 +12,9 @@ public class PuppetMove implements Cloneable {
     // The time span in milliseconds for the change
     int            _time;
     
+    // The action that holds this move
+    PuppetAction   _action;
+    
 /**
  * Creates a PuppetMove.
  */
@@ -40,7 +43,12 @@ public int getTime()  { return _time; }
 /**
  * Sets the time interval.
  */
-public void setTime(int aValue)  { _time = aValue; }
+public void setTime(int aValue)
+{
+    if(aValue==_time) return;
+    _time = aValue;
+    if(_action!=null) _action.movesDidChange();
+}
 
 /**
  * Standard clone implementation.
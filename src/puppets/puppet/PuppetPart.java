@@ -18,6 +18,12 @@ public class PuppetPart implements Loadable {
     // The image
     Image         _img;
     
+    // Whether image has been set since part image file was read or written
+    boolean       _imageDirty;
+    
+    // The hash of image pixels (0 if not yet computed)
+    long          _imageHash;
+    
     // The Puppet that owns this part
     Puppet        _puppet;
 
@@ -106,7 +112,8 @@ public Image getImage()  { return _img!=null? _img : (_img=getImageImpl()); }
  */
 public void setImage(Image anImage)
 {
-    _img = anImage;
+    _img = anImage; _imageDirty = true; _imageHash = 0;
+    if(_puppet!=null) _puppet._contentKey = 0;
     
     // Set size - probably don't need this
     if(_w==0) {
@@ -115,6 +122,21 @@ public void setImage(Image anImage)
     }
 }
 
+/**
+ * Returns whether image has been set since part image file was read or written (so it needs to be saved).
+ */
+public boolean isImageDirty()  { return _imageDirty; }
+
+/**
+ * Returns the hash of image pixels (computed once per image, since hashing pixels is slow).
+ */
+public synchronized long getImageHash()
+{
+    if(_imageHash!=0) return _imageHash;
+    Image img = getImage(); byte bytes[] = img!=null? img.getBytesRGBA() : null;
+    return _imageHash = bytes!=null? PuppetManifest.getHash(bytes) : PuppetFrameCache.HASH_START;
+}
+
 /**
  * Returns the image.
  */
@@ -160,6 +182,7 @@ public void saveImage()
     byte ibytesOld[] = url.getBytes();
     if(!SnapUtils.equals(ibytes, ibytesOld))
         SnapUtils.writeBytes(ibytes, url.getJavaFile());
+    _imageDirty = false;
 }
 
 /**
@@ -231,6 +254,19 @@ static PuppetPart createDerivedPart(Puppet aPuppet, String aName)
     return null;
 }
 
+/**
+ * Returns whether given part name is one that can be derived from a composite part.
+ */
+static boolean isDerivedPartName(String aName)
+{
+    switch(aName) {
+        case PuppetSchema.RArmTop: case PuppetSchema.RArmBtm: case PuppetSchema.RLegTop: case PuppetSchema.RLegBtm:
+        case PuppetSchema.LArmTop: case PuppetSchema.LArmBtm: case PuppetSchema.LLegTop: case PuppetSchema.LLegBtm:
+            return true;
+        default: return false;
+    }
+}
+
 /**
  * Splits a part around joint - for when given arm/leg as one piece instead of top/bottom.
  */
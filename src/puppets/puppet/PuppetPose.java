@@ -14,6 +14,9 @@ public class PuppetPose implements Cloneable {
     // The pose marker maps
     Map <String,Point>  _markers;
     
+    // The pose in packed form (cached)
+    PackedPose          _packed;
+    
 /**
  * Creates a new pose for name.
  */
@@ -40,14 +43,28 @@ public String getName()  { return _name; }
 public void setName(String aName)  { _name = aName; }
 
 /**
- * Returns the maps.
+ * Returns the markers map (unmodifiable and points shouldn't be modified, since packed form is cached).
  */
-public Map <String,Point> getMarkers()  { return _markers; }
+public Map <String,Point> getMarkers()  { return Collections.unmodifiableMap(_markers); }
 
 /**
- * Returns the point for given marker.
+ * Returns a copy of the point for given marker (use setMarkerPoint to change).
  */
 public Point getMarkerPoint(String aName)
+{
+    Point pnt = getPoint(aName);
+    return pnt!=null? pnt.clone() : null;
+}
+
+/**
+ * Sets a point for given marker name (point is copied).
+ */
+public void setMarkerPoint(String aName, Point aPoint)  { _markers.put(aName, aPoint.clone()); _packed = null; }
+
+/**
+ * Returns the live point for given marker.
+ */
+private Point getPoint(String aName)
 {
     Point pnt = _markers.get(aName);
     if(pnt==null && aName.equals(PuppetSchema.Anchor_Joint)) pnt = new Point();
@@ -55,17 +72,17 @@ public Point getMarkerPoint(String aName)
 }
 
 /**
- * Sets a point for given marker name.
+ * Returns the pose in packed form (cached, so shouldn't be modified).
  */
-public void setMarkerPoint(String aName, Point aPoint)  { _markers.put(aName, aPoint); }
+public PackedPose getPacked()  { return _packed!=null? _packed : (_packed = new PackedPose(this)); }
 
 /**
  * Returns the angle between two joints.
  */
 public double getAngle(String aJName0, String aJName1)
 {
-    Point p0 = getMarkerPoint(aJName0);
-    Point p1 = getMarkerPoint(aJName1);
+    Point p0 = getPoint(aJName0);
+    Point p1 = getPoint(aJName1);
     return getAngle(p0, p1);
 }
 
@@ -74,12 +91,12 @@ public double getAngle(String aJName0, String aJName1)
  */
 public void setAngle(String aJName0, String aJName1, double anAng)
 {
-    Point p0 = getMarkerPoint(aJName0);
-    Point p1 = getMarkerPoint(aJName1);
+    Point p0 = getPoint(aJName0);
+    Point p1 = getPoint(aJName1);
     double dist = p0.getDistance(p1);
     double x2 = p0.x + Math.cos(anAng)*dist;
     double y2 = p0.y + Math.sin(anAng)*dist;
-    p1.setXY(x2, y2);
+    p1.setXY(x2, y2); _packed = null;
 }
 
 /**
@@ -87,8 +104,8 @@ public void setAngle(String aJName0, String aJName1, double anAng)
  */
 public double getDistance(String aJName0, String aJName1)
 {
-    Point p0 = getMarkerPoint(aJName0);
-    Point p1 = getMarkerPoint(aJName1);
+    Point p0 = getPoint(aJName0);
+    Point p1 = getPoint(aJName1);
     return p0.getDistance(p1);
 }
 
@@ -97,12 +114,12 @@ public double getDistance(String aJName0, String aJName1)
  */
 public void setDistance(String aJName0, String aJName1, double aDist)
 {
-    Point p0 = getMarkerPoint(aJName0);
-    Point p1 = getMarkerPoint(aJName1);
+    Point p0 = getPoint(aJName0);
+    Point p1 = getPoint(aJName1);
     double ang = getAngle(p0, p1);
     double x2 = p0.x + Math.cos(ang)*aDist;
     double y2 = p0.y + Math.sin(ang)*aDist;
-    p1.setXY(x2, y2);
+    p1.setXY(x2, y2); _packed = null;
 }
 
 /**
@@ -110,11 +127,11 @@ public void setDistance(String aJName0, String aJName1, double aDist)
  */
 public void setAngleAndDistance(String aJName0, String aJName1, double anAng, double aDist)
 {
-    Point p0 = getMarkerPoint(aJName0);
-    Point p1 = getMarkerPoint(aJName1);
+    Point p0 = getPoint(aJName0);
+    Point p1 = getPoint(aJName1);
     double x2 = p0.x + Math.cos(anAng)*aDist;
     double y2 = p0.y + Math.sin(anAng)*aDist;
-    p1.setXY(x2, y2);
+    p1.setXY(x2, y2); _packed = null;
 }
 
 /**
@@ -122,22 +139,16 @@ public void setAngleAndDistance(String aJName0, String aJName1, double anAng, do
  */
 public PuppetPose getBlendPose(Puppet aPuppet, PuppetPose aPose, double aRatio)
 {
-    // Copy this pose
-    PuppetPose pose = clone();
+    // Blend pose keys in packed form
+    PackedPose packed = getPacked().getBlendPose(aPose.getPacked(), aRatio);
+    PuppetPose pose = packed.toPose(); pose._packed = packed;
     
-    // Iterate over puppet root joint names
-    PuppetSchema schema = aPuppet.getSchema();
-    for(String name : schema.getRootJointNames()) {
-        
-        // Set blend marker point for root joint
-        setBlendPoseMarker(pose, aPose, name, aRatio);
-        
-        // If next joint, set blend point for it
-        String jointThis = name, jointNext = schema.getNextJointNameForName(name);
-        while(jointNext!=null) {
-            pose.setBlendPoseMarker(this, aPose, jointThis, jointNext, aRatio);
-            jointThis = jointNext; jointNext = schema.getNextJointNameForName(jointNext);
-        }
+    // Blend markers that aren't pose keys linearly (or just copy if other pose doesn't have marker)
+    for(Map.Entry <String,Point> entry : _markers.entrySet()) { String key = entry.getKey();
+        if(PackedPose._schema.getPoseKeyIndex(key)>=0) continue;
+        Point p0 = entry.getValue(), p1 = aPose._markers.get(key);
+        Point pnt = p1!=null? new Point(p0.x + (p1.x - p0.x)*aRatio, p0.y + (p1.y - p0.y)*aRatio) : p0.clone();
+        pose._markers.put(key, pnt);
     }
     
     // Return pose
@@ -145,45 +156,23 @@ public PuppetPose getBlendPose(Puppet aPuppet, PuppetPose aPose, double aRatio)
 }
 
 /**
- * Returns a blended pose with this pose and another pose at given ratio.
+ * Sets this pose to a blend of two poses at given ratio, reusing this pose's marker points (no allocation once set).
+ * This pose can't be either of the given poses.
  */
-void setBlendPoseMarker(PuppetPose aPose1, PuppetPose aPose2, String aJointName, double aRatio)
+public void setBlendPose(PuppetPose aPose0, PuppetPose aPose1, double aRatio)
 {
-    // Blend root names
-    Point p0 = aPose1.getMarkerPoint(aJointName);
-    Point p1 = aPose2.getMarkerPoint(aJointName);
-    double x = p0.x + (p1.x-p0.x)*aRatio;
-    double y = p0.y + (p1.y-p0.y)*aRatio;
-    p0.setXY(x,y);
-}
-
-/**
- * Returns a blended pose with this pose and another pose at given ratio.
- */
-void setBlendPoseMarker(PuppetPose aPose1, PuppetPose aPose2, String aJointName1, String aJointName2, double aRatio)
-{
-    // Get start points of start line and end line
-    Point p0 = aPose1.getMarkerPoint(aJointName1);
-    Point p1 = aPose2.getMarkerPoint(aJointName1);
-    
-    // Get end points of start line and end line
-    Point p2 = aPose1.getMarkerPoint(aJointName2);
-    Point p3 = aPose2.getMarkerPoint(aJointName2);
-    if(p2.equals(p3)) return;
+    // Blend packed poses into packed buffer
+    if(_packed==null) _packed = new PackedPose();
+    _packed.setBlendPose(aPose0.getPacked(), aPose1.getPacked(), aRatio);
+    _name = aPose0.getName();
     
-    // Get angle of start line, end line and blend line
-    double ang0 = getAngle(p0, p2);
-    double ang1 = getAngle(p1, p3);
-    double dang = ang1 - ang0; if(Math.abs(dang)>Math.PI) dang = Math.copySign(2*Math.PI - Math.abs(dang), -dang);
-    double ang2 = ang0 + dang*aRatio;
-    
-    // Get distance of start line and calculate end point of blend line and set
-    double dist = p1.getDistance(p3) + .2;
-    Point p0b = getMarkerPoint(aJointName1);
-    double x2 = p0b.x + Math.cos(ang2)*dist;
-    double y2 = p0b.y + Math.sin(ang2)*dist;
-    Point p1b = getMarkerPoint(aJointName2);
-    p1b.setXY(x2, y2);
+    // Iterate over pose keys and update marker points
+    for(int i=0, iMax=_packed.getCount(); i<iMax; i++) { if(!_packed.isSet(i)) continue;
+        String pkey = PackedPose._schema.getPoseKey(i);
+        Point pnt = _markers.get(pkey);
+        if(pnt!=null) pnt.setXY(_packed.getX(i), _packed.getY(i));
+        else _markers.put(pkey, new Point(_packed.getX(i), _packed.getY(i)));
+    }
 }
 
 /**
@@ -193,7 +182,7 @@ public PuppetPose clone()
 {
     PuppetPose clone = null; try { clone = (PuppetPose)super.clone(); }
     catch(Exception e) { throw new RuntimeException(e); }
-    clone._markers = new LinkedHashMap(_markers.size());
+    clone._markers = new LinkedHashMap(_markers.size()); clone._packed = null;
     for(String name : _markers.keySet())
         clone._markers.put(name, _markers.get(name).clone());
     return clone;
@@ -204,61 +193,9 @@ public PuppetPose clone()
  */
 public PuppetPose cloneForPuppetAtScale(Puppet toPup, double toScale)
 {
-    // Get reference Puppet/Scale that pose was set from
-    Puppet pup0 = PuppetUtils.getPuppetFile().getPuppet(0);
-    double pup0Scale = 500/pup0.getBounds().height;
-
-    // Create new pose
-    PuppetPose clone = clone();
-    
-    // Get poses for pup0 and pupX
-    PuppetPose pose0 = pup0.getPose(pup0Scale);
-    PuppetPose poseX = toPup.getPose(toScale);
-    
-    // Iterate over root joints
-    for(String rkey : pup0.getSchema().getRootJointNames()) {
-        
-        // Get distance from anchor to root joint for pose0 && poseX
-        double dist0 = pose0.getDistance(PuppetSchema.Anchor_Joint, rkey);
-        double distX = poseX.getDistance(PuppetSchema.Anchor_Joint, rkey);
-        double scale = distX/dist0;
-        double distN = getDistance(PuppetSchema.Anchor_Joint, rkey)*scale;
-        clone.setDistance(PuppetSchema.Anchor_Joint, rkey, distN);
-        
-        // Get angle from anchor to root joint for pose0 && poseX
-        double ang0 = pose0.getAngle(PuppetSchema.Anchor_Joint, rkey);
-        clone.setAngle(PuppetSchema.Anchor_Joint, rkey, ang0);
-        
-        // Get keys for this joint and next
-        String thisKey = rkey;
-        String nextKey = pup0.getSchema().getNextJointNameForName(thisKey);
-        
-        // While outer joint exists, adjust point
-        while(nextKey!=null) {
-            
-            // Get joint angle from original pose and joint distance from new pose puppet
-            double ang = getAngle(thisKey, nextKey);
-            double dist = getJointDistance(toPup, toScale, thisKey);
-    
-            // Update pose1 joint point with new angle and distance
-            clone.setAngleAndDistance(thisKey, nextKey, ang, dist);
-
-            // Get key for next joint
-            thisKey = nextKey;
-            nextKey = pup0.getSchema().getNextJointNameForName(thisKey);
-        }
-    }
-    
-    // Return clone
-    return clone;
-}
-
-/** Returns the distance between joints for given puppet, scale and joint name.  */
-private static double getJointDistance(Puppet aPuppet, double aScale, String aJName)
-{
-    PuppetJoint jnt0 = aPuppet.getJoint(aJName);
-    PuppetJoint jnt1 = jnt0.getNext();
-    return Point.getDistance(jnt0.getX(), jnt0.getY(), jnt1.getX(), jnt1.getY())*aScale;
+    PackedPose packed = getPacked().cloneForPuppetAtScale(toPup, toScale);
+    PuppetPose pose = packed.toPose(); pose._packed = packed;
+    return pose;
 }
         
 /**
@@ -271,7 +208,7 @@ public XMLElement toXML(XMLArchiver anArchiver)
     e.add("Name", getName());
     
     // Iterate over markers and set
-    for(String key : getMarkers().keySet()) { Point pnt = getMarkerPoint(key);
+    for(String key : getMarkers().keySet()) { Point pnt = getPoint(key);
         String val = StringUtils.formatNum("#.##", pnt.x) + ' ' + StringUtils.formatNum("#.##", pnt.y);
         key = key.substring(0, key.length() - "Joint".length());
         e.add(key,val);
@@ -301,6 +238,7 @@ public PuppetPose fromXML(XMLArchiver anArchiver, XMLElement anElement)
         Point pnt = new Point(val0, val1);
         _markers.put(key, pnt);
     }
+    _packed = null;
 
     // Return this
     return this;
@@ -312,7 +250,7 @@ public PuppetPose fromXML(XMLArchiver anArchiver, XMLElement anElement)
 public String getAsString()
 {
     StringBuffer sb = new StringBuffer();
-    for(String key : _markers.keySet()) { Point pnt = getMarkerPoint(key);
+    for(String key : _markers.keySet()) { Point pnt = getPoint(key);
         String x = StringUtils.formatNum("#.#", pnt.x), y = StringUtils.formatNum("#.#", pnt.y);
         String str = String.format("%s: [ %s %s ],\n", key, x, y); sb.append(str);
     }
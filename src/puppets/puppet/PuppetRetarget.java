@@ -0,0 +1,140 @@
+package puppets.puppet;
+
+/**
+ * A class to fit poses to a puppet at a scale, with everything that doesn't change between poses precomputed.
+ *
+ * Poses are defined against the reference puppet (first puppet in PuppetFile). Fitting keeps each root joint at its
+ * reference angle from anchor (with distance scaled by ratio of puppet root distance to reference root distance) and
+ * keeps each outer joint at its pose angle from previous joint (with distance of puppet bone).
+ */
+public class PuppetRetarget {
+
+    // The puppet and scale
+    Puppet        _puppet;
+    double        _scale;
+    
+    // The reference puppet that poses are defined against
+    Puppet        _refPuppet;
+    
+    // The joint versions of puppet and reference puppet when profile was created
+    int           _version, _refVersion;
+    
+    // Whether reference puppet was loaded when profile was created (its bounds set pose scale)
+    boolean       _refLoaded;
+    
+    // The cos/sin of reference angle from anchor for each root pose key (by pose key index)
+    double        _rootCos[], _rootSin[];
+    
+    // The ratio of puppet root distance to reference root distance for each root pose key (by pose key index)
+    double        _rootScales[];
+    
+    // The scaled puppet distance from each pose key joint to next joint (by pose key index)
+    double        _boneLengths[];
+    
+    // The schema that defines pose key indexes
+    static PuppetSchema  _schema = new PuppetSchema();
+
+/**
+ * Creates a new PuppetRetarget for given puppet and scale.
+ */
+public PuppetRetarget(Puppet aPuppet, double aScale)
+{
+    // Set puppet and scale
+    _puppet = aPuppet; _scale = aScale;
+    int count = _schema.getPoseKeyCount();
+    _rootCos = new double[count]; _rootSin = new double[count]; _rootScales = new double[count];
+    _boneLengths = new double[count];
+    
+    // Get reference Puppet/Scale that poses are set from
+    Puppet pup0 = _refPuppet = PuppetUtils.getPuppetFile().getPuppet(0);
+    double pup0Scale = 500/pup0.getBounds().height;
+    _refLoaded = pup0.isLoaded();
+    
+    // Get poses for pup0 and puppet
+    PackedPose pose0 = pup0.getPackedPose(pup0Scale);
+    PackedPose poseX = aPuppet.getPackedPose(aScale);
+    
+    // Iterate over root joints and get reference angle and distance scale from anchor
+    for(int r=0, rMax=_schema.getRootPoseKeyCount(); r<rMax; r++) { int root = _schema.getRootPoseKeyIndex(r);
+        double dist0 = Math.hypot(pose0.getX(root), pose0.getY(root));
+        double distX = Math.hypot(poseX.getX(root), poseX.getY(root));
+        double ang0 = Math.atan2(pose0.getY(root), pose0.getX(root));
+        _rootCos[root] = Math.cos(ang0); _rootSin[root] = Math.sin(ang0);
+        _rootScales[root] = distX/dist0;
+    }
+    
+    // Iterate over pose keys and get bone length to next joint
+    for(int i=0;i<count;i++) { int j = _schema.getNextPoseKeyIndex(i); if(j<0) continue;
+        _boneLengths[i] = Math.hypot(poseX.getX(j) - poseX.getX(i), poseX.getY(j) - poseX.getY(i)); }
+    
+    // Record joint versions (after joint lookups above, which can cache joints)
+    _version = aPuppet.getJointVersion();
+    _refVersion = pup0.getJointVersion();
+}
+
+/**
+ * Returns the puppet.
+ */
+public Puppet getPuppet()  { return _puppet; }
+
+/**
+ * Returns the scale.
+ */
+public double getScale()  { return _scale; }
+
+/**
+ * Returns whether this profile is still valid (puppet and reference puppet joints unchanged).
+ */
+public boolean isValid()
+{
+    Puppet pup0 = PuppetUtils.getPuppetFile().getPuppet(0);
+    return pup0==_refPuppet && _refLoaded && _refVersion==pup0.getJointVersion() &&
+        _version==_puppet.getJointVersion();
+}
+
+/**
+ * Returns a new pose for given pose fit to puppet at scale.
+ */
+public PackedPose getPose(PackedPose aPose)
+{
+    PackedPose pose = new PackedPose();
+    setPose(aPose, pose);
+    return pose;
+}
+
+/**
+ * Sets given destination pose to given pose fit to puppet at scale (without allocation).
+ * The destination can't be the given pose.
+ */
+public void setPose(PackedPose aPose, PackedPose aDest)
+{
+    // Start with given pose
+    aDest.setPose(aPose);
+    double c[] = aPose._coords, c2[] = aDest._coords;
+    
+    // Iterate over root joints
+    for(int r0=0, r0Max=_schema.getRootPoseKeyCount(); r0<r0Max; r0++) { int root = _schema.getRootPoseKeyIndex(r0);
+    
+        // Set root point at reference angle and scaled distance from anchor
+        int r = root*2;
+        double dist = Math.hypot(c[r], c[r+1])*_rootScales[root];
+        c2[r] = _rootCos[root]*dist; c2[r+1] = _rootSin[root]*dist;
+    
+        // While outer joint exists, set point with joint angle from given pose and bone length from puppet
+        for(int ind0 = root, ind1 = _schema.getNextPoseKeyIndex(root); ind1>=0; ind0 = ind1,
+            ind1 = _schema.getNextPoseKeyIndex(ind1)) {
+            int i0 = ind0*2, i1 = ind1*2;
+            double ang = Math.atan2(c[i1+1] - c[i0+1], c[i1] - c[i0]);
+            double len = _boneLengths[ind0];
+            c2[i1] = c2[i0] + Math.cos(ang)*len;
+            c2[i1+1] = c2[i0+1] + Math.sin(ang)*len;
+        }
+    }
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "PuppetRetarget: puppet=" + _puppet.getName() + ", scale=" + _scale; }
+
+}
@@ -47,84 +47,359 @@ public class PuppetSchema {
     public static final String LFoot_Joint = "LFoot_Joint";
     public static final String LFootEnd_Joint = "LFootEndJoint";
     
+    // The part names in paint order, followed by composite part names (index is part id)
+    private static final String  _partNames[] = {
+        RArmTop, RArmBtm, RHand, RLegTop, RLegBtm, RFoot, Torso, Head,
+        LLegTop, LLegBtm, LFoot, LArmTop, LArmBtm, LHand, RArm, RLeg, LArm, LLeg };
+    
+    // The number of parts in paint order (excludes composite parts)
+    private static final int     PAINT_PART_COUNT = 14;
+    
+    // The joint names (index is joint id)
+    private static final String  _jointNames[] = { Anchor_Joint, Head_Joint, HeadTop_Joint,
+        RArm_Joint, RArmMid_Joint, RHand_Joint, RHandEnd_Joint,
+        RLeg_Joint, RLegMid_Joint, RFoot_Joint, RFootEnd_Joint,
+        LArm_Joint, LArmMid_Joint, LHand_Joint, LHandEnd_Joint,
+        LLeg_Joint, LLegMid_Joint, LFoot_Joint, LFootEnd_Joint };
+    
+    // The part names in paint order and natural order
+    private static final String  _paintPartNames[] = Arrays.copyOf(_partNames, PAINT_PART_COUNT);
+    private static final String  _partNamesNatural[] = { Head, Torso, RArmTop, RArmBtm, RHand, LArmTop, LArmBtm, LHand,
+        RLegTop, RLegBtm, RFoot, LLegTop, LLegBtm, LFoot };
+    
+    // The joint names in natural order, root joint names and pose key names
+    private static final String  _jointNamesNatural[] = { Head_Joint, HeadTop_Joint,
+        RArm_Joint, RArmMid_Joint, RHand_Joint, RHandEnd_Joint,
+        LArm_Joint, LArmMid_Joint, LHand_Joint, LHandEnd_Joint,
+        RLeg_Joint, RLegMid_Joint, RFoot_Joint, RFootEnd_Joint,
+        LLeg_Joint, LLegMid_Joint, LFoot_Joint, LFootEnd_Joint, Anchor_Joint };
+    private static final String  _rootJointNames[] = { Head_Joint, RArm_Joint, RLeg_Joint, LArm_Joint, LLeg_Joint };
+    private static final String  _poseKeys[] = { HeadTop_Joint, Head_Joint,
+        RArm_Joint, RArmMid_Joint, RHand_Joint, RHandEnd_Joint,
+        RLeg_Joint, RLegMid_Joint, RFoot_Joint, RFootEnd_Joint,
+        LArm_Joint, LArmMid_Joint, LHand_Joint, LHandEnd_Joint,
+        LLeg_Joint, LLegMid_Joint, LFoot_Joint, LFootEnd_Joint };
+    
+    // The node names (part names in paint order, followed by joint names)
+    private static final String  _nodeNames[] = getNodeNames(_paintPartNames, _jointNames);
+    private static final String  EMPTY[] = new String[0];
+    
+    // The part and joint ids by name
+    private static final Map <String,Integer>  _partIds = getIdMap(_partNames), _jointIds = getIdMap(_jointNames);
+    
+    // The compiled joint tables by joint id: linked part ids/names, next joint id, pose key index
+    private static final int     _jointLinkIds[][], _jointNextIds[], _jointPoseKeyIndexes[];
+    private static final String  _jointLinkNames[][];
+    
+    // The compiled part tables by part id: next joint id, outer joint ids/names, bone joint ids
+    private static final int     _partNextIds[], _partOuterIds[][], _partBoneIds[][];
+    private static final String  _partOuterNames[][];
+    
+    // The compiled pose key tables: joint id for each pose key, root pose key indexes, next pose key indexes
+    private static final int     _poseKeyJointIds[], _rootPoseKeyIndexes[], _nextPoseKeyIndexes[];
+    
+    // Compile tables from schema definitions
+    static
+    {
+        // Compile joint tables
+        int jcount = _jointNames.length;
+        _jointLinkNames = new String[jcount][]; _jointLinkIds = new int[jcount][];
+        _jointNextIds = new int[jcount]; _jointPoseKeyIndexes = new int[jcount];
+        for(int i=0;i<jcount;i++) { String name = _jointNames[i];
+            _jointLinkNames[i] = defineLinkNamesForJoint(name);
+            _jointLinkIds[i] = getIds(_partIds, _jointLinkNames[i]);
+            _jointNextIds[i] = getId(_jointIds, defineNextJointNameForName(name));
+            _jointPoseKeyIndexes[i] = Arrays.asList(_poseKeys).indexOf(name);
+        }
+        
+        // Compile part tables
+        int pcount = _partNames.length;
+        _partOuterNames = new String[pcount][]; _partOuterIds = new int[pcount][];
+        _partBoneIds = new int[pcount][]; _partNextIds = new int[pcount];
+        for(int i=0;i<pcount;i++) { String name = _partNames[i];
+            _partOuterNames[i] = defineOuterJointNamesForPartName(name);
+            _partOuterIds[i] = getIds(_jointIds, _partOuterNames[i]);
+            String boneNames[] = defineBoneJointNamesForPartName(name);
+            _partBoneIds[i] = boneNames!=null? getIds(_jointIds, boneNames) : new int[] { -1, -1 };
+            _partNextIds[i] = getId(_jointIds, defineNextJointNameForName(name));
+        }
+        
+        // Compile pose key tables
+        int pkcount = _poseKeys.length;
+        _poseKeyJointIds = getIds(_jointIds, _poseKeys);
+        _nextPoseKeyIndexes = new int[pkcount];
+        for(int i=0;i<pkcount;i++) { int next = _jointNextIds[_poseKeyJointIds[i]];
+            _nextPoseKeyIndexes[i] = next>=0? _jointPoseKeyIndexes[next] : -1; }
+        _rootPoseKeyIndexes = new int[_rootJointNames.length];
+        for(int i=0;i<_rootJointNames.length;i++)
+            _rootPoseKeyIndexes[i] = _jointPoseKeyIndexes[getId(_jointIds, _rootJointNames[i])];
+    }
+    
+/**
+ * Returns the node names (part names in paint order, followed by joint names) as a new array.
+ */
+public String[] getNodeNames()  { return _nodeNames.clone(); }
+
+/**
+ * Returns the number of nodes (parts in paint order, followed by joints).
+ */
+public int getNodeCount()  { return _nodeNames.length; }
+
+/**
+ * Returns the node name at given index.
+ */
+public String getNodeName(int anIndex)  { return _nodeNames[anIndex]; }
+
+/**
+ * Returns the part names in paint order as a new array.
+ */
+public String[] getPartNames()  { return _paintPartNames.clone(); }
+
 /**
- * Returns the part names in paint order.
+ * Returns the joint names as a new array.
  */
-public String[] getNodeNames()
+public String[] getJointNames()  { return _jointNames.clone(); }
+
+/**
+ * Returns the part names in natural order as a new array.
+ */
+public String[] getPartNamesNaturalOrder()  { return _partNamesNatural.clone(); }
+
+/**
+ * Returns the part name at given index in natural order (count is paint part count).
+ */
+public String getPartNameNaturalOrder(int anIndex)  { return _partNamesNatural[anIndex]; }
+
+/**
+ * Returns the joint names in natural order as a new array.
+ */
+public String[] getJointNamesNaturalOrder()  { return _jointNamesNatural.clone(); }
+
+/**
+ * Returns the joint name at given index in natural order (count is joint count).
+ */
+public String getJointNameNaturalOrder(int anIndex)  { return _jointNamesNatural[anIndex]; }
+
+/**
+ * Returns the root joint names as a new array.
+ */
+public String[] getRootJointNames()  { return _rootJointNames.clone(); }
+
+/**
+ * Returns the number of root joints.
+ */
+public int getRootJointCount()  { return _rootJointNames.length; }
+
+/**
+ * Returns the root joint name at given index.
+ */
+public String getRootJointName(int anIndex)  { return _rootJointNames[anIndex]; }
+
+/**
+ * Returns the puppet joint names that define a pose for puppet as a new array.
+ */
+public String[] getPoseKeys()  { return _poseKeys.clone(); }
+
+/**
+ * Returns the pose key (joint name) at given pose key index.
+ */
+public String getPoseKey(int anIndex)  { return _poseKeys[anIndex]; }
+
+/**
+ * Returns the number of parts (paint order parts followed by composite parts).
+ */
+public int getPartCount()  { return _partNames.length; }
+
+/**
+ * Returns the number of parts in paint order (paint order part ids are 0 to count-1).
+ */
+public int getPaintPartCount()  { return PAINT_PART_COUNT; }
+
+/**
+ * Returns the part id for given part name (or -1 if not a part).
+ */
+public int getPartId(String aName)
 {
-    List <String> names = new ArrayList();
-    Collections.addAll(names, getPartNames());
-    Collections.addAll(names, getJointNames());
-    return names.toArray(new String[names.size()]);
+    Integer id = _partIds.get(aName);
+    return id!=null? id : -1;
 }
 
 /**
- * Returns the part names in paint order.
+ * Returns the part name for given part id.
+ */
+public String getPartName(int anId)  { return _partNames[anId]; }
+
+/**
+ * Returns the number of joints.
+ */
+public int getJointCount()  { return _jointNames.length; }
+
+/**
+ * Returns the joint id for given joint name (or -1 if not a joint).
  */
-public String[] getPartNames()
+public int getJointId(String aName)
 {
-    return new String[] {
-        RArmTop, RArmBtm, RHand, RLegTop, RLegBtm, RFoot, Torso, Head,
-        LLegTop, LLegBtm, LFoot, LArmTop, LArmBtm, LHand };
+    Integer id = _jointIds.get(aName);
+    return id!=null? id : -1;
 }
 
 /**
- * Returns the joint names.
+ * Returns the joint name for given joint id.
+ */
+public String getJointName(int anId)  { return _jointNames[anId]; }
+
+/**
+ * Returns the number of parts linked to given joint id.
+ */
+public int getLinkPartCount(int aJointId)  { return _jointLinkIds[aJointId].length; }
+
+/**
+ * Returns the id of part linked to given joint id at given index.
  */
-public String[] getJointNames()
+public int getLinkPartId(int aJointId, int anIndex)  { return _jointLinkIds[aJointId][anIndex]; }
+
+/**
+ * Returns the id of next joint for given joint id (or -1 if none).
+ */
+public int getNextJointId(int aJointId)  { return _jointNextIds[aJointId]; }
+
+/**
+ * Returns the id of next joint for given part id (or -1 if none).
+ */
+public int getNextJointIdForPartId(int aPartId)  { return _partNextIds[aPartId]; }
+
+/**
+ * Returns the number of outer joints for given part id.
+ */
+public int getOuterJointCount(int aPartId)  { return _partOuterIds[aPartId].length; }
+
+/**
+ * Returns the id of outer joint for given part id at given index.
+ */
+public int getOuterJointId(int aPartId, int anIndex)  { return _partOuterIds[aPartId][anIndex]; }
+
+/**
+ * Returns the id of the joint at the base (index 0) or tip (index 1) of given part id (or -1 if part has no bone).
+ */
+public int getBoneJointId(int aPartId, int anIndex)  { return _partBoneIds[aPartId][anIndex]; }
+
+/**
+ * Returns whether given joint id is a marker (joint with no next joint).
+ */
+public boolean isMarker(int aJointId)  { return _jointNextIds[aJointId]<0; }
+
+/**
+ * Returns the pose key index for given joint id (or -1 if not a pose key).
+ */
+public int getPoseKeyIndexForJointId(int aJointId)  { return _jointPoseKeyIndexes[aJointId]; }
+
+/**
+ * Returns the joint id for given pose key index.
+ */
+public int getJointIdForPoseKeyIndex(int anIndex)  { return _poseKeyJointIds[anIndex]; }
+
+/**
+ * Returns the number of pose keys.
+ */
+public int getPoseKeyCount()  { return _poseKeys.length; }
+
+/**
+ * Returns the index of given pose key name in pose keys (or -1 if not a pose key).
+ */
+public int getPoseKeyIndex(String aName)
 {
-    return new String[] { Anchor_Joint, Head_Joint, HeadTop_Joint,
-        RArm_Joint, RArmMid_Joint, RHand_Joint, RHandEnd_Joint,
-        RLeg_Joint, RLegMid_Joint, RFoot_Joint, RFootEnd_Joint,
-        LArm_Joint, LArmMid_Joint, LHand_Joint, LHandEnd_Joint,
-        LLeg_Joint, LLegMid_Joint, LFoot_Joint, LFootEnd_Joint };
+    int id = getJointId(aName);
+    return id>=0? _jointPoseKeyIndexes[id] : -1;
 }
 
 /**
- * Returns the part names in paint order.
+ * Returns the number of root joint pose keys.
  */
-public String[] getPartNamesNaturalOrder()
+public int getRootPoseKeyCount()  { return _rootPoseKeyIndexes.length; }
+
+/**
+ * Returns the pose key index of root joint at given index.
+ */
+public int getRootPoseKeyIndex(int anIndex)  { return _rootPoseKeyIndexes[anIndex]; }
+
+/**
+ * Returns the pose key index of next joint for given pose key index (or -1 if no next joint).
+ */
+public int getNextPoseKeyIndex(int anIndex)  { return _nextPoseKeyIndexes[anIndex]; }
+
+/**
+ * Returns names of parts linked to given joint name as a new array.
+ */
+public String[] getLinkNamesForJoint(String aName)
 {
-    return new String[] { Head, Torso, RArmTop, RArmBtm, RHand, LArmTop, LArmBtm, LHand,
-        RLegTop, RLegBtm, RFoot, LLegTop, LLegBtm, LFoot };
+    int id = getJointId(aName);
+    return id>=0? _jointLinkNames[id].clone() : EMPTY;
 }
 
 /**
- * Returns the joint names in paint order.
+ * Returns names of outer joints for given part name as a new array.
  */
-public String[] getJointNamesNaturalOrder()
+public String[] getOuterJointNamesForPartName(String aName)
 {
-    return new String[] { Head_Joint, HeadTop_Joint,
-        RArm_Joint, RArmMid_Joint, RHand_Joint, RHandEnd_Joint,
-        LArm_Joint, LArmMid_Joint, LHand_Joint, LHandEnd_Joint,
-        RLeg_Joint, RLegMid_Joint, RFoot_Joint, RFootEnd_Joint,
-        LLeg_Joint, LLegMid_Joint, LFoot_Joint, LFootEnd_Joint, Anchor_Joint };
+    int id = getPartId(aName);
+    return id>=0? _partOuterNames[id].clone() : EMPTY;
 }
 
 /**
- * Returns the root joint names.
+ * Returns name of next joint for given joint or part name (or null if none).
  */
-public String[] getRootJointNames()
+public String getNextJointNameForName(String aName)
 {
-    return new String[] { Head_Joint, RArm_Joint, RLeg_Joint, LArm_Joint, LLeg_Joint };
+    int id = getJointId(aName), next = id>=0? _jointNextIds[id] : -1;
+    if(id<0) { int pid = getPartId(aName); next = pid>=0? _partNextIds[pid] : -1; }
+    return next>=0? _jointNames[next] : null;
 }
 
 /**
- * Returns the puppet joint names that define a pose for puppet.
+ * Returns whether given name is marker name.
  */
-public String[] getPoseKeys()
+public boolean isMarkerName(String aName)
 {
-    return new String[] { HeadTop_Joint, Head_Joint,
-        RArm_Joint, RArmMid_Joint, RHand_Joint, RHandEnd_Joint,
-        RLeg_Joint, RLegMid_Joint, RFoot_Joint, RFootEnd_Joint,
-        LArm_Joint, LArmMid_Joint, LHand_Joint, LHandEnd_Joint,
-        LLeg_Joint, LLegMid_Joint, LFoot_Joint, LFootEnd_Joint };
+    int id = getJointId(aName);
+    return id>=0? isMarker(id) : aName.endsWith("Joint") && getNextJointNameForName(aName)==null;
+}
+
+/** Returns a map of given names to their index. */
+private static Map <String,Integer> getIdMap(String theNames[])
+{
+    Map <String,Integer> map = new HashMap(theNames.length*2);
+    for(int i=0;i<theNames.length;i++) map.put(theNames[i], i);
+    return map;
+}
+
+/** Returns the id for given name in given id map (or -1 if name is null or not found). */
+private static int getId(Map <String,Integer> theIds, String aName)
+{
+    Integer id = aName!=null? theIds.get(aName) : null;
+    return id!=null? id : -1;
+}
+
+/** Returns the ids for given names in given id map. */
+private static int[] getIds(Map <String,Integer> theIds, String theNames[])
+{
+    int ids[] = new int[theNames.length];
+    for(int i=0;i<theNames.length;i++) ids[i] = getId(theIds, theNames[i]);
+    return ids;
+}
+
+/** Returns the node names for given part and joint names. */
+private static String[] getNodeNames(String thePartNames[], String theJointNames[])
+{
+    List <String> names = new ArrayList();
+    Collections.addAll(names, thePartNames);
+    Collections.addAll(names, theJointNames);
+    return names.toArray(new String[names.size()]);
 }
 
 /**
- * Returns names of parts linked to given joint name.
+ * Defines names of parts linked to given joint name.
  */
-public String[] getLinkNamesForJoint(String aName)
+private static String[] defineLinkNamesForJoint(String aName)
 {
     switch(aName) {
         case Head_Joint: return new String[] { Head, Torso };
@@ -145,14 +420,14 @@ public String[] getLinkNamesForJoint(String aName)
         case LLegMid_Joint: return new String[] { LLegTop, LLegBtm };
         case LFoot_Joint: return new String[] { LLegBtm, LFoot };
         case LFootEnd_Joint: return new String[] { LFoot };
-        default: return new String[0];
+        default: return EMPTY;
     }
 }
 
 /**
- * Returns names of parts linked to given joint name.
+ * Defines names of outer joints for given part name.
  */
-public String[] getOuterJointNamesForPartName(String aName)
+private static String[] defineOuterJointNamesForPartName(String aName)
 {
     switch(aName) {
         case RArmTop: return new String[] { RArmMid_Joint, RHand_Joint };
@@ -163,14 +438,38 @@ public String[] getOuterJointNamesForPartName(String aName)
         case LArmBtm: return new String[] { LHand_Joint };
         case LLegTop: return new String[] { LLegMid_Joint, LFoot_Joint };
         case LLegBtm: return new String[] { LFoot_Joint };
-        default: return new String[0];
+        default: return EMPTY;
     }
 }
 
 /**
- * Returns names of parts linked to given joint name.
+ * Defines names of the joints at the base and tip of given part name.
  */
-public String getNextJointNameForName(String aName)
+private static String[] defineBoneJointNamesForPartName(String aName)
+{
+    switch(aName) {
+        case Torso: return new String[] { Anchor_Joint, Head_Joint };
+        case Head: return new String[] { Head_Joint, HeadTop_Joint };
+        case RArmTop: return new String[] { RArm_Joint, RArmMid_Joint };
+        case RArmBtm: return new String[] { RArmMid_Joint, RHand_Joint };
+        case RHand: return new String[] { RHand_Joint, RHandEnd_Joint };
+        case RLegTop: return new String[] { RLeg_Joint, RLegMid_Joint };
+        case RLegBtm: return new String[] { RLegMid_Joint, RFoot_Joint };
+        case RFoot: return new String[] { RFoot_Joint, RFootEnd_Joint };
+        case LArmTop: return new String[] { LArm_Joint, LArmMid_Joint };
+        case LArmBtm: return new String[] { LArmMid_Joint, LHand_Joint };
+        case LHand: return new String[] { LHand_Joint, LHandEnd_Joint };
+        case LLegTop: return new String[] { LLeg_Joint, LLegMid_Joint };
+        case LLegBtm: return new String[] { LLegMid_Joint, LFoot_Joint };
+        case LFoot: return new String[] { LFoot_Joint, LFootEnd_Joint };
+        default: return null;
+    }
+}
+
+/**
+ * Defines name of next joint for given joint or part name.
+ */
+private static String defineNextJointNameForName(String aName)
 {
     switch(aName) {
         case Head_Joint: case Head: return HeadTop_Joint;
@@ -190,12 +489,4 @@ public String getNextJointNameForName(String aName)
     }
 }
 
-/**
- * Returns whether given name is marker name.
- */
-public boolean isMarkerName(String aName)
-{
-    return aName.endsWith("Joint") && getNextJointNameForName(aName)==null;
-}
-
 }
\ No newline at end of file
@@ -37,12 +37,12 @@ static
 /**
  * Returns the PuppetFile.
  */
-public static PuppetFile getPuppetFile()  { return _puppetFile!=null? _puppetFile : (_puppetFile = new PuppetFile()); }
+public synchronized static PuppetFile getPuppetFile()  { return _puppetFile!=null? _puppetFile : (_puppetFile = new PuppetFile()); }
 
 /**
  * Returns the ActionFile.
  */
-public static ActionFile getActionFile()  { return _actionFile!=null? _actionFile : (_actionFile = new ActionFile()); }
+public synchronized static ActionFile getActionFile()  { return _actionFile!=null? _actionFile : (_actionFile = new ActionFile()); }
 
 /**
  * Returns the flipped image.
@@ -79,7 +79,7 @@ public static Image getImagesFlipped(Image anImage)
 /**
  * Returns the joint/marker image.
  */
-public static Image getMarkerImage()
+public synchronized static Image getMarkerImage()
 {
     if(_markerImg!=null) return _markerImg; double s = 23;
     Image img = Image.get((int)s, (int)s, true);
@@ -95,7 +95,7 @@ public static Image getMarkerImage()
 /**
  * Returns the anchor image.
  */
-public static Image getAnchorImage()
+public synchronized static Image getAnchorImage()
 {
     if(_anchorImage!=null) return _anchorImage; double s = 90;
     Image img = Image.get((int)s, (int)s, true);
@@ -117,9 +117,18 @@ public static class PuppetFile {
     // The puppet names
     private String              _names[];
     
+    // The puppet entries by lower case name
+    private Map <String,PuppetEntry>  _nameIndex;
+    
     // The file path
     private String              _path = ROOT + "Puppets.xml";
     
+    /** Returns the file path. */
+    public String getPath()  { return _path; }
+    
+    /** Sets the file path (clears puppets read from previous path). */
+    public void setPath(String aPath)  { _path = aPath; _pupEnts = null; _names = null; _nameIndex = null; }
+    
     /** Returns the list of puppet entries. */
     public List <PuppetEntry> getEntries()  { return _pupEnts!=null? _pupEnts : (_pupEnts=readPuppets()); }
     
@@ -141,13 +150,19 @@ public static class PuppetFile {
     /** Returns the individual PuppetEntry at given index. */
     public PuppetEntry getEntry(int anIndex)  { return getEntries().get(anIndex); }
     
+    /** Returns the PuppetEntry with given name (case insensitive). */
+    public synchronized PuppetEntry getEntryForName(String aName)
+    {
+        if(_nameIndex==null) { _nameIndex = new HashMap();
+            for(PuppetEntry pupEnt : getEntries()) _nameIndex.putIfAbsent(pupEnt.getName().toLowerCase(), pupEnt); }
+        return _nameIndex.get(aName.toLowerCase());
+    }
+    
     /** Returns the puppet with given name. */
     public Puppet getPuppetForName(String aName)
     {
-        for(PuppetEntry pupEnt : getEntries())
-            if(pupEnt.getName().equalsIgnoreCase(aName))
-                return pupEnt.getPuppet();
-        return null;
+        PuppetEntry pupEnt = getEntryForName(aName);
+        return pupEnt!=null? pupEnt.getPuppet() : null;
     }
     
     /** Adds an puppet. */
@@ -157,14 +172,17 @@ public static class PuppetFile {
     public void addPuppet(Puppet aPuppet, int anIndex)
     {
         PuppetEntry pe = new PuppetEntry(aPuppet);
-        getEntries().add(anIndex, pe); _names = null;
+        getEntries().add(anIndex, pe); _names = null; _nameIndex = null;
+        keepReferencePuppet();
         savePuppets();
     }
     
     /** Removes an puppet. */
     public Puppet removePuppet(int anIndex)
     {
-        PuppetEntry pe = getEntries().remove(anIndex); _names = null;
+        PuppetEntry pe = getEntries().remove(anIndex); _names = null; _nameIndex = null;
+        PuppetCache.remove(pe);
+        keepReferencePuppet();
         savePuppets();
         return pe.getPuppet();
     }
@@ -184,11 +202,20 @@ public static class PuppetFile {
             PuppetEntry pe = new PuppetEntry().fromXML(null, pupXML);
             puppets.add(pe);
         }
-       
-        // Return puppets
+        
+        // Keep reference puppet (first) loaded, since fits are relative to it, and return puppets
+        if(puppets.size()>0) puppets.get(0)._keep = true;
         return puppets;
     }
     
+    /** Keeps reference puppet (first) loaded, since fits are relative to it (removes it from PuppetCache). */
+    protected void keepReferencePuppet()
+    {
+        if(getPuppetCount()==0) return;
+        PuppetEntry pe = getEntry(0); if(pe._keep) return;
+        pe._keep = true; PuppetCache.remove(pe);
+    }
+    
     /** Saves actions to file. */
     public void savePuppets()
     {
@@ -218,13 +245,16 @@ public static class PuppetEntry {
     // The path
     String     _path;
     
-    // The puppet
-    Puppet     _puppet;
+    // The puppet (cleared if evicted by PuppetCache)
+    volatile Puppet  _puppet;
+    
+    // Whether puppet is kept loaded (not added to PuppetCache), like reference puppet that fits are relative to
+    boolean    _keep;
     
     /** Creates PuppetEntry. */
     public PuppetEntry()  { }
     
-    /** Creates PuppetEntry for puppet. */
+    /** Creates PuppetEntry for puppet (puppet isn't evicted, since it may not be saved). */
     public PuppetEntry(Puppet aPuppet)  { _name = aPuppet.getName(); _puppet = aPuppet; }
     
     /** Return name. */
@@ -233,16 +263,32 @@ public static class PuppetEntry {
     /** Return path. */
     public String getPath()  { return _puppet!=null? _puppet.getSourceRelPath() : _path; }
     
-    /** The puppet. */
+    /** The puppet (loaded if not yet loaded or evicted, and marked as recently used in PuppetCache). */
     public Puppet getPuppet()
     {
-        if(_puppet!=null) return _puppet;
+        // Get puppet, loading if needed
+        Puppet puppet; boolean loaded = false;
+        synchronized (this) {
+            puppet = _puppet;
+            if(puppet==null && _path!=null) {
+                puppet = _puppet = Puppet.getPuppetForSource(ROOT + _path); loaded = puppet!=null; }
+        }
         
-        //if(_name.equals("Man") || _name.equals("Lady")) _puppet = Puppet.getPuppetForSource(_name); else
-        _puppet = Puppet.getPuppetForSource(ROOT + _path);
-        return _puppet;
+        // Add new puppet to cache or mark as recently used (outside lock, since cache may evict other entries),
+        // unless it is kept or can't be reloaded
+        if(puppet!=null && _path!=null && !_keep) {
+            if(loaded) PuppetCache.add(this, puppet);
+            else PuppetCache.touch(this);
+        }
+        return puppet;
     }
     
+    /** Returns whether puppet is loaded. */
+    public boolean isLoaded()  { return _puppet!=null; }
+    
+    /** Clears given puppet (if still entry puppet), so it's reloaded when next requested. */
+    protected void evict(Puppet aPuppet)  { if(_puppet==aPuppet) _puppet = null; }
+    
     /** XML Archival. */
     public XMLElement toXML(XMLArchiver anArchiver)
     {
@@ -272,7 +318,21 @@ public static class ActionFile {
     // The file path
     String               _path = ROOT + "HumanActions.xml";
     
-    /** Returns the list of actions. */
+    // The journal of edits not yet folded into file
+    ActionJournal        _journal;
+    
+    /** Returns the file path. */
+    public String getPath()  { return _path; }
+    
+    /** Sets the file path (clears actions loaded from previous path and closes its journal and library). */
+    public void setPath(String aPath)
+    {
+        if(_journal!=null) _journal.close();
+        if(_actions instanceof LibraryList) ((LibraryList)_actions).detach();
+        _path = aPath; _actions = null; _journal = null;
+    }
+    
+    /** Returns the list of actions (actions from binary library are decoded when first requested). */
     public List <PuppetAction> getActions()  { return _actions!=null? _actions : (_actions = loadActions()); }
     
     /** Returns the number of actions. */
@@ -284,7 +344,13 @@ public static class ActionFile {
     /** Returns the action with given name. */
     public PuppetAction getActionForName(String aName)
     {
-        for(PuppetAction act : getActions())
+        // If actions are from library, use library name index (decodes only matching action)
+        List <PuppetAction> actions = getActions();
+        if(actions instanceof LibraryList)
+            return ((LibraryList)actions).getActionForName(aName);
+        
+        // Iterate over actions and return action with name
+        for(PuppetAction act : actions)
             if(act.getName().equalsIgnoreCase(aName))
                 return act;
         return null;
@@ -297,52 +363,161 @@ public static class ActionFile {
     public void addAction(PuppetAction anAction, int anIndex)
     {
         getActions().add(anIndex, anAction);
-        saveActions();
+        if(_journal!=null) _journal.append(ActionJournal.ADD, anIndex, anAction);
+        else saveActions();
     }
     
     /** Removes an action. */
     public PuppetAction removeAction(int anIndex)
     {
         PuppetAction action = getActions().remove(anIndex);
-        saveActions();
+        if(_journal!=null) _journal.append(ActionJournal.REMOVE, anIndex, null);
+        else saveActions();
         return action;
     }
     
-    /** Loads actions from file. */
+    /** Records that given action has changed (in journal, which is folded into file in background once idle). */
+    public void actionDidChange(PuppetAction anAction)
+    {
+        int index = getActions().indexOf(anAction); if(index<0) return;
+        if(_journal!=null) _journal.append(ActionJournal.SET, index, anAction);
+        else saveActions();
+    }
+    
+    /** Loads actions from file (from binary library if current, otherwise from XML) and replays journal. */
     protected List <PuppetAction> loadActions()
     {
-        // Get file string as XMLElement
-        WebURL url = WebURL.getURL(_path);
-        String fileStr = url.getText();
-        if(fileStr==null) return new ArrayList();
-        XMLElement actionsXML = XMLElement.getElement(url);
+        // Load actions and get sequence number of last journal record in file
+        List <PuppetAction> actions; int seq = 0;
         
-        // Iterate over actions
-        List <PuppetAction> actions = new ArrayList();
-        for(XMLElement actionXML : actionsXML.getElements()) {
-            PuppetAction action = new PuppetAction().fromXML(null, actionXML);
-            actions.add(action);
+        // If binary library is current, use list that decodes actions on demand
+        PuppetActionLibrary library = PuppetActionLibrary.getLibrary(_path);
+        if(library!=null) {
+            actions = new LibraryList(library);
+            seq = library.getSeq();
         }
-       
+        
+        // Otherwise, load from XML
+        else {
+            
+            // Get file string as XMLElement
+            WebURL url = WebURL.getURL(_path);
+            String fileStr = url.getText();
+            XMLElement actionsXML = fileStr!=null? XMLElement.getElement(url) : null;
+            
+            // Iterate over actions
+            actions = new ArrayList();
+            if(actionsXML!=null) {
+                seq = actionsXML.getAttributeIntValue("Seq", 0);
+                for(XMLElement actionXML : actionsXML.getElements()) {
+                    PuppetAction action = new PuppetAction().fromXML(null, actionXML);
+                    actions.add(action);
+                }
+            }
+            
+            // Write binary library for next time
+            if(fileStr!=null) PuppetActionLibrary.write(_path, actions, seq);
+        }
+        
+        // Get journal and replay edits not yet folded into file
+        _journal = ActionJournal.getJournal(_path, seq);
+        if(_journal!=null) _journal.replay(actions, seq);
+        
         // Return actions
         return actions;
     }
     
-    /** Saves actions to file. */
+    /** Saves all actions to file (and clears journal). */
     public void saveActions()
     {
         if(SnapUtils.isTeaVM) return;
+        if(_journal!=null) _journal.save(getActions());
+        else ActionJournal.writeActions(_path, getActions(), 0);
+    }
+}
+
+/**
+ * A list of actions backed by a binary action library, that decodes each action when first requested.
+ */
+private static class LibraryList extends AbstractList <PuppetAction> {
+    
+    // The library
+    PuppetActionLibrary  _library;
+    
+    // The library index of each action that hasn't been decoded (or -1 if decoded or added)
+    List <Integer>       _indexes = new ArrayList();
+    
+    // The actions (null if not yet decoded)
+    List <PuppetAction>  _actions = new ArrayList();
+    
+    /** Creates a LibraryList for given library. */
+    LibraryList(PuppetActionLibrary aLibrary)
+    {
+        _library = aLibrary;
+        for(int i=0, iMax=aLibrary.getActionCount(); i<iMax; i++) { _indexes.add(i); _actions.add(null); }
+        aLibrary.setReleaseHandler(() -> detach());
+    }
+    
+    /** Decodes remaining actions and closes library (called before library file is replaced). */
+    synchronized void detach()
+    {
+        if(_library==null) return;
+        for(int i=0, iMax=_actions.size(); i<iMax; i++) get(i);
+        _library.close(); _library = null;
+    }
+    
+    /** Returns the number of actions. */
+    public int size()  { return _actions.size(); }
+    
+    /** Returns the action at given index (decoding it from library if needed). */
+    public synchronized PuppetAction get(int anIndex)
+    {
+        PuppetAction action = _actions.get(anIndex); if(action!=null) return action;
+        action = _library.getAction(_indexes.get(anIndex));
+        _actions.set(anIndex, action); _indexes.set(anIndex, -1);
+        return action;
+    }
+    
+    /** Sets the action at given index. */
+    public synchronized PuppetAction set(int anIndex, PuppetAction anAction)
+    {
+        PuppetAction action = get(anIndex);
+        _actions.set(anIndex, anAction);
+        return action;
+    }
+    
+    /** Adds an action at given index. */
+    public synchronized void add(int anIndex, PuppetAction anAction)
+    {
+        _actions.add(anIndex, anAction); _indexes.add(anIndex, -1); modCount++;
+    }
+    
+    /** Removes the action at given index. */
+    public synchronized PuppetAction remove(int anIndex)
+    {
+        PuppetAction action = get(anIndex);
+        _actions.remove(anIndex); _indexes.remove(anIndex); modCount++;
+        return action;
+    }
+    
+    /** Returns the index of given action (only checks decoded actions, since given action must be decoded). */
+    public synchronized int indexOf(Object anObj)  { return anObj!=null? _actions.indexOf(anObj) : -1; }
+    
+    /** Returns the action with given name (only decodes the matching action). */
+    public synchronized PuppetAction getActionForName(String aName)
+    {
+        // If library index for name is still at same list index, just get it
+        int index = _library!=null? _library.getActionIndex(aName) : -1;
+        if(index>=0 && index<_indexes.size() && _indexes.get(index)==index)
+            return get(index);
         
-        // Create element for actions and iterate over actions and add each
-        XMLElement actionsXML = new XMLElement("Actions");
-        for(PuppetAction action : getActions()) {
-            XMLElement actionXML = action.toXML(null);
-            actionsXML.add(actionXML);
+        // Otherwise iterate over actions and compare decoded action name or library name
+        for(int i=0, iMax=_actions.size(); i<iMax; i++) { PuppetAction action = _actions.get(i);
+            String name = action!=null? action.getName() : _library.getActionName(_indexes.get(i));
+            if(name.equalsIgnoreCase(aName))
+                return get(i);
         }
-        
-        // Get as bytes and write to file
-        byte bytes[] = actionsXML.getBytes();
-        SnapUtils.writeBytes(bytes, _path);
+        return null;
     }
 }
 
@@ -25,9 +25,21 @@ public class PuppetView extends ParentView {
     // The Physics runner
     PuppetViewPhys  _phys;
     
+    // Whether poses are set analytically by kinematics (instead of by physics)
+    boolean         _poseKinematic = true;
+    
+    // The Kinematics poser
+    PuppetViewKinematics  _kin;
+    
+    // The pose buffer used to fit poses to puppet
+    PackedPose      _fitPose = new PackedPose();
+    
     // Whether to show markers
     boolean         _showMarkers = true;
     
+    // The puppet pinned while view is showing (so it isn't evicted from PuppetCache)
+    Puppet          _pinned;
+    
 /**
  * Creates a PuppetView.
  */
@@ -35,6 +47,7 @@ public PuppetView()
 {
     setPadding(50,50,50,50);
     setBorder(Color.LIGHTGRAY, 1);
+    addPropChangeListener(pc -> resetPin(), Showing_Prop);
 }
 
 /**
@@ -66,25 +79,47 @@ public Puppet getPuppet()  { return _puppet; }
  */
 public void setPuppet(Puppet aPuppet)
 {
-    // Set puppet
+    // Set puppet and pin if showing
     _puppet = aPuppet;
+    resetPin();
     
     // Rebuild children
     if(aPuppet.isLoaded()) rebuildChildren();
     else aPuppet.addLoadListener(() -> rebuildChildren());
 }
 
+/**
+ * Pins puppet while view is showing, unpinning previous puppet.
+ */
+void resetPin()
+{
+    Puppet pup = isShowing()? _puppet : null; if(pup==_pinned) return;
+    if(_pinned!=null) _pinned.unpin();
+    if(pup!=null) pup.pin();
+    _pinned = pup;
+}
+
 /**
  * Returns the puppet schema.
  */
 public PuppetSchema getSchema()  { return _puppet.getSchema(); }
 
+/**
+ * Returns the scale of puppet in view.
+ */
+public double getScale()  { return _scale; }
+
+/**
+ * Returns the scale of puppet in view for given puppet height.
+ */
+public static double getScaleForHeight(double aHeight)  { return .87/500*aHeight; }
+
 /**
  * Sets the puppet height.
  */
 public void setPuppetHeight(double aHeight)
 {
-    _scale = .87/500*aHeight;
+    _scale = getScaleForHeight(aHeight);
     rebuildChildren();
 }
 
@@ -190,8 +225,9 @@ public void rebuildChildren()
     // Reset size
     setSize(getPrefSize());
     
-    // Remove children
+    // Remove children (and clear kinematics, since it holds rest geometry for children)
     removeChildren();
+    _kin = null;
     
     // Iterate over parts and add PartView for each
     for(PuppetPart part : _puppet.getPartsPaintOrder()) {
@@ -228,7 +264,9 @@ public PuppetPose getPose()
     
     // Iterate over pose keys and add pose marker and x/y location to poseKeyPoints map
     Map <String,Point> poseKeyPoints = new LinkedHashMap();
-    for(String pkey : getSchema().getPoseKeys()) { View pview = getChild(pkey);
+    PuppetSchema schema = getSchema();
+    for(int i=0, iMax=schema.getPoseKeyCount(); i<iMax; i++) { String pkey = schema.getPoseKey(i);
+        View pview = getChild(pkey);
         Point pnt = pview.localToParent(pview.getWidth()/2, pview.getHeight()/2);
         pnt.x = pnt.x - anchor.x; pnt.y = anchor.y - pnt.y;
         poseKeyPoints.put(pkey, pnt);
@@ -243,6 +281,10 @@ public PuppetPose getPose()
  */
 public void setPose(PuppetPose aPose)
 {
+    // If posing kinematically, set pose directly
+    if(isPosingByKinematics()) {
+        setPoseByKinematics(aPose.getPacked()); return; }
+    
     // Make sure last pose is resolved
     _phys.resolveMouseJoints();
     
@@ -254,7 +296,8 @@ public void setPose(PuppetPose aPose)
     PuppetPose pose = aPose.cloneForPuppetAtScale(getPuppet(), _scale);
     
     // Iterate over pose keys and add pose marker and x/y location to map
-    for(String pkey : getSchema().getPoseKeys()) {
+    PuppetSchema schema = getSchema();
+    for(int i=0, iMax=schema.getPoseKeyCount(); i<iMax; i++) { String pkey = schema.getPoseKey(i);
         View pview = getChild(pkey);
         Point pnt = pose.getMarkerPoint(pkey);
         double px = pnt.x + anchor.x, py = anchor.y - pnt.y;
@@ -266,6 +309,65 @@ public void setPose(PuppetPose aPose)
    else _phys.resolveMouseJoints();
 }
 
+/**
+ * Sets a Puppet pose in packed form (resolves immediately).
+ */
+public void setPose(PackedPose aPose)
+{
+    // If posing kinematically, set pose directly, otherwise set in map form
+    if(isPosingByKinematics())
+        setPoseByKinematics(aPose);
+    else setPose(aPose.toPose());
+}
+
+/**
+ * Sets a Puppet pose analytically, placing each part on its pose bone (and syncing physics bodies if posable).
+ */
+protected void setPoseByKinematics(PackedPose aPose)
+{
+    getPuppet().getRetarget(_scale).setPose(aPose, _fitPose);
+    setPoseFitted(_fitPose);
+}
+
+/**
+ * Sets a Puppet pose already fit to view puppet and scale analytically (and syncs physics bodies if posable).
+ */
+protected void setPoseFitted(PackedPose aPose)
+{
+    // Clear any pending physics pose
+    if(_phys!=null) _phys.clearMouseJoints();
+    
+    // Set pose in kinematics
+    getKinematics().setPose(aPose);
+    
+    // Move physics bodies to match views
+    if(_phys!=null) _phys.syncBodiesToViews();
+}
+
+/**
+ * Returns whether poses are currently set by kinematics (kinematic and not posable with poses set over time).
+ */
+protected boolean isPosingByKinematics()  { return isPoseKinematic() && !(isPoseSmoothly() && isPosable()); }
+
+/**
+ * Returns whether poses are set analytically by kinematics (instead of by physics).
+ */
+public boolean isPoseKinematic()  { return _poseKinematic; }
+
+/**
+ * Sets whether poses are set analytically by kinematics (instead of by physics).
+ */
+public void setPoseKinematic(boolean aValue)  { _poseKinematic = aValue; }
+
+/**
+ * Returns the kinematics poser.
+ */
+protected PuppetViewKinematics getKinematics()
+{
+    if(_kin!=null) return _kin;
+    return _kin = new PuppetViewKinematics(this);
+}
+
 /**
  * Returns whether poses are set over time (animated) as opposed to instantly.
  */
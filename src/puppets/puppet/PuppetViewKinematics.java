@@ -0,0 +1,125 @@
+package puppets.puppet;
+import java.util.*;
+import snap.geom.*;
+import snap.view.*;
+
+/**
+ * A class to pose a PuppetView analytically (forward kinematics) by placing each part on the bone defined by pose.
+ */
+public class PuppetViewKinematics {
+    
+    // The PuppetView
+    PuppetView     _pupView;
+    
+    // The anchor location in view coords
+    double         _anchorX, _anchorY;
+    
+    // The bones that position part views
+    Bone           _bones[];
+    
+    // The joint/marker views for pose keys (by pose key index)
+    View           _poseKeyViews[];
+
+/**
+ * Creates a PuppetViewKinematics for given PuppetView (captures rest geometry from puppet).
+ */
+public PuppetViewKinematics(PuppetView aView)
+{
+    // Set View
+    _pupView = aView;
+    
+    // Get Puppet, Schema
+    Puppet puppet = aView.getPuppet();
+    PuppetSchema schema = puppet.getSchema();
+    
+    // Get anchor point in view coords
+    PuppetJoint anchor = puppet.getJoint(PuppetSchema.Anchor_Joint);
+    Point anchorPnt = aView.puppetToLocalForXY(anchor.getX(), anchor.getY());
+    _anchorX = anchorPnt.x; _anchorY = anchorPnt.y;
+    
+    // Iterate over parts and create bone for each part view
+    List <Bone> bones = new ArrayList();
+    for(PuppetPart part : puppet.getPartsPaintOrder()) { if(part==null) continue;
+        
+        // Get part view and bone joint names (just continue if not found)
+        View view = aView.getChild(part.getName()); if(view==null) continue;
+        int partId = schema.getPartId(part.getName()); if(partId<0) continue;
+        int jid0 = schema.getBoneJointId(partId, 0), jid1 = schema.getBoneJointId(partId, 1); if(jid0<0) continue;
+        PuppetJoint jnt0 = puppet.getJoint(jid0);
+        PuppetJoint jnt1 = puppet.getJoint(jid1);
+        if(jnt0==null || jnt1==null) continue;
+        
+        // Get rest bone points and part bounds in view coords and add bone
+        Point p0 = aView.puppetToLocalForXY(jnt0.getX(), jnt0.getY());
+        Point p1 = aView.puppetToLocalForXY(jnt1.getX(), jnt1.getY());
+        Rect bnds = aView.puppetToLocalForShape(part.getBounds()).getBounds();
+        int ind0 = schema.getPoseKeyIndexForJointId(jid0), ind1 = schema.getPoseKeyIndexForJointId(jid1);
+        Bone bone = new Bone(view, ind0, ind1, p0, p1, bnds.x + bnds.width/2, bnds.y + bnds.height/2);
+        bones.add(bone);
+    }
+    _bones = bones.toArray(new Bone[0]);
+    
+    // Get joint/marker views for pose keys
+    _poseKeyViews = new View[schema.getPoseKeyCount()];
+    for(int i=0;i<_poseKeyViews.length;i++) _poseKeyViews[i] = aView.getChild(schema.getPoseKey(i));
+}
+
+/**
+ * Sets a pose (already adjusted to view puppet and scale) by moving and rotating part views and moving joint views.
+ */
+public void setPose(PackedPose aPose)
+{
+    // Iterate over bones and set part view location and rotation
+    for(Bone bone : _bones) {
+        
+        // Get bone base/tip points in view coords (base is anchor if not pose key) - just continue if missing
+        int ind0 = bone._baseIndex, ind1 = bone._tipIndex;
+        double bx = ind0>=0? _anchorX + aPose.getX(ind0) : _anchorX;
+        double by = ind0>=0? _anchorY - aPose.getY(ind0) : _anchorY;
+        double tx = _anchorX + aPose.getX(ind1), ty = _anchorY - aPose.getY(ind1);
+        if(Double.isNaN(bx) || Double.isNaN(tx)) continue;
+        
+        // Get bone rotation from rest
+        double ang = Math.atan2(ty - by, tx - bx) - bone._restAng;
+        
+        // Rotate rest part center around bone base and set view location and rotation
+        double cos = Math.cos(ang), sin = Math.sin(ang);
+        double cx = bx + bone._restDX*cos - bone._restDY*sin;
+        double cy = by + bone._restDX*sin + bone._restDY*cos;
+        View view = bone._view;
+        view.setXY(cx - view.getWidth()/2, cy - view.getHeight()/2);
+        view.setRotate(Math.toDegrees(ang));
+    }
+    
+    // Iterate over pose keys and set joint/marker view locations
+    for(int i=0;i<_poseKeyViews.length;i++) { View view = _poseKeyViews[i];
+        if(view==null || !aPose.isSet(i)) continue;
+        double px = _anchorX + aPose.getX(i), py = _anchorY - aPose.getY(i);
+        view.setXY(px - view.getWidth()/2, py - view.getHeight()/2);
+    }
+}
+
+/**
+ * A class to hold the rest geometry of a part view relative to the bone that positions it.
+ */
+private static class Bone {
+    
+    // The part view
+    View      _view;
+    
+    // The pose key indexes of the joints at base and tip of bone (base is -1 for anchor)
+    int       _baseIndex, _tipIndex;
+    
+    // The rest angle of bone and the rest part center relative to bone base (in view coords)
+    double    _restAng, _restDX, _restDY;
+    
+    /** Creates a Bone for given part view, joint pose key indexes, rest joint points and rest part center. */
+    public Bone(View aView, int aBaseIndex, int aTipIndex, Point aBase, Point aTip, double aCX, double aCY)
+    {
+        _view = aView; _baseIndex = aBaseIndex; _tipIndex = aTipIndex;
+        _restAng = Math.atan2(aTip.y - aBase.y, aTip.x - aBase.x);
+        _restDX = aCX - aBase.x; _restDY = aCY - aBase.y;
+    }
+}
+
+}
@@ -325,21 +325,21 @@ public void createJoint(View aView)
 {
     // Get shapes interesting joint view
     PuppetSchema pschema = getPuppet().getSchema();
-    String name = aView.getName(), linkNames[] = pschema.getLinkNamesForJoint(name);
-    if(linkNames.length<2) {
+    String name = aView.getName(); int jid = pschema.getJointId(name);
+    if(jid<0 || pschema.getLinkPartCount(jid)<2) {
         System.out.println("PhysicsRunner.createJoint: 2 Bodies not found for joint: " + name); return; }
 
     // Get linked views
-    View viewA = getView(linkNames[0]);
-    View viewB = getView(linkNames[1]);
+    View viewA = getView(pschema.getPartName(pschema.getLinkPartId(jid, 0)));
+    View viewB = getView(pschema.getPartName(pschema.getLinkPartId(jid, 1)));
     
     // Create joint def and set body A/B
     RevoluteJointDef jointDef = new RevoluteJointDef();
     jointDef.bodyA = (Body)viewA.getPhysics().getNative();
     jointDef.bodyB = (Body)viewB.getPhysics().getNative();
     jointDef.collideConnected = false;
-    if(jointDef.bodyA==null || jointDef.bodyB==null)
-        System.out.println("Hey");
+    if(jointDef.bodyA==null || jointDef.bodyB==null) {
+        System.out.println("PhysicsRunner.createJoint: Bodies not created for joint: " + name); return; }
     
     // Set anchors
     Point jointPnt = aView.localToParent(aView.getWidth()/2, aView.getHeight()/2);
@@ -361,15 +361,15 @@ public void createMarker(View aView)
 {
     // Get shapes interesting joint view
     PuppetSchema pschema = getPuppet().getSchema();
-    String name = aView.getName(), linkNames[] = pschema.getLinkNamesForJoint(name);
-    if(linkNames.length<1)
+    String name = aView.getName(); int jid = pschema.getJointId(name);
+    if(jid<0 || pschema.getLinkPartCount(jid)<1)
         return;
 
     aView.getPhysics(true).setDynamic(true);
     createBody(aView);
     
     // Get linked views
-    View viewA = getView(linkNames[0]);
+    View viewA = getView(pschema.getPartName(pschema.getLinkPartId(jid, 0)));
     View viewB = aView;
     
     // Create joint def and set body A/B
@@ -397,7 +397,7 @@ public void setJointOrMarkerToViewXY(String aName, double aX, double aY)
 {
     // Get joint or marker link name(s)
     PuppetSchema pschema = getPuppet().getSchema();
-    String linkNames[] = pschema.getLinkNamesForJoint(aName); if(linkNames.length<1) return;
+    int jid = pschema.getJointId(aName); if(jid<0 || pschema.getLinkPartCount(jid)<1) return;
         
     // Get Joint view
     View jview = getView(aName);
@@ -406,7 +406,7 @@ public void setJointOrMarkerToViewXY(String aName, double aX, double aY)
     Vec2 jointVec = viewToWorld(jpnt.x, jpnt.y);
 
     // Get linked view, body and X/Y in body coords
-    View view = getView(linkNames[0]);
+    View view = getView(pschema.getPartName(pschema.getLinkPartId(jid, 0)));
     Body body = (Body)view.getPhysics().getNative();
     
     // Create MouseJoint and target X/Y
@@ -458,6 +458,22 @@ void clearMouseJoints()
     _poseMouseJoints.clear(); _poseMouseTime = 0;
 }
 
+/**
+ * Moves dynamic bodies to match current view locations and rotations (for when views are posed directly).
+ */
+public void syncBodiesToViews()
+{
+    // Iterate over children and reset body transform and velocity for each dynamic body
+    for(int i=0,iMax=_pupView.getChildCount();i<iMax;i++) { View view = _pupView.getChild(i);
+        ViewPhysics <Body> phys = view.getPhysics(); if(phys==null || !phys.isDynamic()) continue;
+        Object ntv = phys.getNative(); if(!(ntv instanceof Body)) continue;
+        Body body = (Body)ntv;
+        body.setTransform(viewToWorld(view.getMidX(), view.getMidY()), (float)Math.toRadians(-view.getRotate()));
+        body.setLinearVelocity(new Vec2(0,0));
+        body.setAngularVelocity(0);
+    }
+}
+
 /**
  * Adds DragFilter to view.
  */
@@ -509,19 +525,20 @@ void handleDrag(ViewEvent anEvent)
  */
 void setOuterJointLimitsEnabledForBodyName(String aName, boolean isEnabled)
 {
-    // Get outer joint names
+    // Get outer joint ids
     PuppetSchema schema = getPuppet().getSchema();
-    String jname = schema.getNextJointNameForName(aName);
-    String jnameNext = jname!=null? schema.getNextJointNameForName(jname) : null;
+    int partId = schema.getPartId(aName); if(partId<0) return;
+    int jid = schema.getNextJointIdForPartId(partId);
+    int jidNext = jid>=0? schema.getNextJointId(jid) : -1;
     
-    // Iterate over joint names and set limit enabled/disabled
-    while(jnameNext!=null) { View view = getView(jname);
+    // Iterate over joints and set limit enabled/disabled
+    while(jidNext>=0) { View view = getView(schema.getJointName(jid));
         ViewPhysics <Joint> phys = view.getPhysics();
         RevoluteJoint joint = (RevoluteJoint)phys.getNative();
         joint.enableLimit(isEnabled);
         if(isEnabled) joint.setLimits(joint.getJointAngle(), joint.getJointAngle());
         else joint.setLimits(0, 0);
-        jname = jnameNext; jnameNext = schema.getNextJointNameForName(jnameNext);
+        jid = jidNext; jidNext = schema.getNextJointId(jidNext);
     }
 }
 
@@ -0,0 +1,270 @@
+package puppets.puppet;
+import java.util.*;
+import snap.gfx.*;
+import snap.util.*;
+
+/**
+ * A class to hold animation frames trimmed to their opaque bounds and packed into a few large page images,
+ * with a frame table to draw each frame (page, rect in page, offset in frame and duration).
+ */
+public class SpriteAtlas {
+
+    // The page images
+    Image          _pages[];
+    
+    // The frames
+    Frame          _frames[];
+    
+    // The untrimmed frame size (in points)
+    double         _frameW, _frameH;
+    
+    // The total duration of frames (in millis)
+    int            _duration;
+
+/**
+ * Creates a SpriteAtlas.
+ */
+protected SpriteAtlas(Image thePages[], Frame theFrames[], double aFrameW, double aFrameH)
+{
+    _pages = thePages; _frames = theFrames; _frameW = aFrameW; _frameH = aFrameH;
+    for(Frame frame : theFrames) { frame._start = _duration; _duration += frame._duration; }
+}
+
+/**
+ * Returns the number of page images.
+ */
+public int getPageCount()  { return _pages.length; }
+
+/**
+ * Returns the page image at given index.
+ */
+public Image getPage(int anIndex)  { return _pages[anIndex]; }
+
+/**
+ * Returns the number of frames.
+ */
+public int getFrameCount()  { return _frames.length; }
+
+/**
+ * Returns the frame at given index.
+ */
+public Frame getFrame(int anIndex)  { return _frames[anIndex]; }
+
+/**
+ * Returns the untrimmed frame width (in points).
+ */
+public double getFrameWidth()  { return _frameW; }
+
+/**
+ * Returns the untrimmed frame height (in points).
+ */
+public double getFrameHeight()  { return _frameH; }
+
+/**
+ * Returns the total duration of frames (in millis).
+ */
+public int getDuration()  { return _duration; }
+
+/**
+ * Returns the index of frame showing at given time (in millis).
+ */
+public int getFrameIndexForTime(int aTime)
+{
+    // Binary search frame start times
+    int lo = 0, hi = _frames.length - 1;
+    while(lo<hi) { int mid = (lo + hi + 1)>>>1;
+        if(_frames[mid]._start<=aTime) lo = mid; else hi = mid - 1; }
+    return lo;
+}
+
+/**
+ * Draws frame at given index with untrimmed frame origin at given point.
+ */
+public void drawFrame(Painter aPntr, int anIndex, double aX, double aY)
+{
+    Frame frame = _frames[anIndex]; if(frame._w==0) return;
+    aPntr.drawImage(_pages[frame._page], frame._x, frame._y, frame._w, frame._h,
+        aX + frame._offX, aY + frame._offY, frame._w, frame._h);
+}
+
+/**
+ * Returns the number of bytes used by page images (as RGBA).
+ */
+public long getByteCount()
+{
+    long bytes = 0;
+    for(Image page : _pages) bytes += (long)page.getPixWidth()*page.getPixHeight()*4;
+    return bytes;
+}
+
+/**
+ * XML Archival of frame table.
+ */
+public XMLElement toXML(XMLArchiver anArchiver)
+{
+    // Get new element with frame size, page count and duration
+    XMLElement e = new XMLElement("SpriteAtlas");
+    e.add("FrameWidth", _frameW); e.add("FrameHeight", _frameH);
+    e.add("PageCount", _pages.length); e.add("Duration", _duration);
+    
+    // Iterate over frames and add each
+    for(Frame frame : _frames) {
+        XMLElement fxml = new XMLElement("Frame");
+        fxml.add("Page", frame._page);
+        fxml.add("X", frame._x); fxml.add("Y", frame._y); fxml.add("Width", frame._w); fxml.add("Height", frame._h);
+        fxml.add("OffsetX", frame._offX); fxml.add("OffsetY", frame._offY);
+        fxml.add("Duration", frame._duration);
+        e.add(fxml);
+    }
+    
+    // Return element
+    return e;
+}
+
+/**
+ * Standard toString implementation.
+ */
+public String toString()  { return "SpriteAtlas: frames=" + _frames.length + ", pages=" + _pages.length; }
+
+/**
+ * A class to describe a frame in atlas (all in points).
+ */
+public static class Frame {
+
+    // The page index
+    int       _page;
+    
+    // The rect of trimmed frame in page
+    double    _x, _y, _w, _h;
+    
+    // The offset of trimmed frame in untrimmed frame
+    double    _offX, _offY;
+    
+    // The duration and start time (in millis)
+    int       _duration, _start;
+    
+    /** Returns the page index. */
+    public int getPage()  { return _page; }
+    
+    /** Returns the X of trimmed frame in page. */
+    public double getX()  { return _x; }
+    
+    /** Returns the Y of trimmed frame in page. */
+    public double getY()  { return _y; }
+    
+    /** Returns the width of trimmed frame (zero if frame is empty). */
+    public double getWidth()  { return _w; }
+    
+    /** Returns the height of trimmed frame (zero if frame is empty). */
+    public double getHeight()  { return _h; }
+    
+    /** Returns the X offset of trimmed frame in untrimmed frame. */
+    public double getOffsetX()  { return _offX; }
+    
+    /** Returns the Y offset of trimmed frame in untrimmed frame. */
+    public double getOffsetY()  { return _offY; }
+    
+    /** Returns the duration (in millis). */
+    public int getDuration()  { return _duration; }
+    
+    /** Returns the start time (in millis). */
+    public int getStartTime()  { return _start; }
+}
+
+/**
+ * A class to build a SpriteAtlas by adding frames (trimmed as added, so frame images can be discarded).
+ */
+public static class Builder {
+
+    // The trimmed frame images (null for empty frames) and frames
+    List <Image>  _images = new ArrayList();
+    List <Frame>  _frames = new ArrayList();
+    
+    // The untrimmed frame size (in points) and DPI scale
+    double        _frameW, _frameH, _scale = 1;
+    
+    // The max page size (in pixels)
+    int           _maxPageSize = 2048;
+    
+    // The padding between frames in page (in pixels)
+    static final int PAD = 1;
+    
+    /** Returns the max page size (in pixels). */
+    public int getMaxPageSize()  { return _maxPageSize; }
+    
+    /** Sets the max page size (in pixels). */
+    public void setMaxPageSize(int aSize)  { _maxPageSize = aSize; }
+    
+    /**
+     * Adds a frame image with given duration (trims to opaque bounds and keeps only trimmed copy).
+     */
+    public void addFrame(Image anImage, int aDuration)
+    {
+        // Get frame size and scale from first frame
+        if(_frames.size()==0) {
+            _frameW = anImage.getWidth(); _frameH = anImage.getHeight(); _scale = anImage.getDPIScale(); }
+    
+        // Get opaque bounds in pixels
+        int pw = anImage.getPixWidth(), ph = anImage.getPixHeight();
+        byte rgba[] = anImage.getBytesRGBA();
+        int x0 = pw, y0 = ph, x1 = -1, y1 = -1;
+        for(int y=0;y<ph;y++) { int row = y*pw*4;
+            for(int x=0;x<pw;x++) if(rgba[row + x*4 + 3]!=0) {
+                if(x<x0) x0 = x; if(x>x1) x1 = x; if(y<y0) y0 = y; y1 = y; } }
+    
+        // Create frame (just add empty frame if no opaque pixels)
+        Frame frame = new Frame(); frame._duration = aDuration;
+        _frames.add(frame);
+        if(x1<0) { _images.add(null); return; }
+    
+        // Set trimmed size and offset in points and add trimmed copy of image
+        double s = _scale;
+        frame._offX = x0/s; frame._offY = y0/s; frame._w = (x1 - x0 + 1)/s; frame._h = (y1 - y0 + 1)/s;
+        _images.add(anImage.getSubimage(frame._offX, frame._offY, frame._w, frame._h));
+    }
+    
+    /**
+     * Packs trimmed frames into pages (tallest first, in shelves) and returns atlas.
+     */
+    public SpriteAtlas build()
+    {
+        // Get indexes of non-empty frames sorted by height (tallest first) and total area
+        int count = _frames.size(); double s = _scale;
+        List <Integer> order = new ArrayList(count); long area = 0; int maxW = 1;
+        for(int i=0;i<count;i++) { Frame f = _frames.get(i); if(f._w==0) continue;
+            int w = (int)Math.round(f._w*s) + PAD, h = (int)Math.round(f._h*s) + PAD;
+            order.add(i); area += (long)w*h; maxW = Math.max(maxW, w); }
+        order.sort((a,b) -> Double.compare(_frames.get(b)._h, _frames.get(a)._h));
+    
+        // Get page width: square root of area (but at least widest frame and no more than max page size)
+        int pageW = Math.min(Math.max((int)Math.ceil(Math.sqrt(area*1.1)), maxW), Math.max(_maxPageSize, maxW));
+    
+        // Place frames in shelves, starting new page when shelf doesn't fit
+        List <int[]> pageSizes = new ArrayList(); int page = 0, x = 0, y = 0, shelfH = 0, usedW = 0;
+        for(int ind : order) { Frame f = _frames.get(ind);
+            int w = (int)Math.round(f._w*s) + PAD, h = (int)Math.round(f._h*s) + PAD;
+            if(x + w>pageW) { x = 0; y += shelfH; shelfH = 0; }
+            if(y + h>_maxPageSize && y>0) {
+                pageSizes.add(new int[] { usedW, y + shelfH }); page++; x = y = shelfH = usedW = 0; }
+            f._page = page; f._x = x/s; f._y = y/s;
+            x += w; shelfH = Math.max(shelfH, h); usedW = Math.max(usedW, x);
+        }
+        if(order.size()>0) pageSizes.add(new int[] { usedW, y + shelfH });
+    
+        // Create pages and draw trimmed frames
+        Image pages[] = new Image[pageSizes.size()];
+        Painter pntrs[] = new Painter[pages.length];
+        for(int i=0;i<pages.length;i++) { int size[] = pageSizes.get(i);
+            pages[i] = Image.getImageForSizeAndScale(size[0]/s, size[1]/s, true, s);
+            pntrs[i] = pages[i].getPainter(); }
+        for(int ind : order) { Frame f = _frames.get(ind);
+            pntrs[f._page].drawImage(_images.get(ind), f._x, f._y, f._w, f._h); }
+    
+        // Create atlas, clear trimmed images and return
+        SpriteAtlas atlas = new SpriteAtlas(pages, _frames.toArray(new Frame[count]), _frameW, _frameH);
+        _images.clear();
+        return atlas;
+    }
+}
+
+}
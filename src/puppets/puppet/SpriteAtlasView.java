@@ -0,0 +1,161 @@
+package puppets.puppet;
+import snap.geom.Insets;
+import snap.gfx.*;
+import snap.view.*;
+
+/**
+ * A View to play the frames of a SpriteAtlas.
+ */
+public class SpriteAtlasView extends View {
+
+    // The atlas
+    SpriteAtlas     _atlas;
+    
+    // The current frame index
+    int             _frame;
+    
+    // Whether to draw frames flipped horizontally
+    boolean         _flipX;
+    
+    // Whether playback loops
+    boolean         _loops;
+    
+    // The timer for playback
+    ViewTimer       _timer;
+    
+    // Constants for properties
+    public static final String Frame_Prop = "Frame";
+    
+    // Constants
+    static int   FRAME_DELAY_MILLIS = 20;
+
+/**
+ * Creates a SpriteAtlasView.
+ */
+public SpriteAtlasView()  { }
+
+/**
+ * Creates a SpriteAtlasView for given atlas.
+ */
+public SpriteAtlasView(SpriteAtlas anAtlas)  { setAtlas(anAtlas); }
+
+/**
+ * Returns the atlas.
+ */
+public SpriteAtlas getAtlas()  { return _atlas; }
+
+/**
+ * Sets the atlas.
+ */
+public void setAtlas(SpriteAtlas anAtlas)
+{
+    stop(); _atlas = anAtlas; _frame = 0;
+    relayoutParent(); repaint();
+}
+
+/**
+ * Returns the current frame index.
+ */
+public int getFrame()  { return _frame; }
+
+/**
+ * Sets the current frame index.
+ */
+public void setFrame(int anIndex)
+{
+    // If already set, just return
+    if(anIndex==_frame) return;
+    
+    // Cache old, set new, fire prop change and repaint
+    int oldVal = _frame; _frame = anIndex;
+    firePropChange(Frame_Prop, oldVal, _frame);
+    repaint();
+}
+
+/**
+ * Returns whether to draw frames flipped horizontally.
+ */
+public boolean isFlipX()  { return _flipX; }
+
+/**
+ * Sets whether to draw frames flipped horizontally.
+ */
+public void setFlipX(boolean aValue)  { _flipX = aValue; repaint(); }
+
+/**
+ * Returns whether frames are playing.
+ */
+public boolean isPlaying()  { return _timer!=null; }
+
+/**
+ * Starts playing frames from start with option to loop.
+ */
+public void play(boolean doLoop)
+{
+    // Stop current playback (just return if no atlas)
+    stop(); if(_atlas==null || _atlas.getFrameCount()==0) return;
+    
+    // Create timer and start
+    _loops = doLoop; setFrame(0);
+    _timer = new ViewTimer(FRAME_DELAY_MILLIS, t -> timerFired());
+    _timer.start();
+}
+
+/**
+ * Stops playing frames.
+ */
+public void stop()
+{
+    if(_timer!=null) _timer.stop();
+    _timer = null;
+}
+
+/**
+ * Called when timer fires.
+ */
+void timerFired()
+{
+    // Get timer time (adjust if looping) and set frame for time
+    int time = _timer.getTime(), dur = _atlas.getDuration();
+    if(_loops && dur>0) time = time%dur;
+    setFrame(_atlas.getFrameIndexForTime(time));
+    
+    // If beyond duration, stop
+    if(!_loops && time>=dur) stop();
+}
+
+/**
+ * Returns preferred width.
+ */
+protected double getPrefWidthImpl(double aH)
+{
+    Insets ins = getInsetsAll();
+    return ins.left + (_atlas!=null? _atlas.getFrameWidth() : 0) + ins.right;
+}
+
+/**
+ * Returns preferred height.
+ */
+protected double getPrefHeightImpl(double aW)
+{
+    Insets ins = getInsetsAll();
+    return ins.top + (_atlas!=null? _atlas.getFrameHeight() : 0) + ins.bottom;
+}
+
+/**
+ * Paints current frame.
+ */
+protected void paintFront(Painter aPntr)
+{
+    // If no frame, just return
+    if(_atlas==null || _frame>=_atlas.getFrameCount()) return;
+    
+    // Get frame origin (centered in view) and draw frame (flipped if needed)
+    double fw = _atlas.getFrameWidth(), fh = _atlas.getFrameHeight();
+    double x = Math.round((getWidth() - fw)/2), y = Math.round((getHeight() - fh)/2);
+    if(_flipX) { aPntr.save(); aPntr.translate(x + fw, y); aPntr.scale(-1, 1); x = y = 0; }
+    _atlas.drawFrame(aPntr, _frame, x, y);
+    if(_flipX) aPntr.restore();
+}
+
+}
@@ -0,0 +1,144 @@
+package puppets.puppet;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import snap.util.XMLElement;
+import snap.web.WebURL;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for ActionJournal file (.journal) replay and compaction.
+ */
+public class ActionJournalTest {
+
+/**
+ * Tests that journal records are replayed onto actions read from actions XML file.
+ */
+public static void testReplay() throws IOException
+{
+    // Write actions and journal edits
+    String path = getActionsPath();
+    ActionJournal journal = new ActionJournal(path, 0);
+    appendEdits(journal);
+    
+    // Replay all records onto actions from file with new journal
+    List <PuppetAction> actions = getActions(path);
+    ActionJournal journal2 = new ActionJournal(path, 0);
+    journal2.replay(actions, 0);
+    assertEquals(Arrays.asList("Run", "Jump"), getNames(actions), "Actions after replay");
+    assertEquals(3, journal2.getSeq(), "Sequence number after replay");
+    
+    // Replay only records newer than sequence number 2
+    List <PuppetAction> actions2 = getActions(path);
+    new ActionJournal(path, 0).replay(actions2, 2);
+    assertEquals(Arrays.asList("Walk"), getNames(actions2), "Actions after partial replay");
+}
+
+/**
+ * Tests that compaction folds journal records into actions XML file and library and that records are only folded
+ * in once (even if compaction is interrupted after journal is moved to fold file).
+ */
+public static void testCompact() throws IOException
+{
+    // Write actions and journal edits, then compact
+    String path = getActionsPath();
+    ActionJournal journal = new ActionJournal(path, 0);
+    appendEdits(journal);
+    journal.compact();
+    
+    // Check actions XML file, library and journal files
+    assertEquals(Arrays.asList("Run", "Jump"), getNames(getActions(path)), "Actions after compact");
+    assertEquals(3, getSeq(path), "Actions file sequence number");
+    PuppetActionLibrary lib = PuppetActionLibrary.getLibrary(path);
+    assertTrue(lib!=null && lib.getSeq()==3 && lib.getActionCount()==2, "Library not written: " + lib);
+    lib.close();
+    assertTrue(journal._file.length()==0 && !journal._foldFile.exists(), "Journal not cleared");
+    
+    // Check nothing is replayed for actions file sequence number
+    List <PuppetAction> actions = getActions(path);
+    new ActionJournal(path, 3).replay(actions, 3);
+    assertEquals(Arrays.asList("Run", "Jump"), getNames(actions), "Actions after replay of compacted journal");
+    
+    // Append record, then fold it in with copy of fold file left behind (like interrupted compaction)
+    journal.append(ActionJournal.ADD, 2, new PuppetAction("Wave"));
+    File copy = new File(journal._file.getPath() + ".copy");
+    Files.copy(journal._file.toPath(), copy.toPath());
+    journal.compact();
+    Files.move(copy.toPath(), journal._foldFile.toPath());
+    new ActionJournal(path, 4).compact();
+    assertEquals(Arrays.asList("Run", "Jump", "Wave"), getNames(getActions(path)), "Actions after repeat compact");
+    assertEquals(4, getSeq(path), "Actions file sequence number after repeat compact");
+    assertTrue(!journal._foldFile.exists(), "Fold file not deleted");
+}
+
+/**
+ * Tests that a record truncated by a crash during write is ignored.
+ */
+public static void testTruncated() throws IOException
+{
+    // Write journal edits and append partial record
+    String path = getActionsPath();
+    ActionJournal journal = new ActionJournal(path, 0);
+    appendEdits(journal);
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journal._file, true))) {
+        out.writeInt(4); out.writeByte(ActionJournal.ADD); out.writeInt(0); out.writeInt(1000); out.write(1); }
+    
+    // Check complete records are read and replayed
+    assertEquals(3, ActionJournal.readRecords(journal._file).size(), "Record count");
+    List <PuppetAction> actions = getActions(path);
+    new ActionJournal(path, 0).replay(actions, 0);
+    assertEquals(Arrays.asList("Run", "Jump"), getNames(actions), "Actions after replay");
+}
+
+/**
+ * Writes Walk and Wave actions to actions XML file in new temp dir and returns path (compaction is delayed, so
+ * tests fold journals explicitly).
+ */
+static String getActionsPath() throws IOException
+{
+    ActionJournal.setCompactDelay(60000);
+    String path = new File(getTempDir(), "Actions.xml").getPath();
+    ActionJournal.writeActions(path, Arrays.asList(new PuppetAction("Walk"), new PuppetAction("Wave")), 0);
+    return path;
+}
+
+/**
+ * Appends records to add Jump, set Walk to Run and remove Wave (Walk, Wave -> Run, Jump).
+ */
+static void appendEdits(ActionJournal aJournal)
+{
+    aJournal.append(ActionJournal.ADD, 2, new PuppetAction("Jump"));
+    aJournal.append(ActionJournal.SET, 0, new PuppetAction("Run"));
+    aJournal.append(ActionJournal.REMOVE, 1, null);
+}
+
+/**
+ * Returns the actions read from given actions XML file.
+ */
+static List <PuppetAction> getActions(String aPath)
+{
+    List <PuppetAction> actions = new ArrayList();
+    for(XMLElement actionXML : XMLElement.getElement(WebURL.getURL(aPath)).getElements())
+        actions.add(new PuppetAction().fromXML(null, actionXML));
+    return actions;
+}
+
+/**
+ * Returns the sequence number of given actions XML file.
+ */
+static int getSeq(String aPath)
+{
+    return XMLElement.getElement(WebURL.getURL(aPath)).getAttributeIntValue("Seq", 0);
+}
+
+/**
+ * Returns the names of given actions.
+ */
+static List <String> getNames(List <PuppetAction> theActions)
+{
+    List <String> names = new ArrayList();
+    for(PuppetAction action : theActions) names.add(action.getName());
+    return names;
+}
+
+}
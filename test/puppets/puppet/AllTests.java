@@ -0,0 +1,51 @@
+package puppets.puppet;
+
+/**
+ * Runs all puppet tests (exits with non-zero status if any fail).
+ */
+public class AllTests {
+
+/**
+ * Main method.
+ */
+public static void main(String args[])
+{
+    // Run tests
+    PuppetTests.run("PuppetFitCache round trip", PuppetFitCacheTest::testRoundTrip);
+    PuppetTests.run("PuppetFitCache truncated file", PuppetFitCacheTest::testTruncated);
+    PuppetTests.run("PuppetFitCache fit later", PuppetFitCacheTest::testFitLater);
+    PuppetTests.run("PuppetFrameCache round trip", PuppetFrameCacheTest::testRoundTrip);
+    PuppetTests.run("PuppetFrameCache repeated frames", PuppetFrameCacheTest::testRepeats);
+    PuppetTests.run("PuppetFrameCache bad file", PuppetFrameCacheTest::testBadFile);
+    PuppetTests.run("PuppetFrameCache key for reference", PuppetFrameCacheTest::testKeyForReference);
+    PuppetTests.run("PuppetAction timeline", PuppetActionTest::testTimeline);
+    PuppetTests.run("PackedPose blend", PackedPoseTest::testBlendPose);
+    PuppetTests.run("PuppetViewKinematics matches physics", PuppetViewKinematicsTest::testKinematicsMatchesPhysics);
+    PuppetTests.run("SpriteAtlas packing", SpriteAtlasTest::testPacking);
+    PuppetTests.run("PuppetFramePlan repeats", PuppetFramePlanTest::testRepeats);
+    PuppetTests.run("PuppetFramePlan adaptive", PuppetFramePlanTest::testAdaptive);
+    PuppetTests.run("PuppetFrameStream buffer", PuppetFrameStreamTest::testBuffer);
+    PuppetTests.run("PuppetImager ImageSet", PuppetImagerTest::testImageSet);
+    PuppetTests.run("ORAArchive round trip", ORAArchiveTest::testRoundTrip);
+    PuppetTests.run("ORAArchive bad file", ORAArchiveTest::testBadFile);
+    PuppetTests.run("ORAReader tiled composite", ORAReaderTest::testTiledComposite);
+    PuppetTests.run("ORAReader composite cap", ORAReaderTest::testCompositeCap);
+    PuppetTests.run("PuppetBinary round trip", PuppetBinaryTest::testRoundTrip);
+    PuppetTests.run("PuppetBinary stale image", PuppetBinaryTest::testStaleImage);
+    PuppetTests.run("PuppetBinary truncated file", PuppetBinaryTest::testTruncated);
+    PuppetTests.run("PuppetActionLibrary round trip", PuppetActionLibraryTest::testRoundTrip);
+    PuppetTests.run("PuppetActionLibrary release on write", PuppetActionLibraryTest::testRelease);
+    PuppetTests.run("ActionJournal replay", ActionJournalTest::testReplay);
+    PuppetTests.run("ActionJournal compaction", ActionJournalTest::testCompact);
+    PuppetTests.run("ActionJournal truncated record", ActionJournalTest::testTruncated);
+    PuppetTests.run("PuppetManifest round trip", PuppetManifestTest::testRoundTrip);
+    PuppetTests.run("PuppetManifest bad lines", PuppetManifestTest::testBadLines);
+    PuppetTests.run("PuppetCache eviction", PuppetCacheTest::testEviction);
+    
+    // Delete temp files and report
+    PuppetTests.deleteTempDirs();
+    System.out.println(PuppetTests._runCount + " tests, " + PuppetTests.getFailCount() + " failed");
+    System.exit(PuppetTests.getFailCount()>0? 1 : 0);
+}
+
+}
@@ -0,0 +1,55 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for ORAArchive.
+ */
+public class ORAArchiveTest {
+
+/**
+ * Tests that stored and deflated entries of a zip file are read back with same names and bytes.
+ */
+public static void testRoundTrip() throws IOException
+{
+    // Get entry bytes (mimetype stored, like ORA files, and others deflated)
+    byte mimetype[] = "image/openraster".getBytes("UTF-8");
+    byte stack[] = "<image><stack><layer src=\"data/Torso.png\"/></stack></image>".getBytes("UTF-8");
+    byte data[] = new byte[100000]; new Random(1).nextBytes(data);
+    for(int i=0;i<data.length;i+=3) data[i] = 0;
+    
+    // Write zip file
+    File file = new File(getTempDir(), "Test.ora");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+        ZipEntry entry = new ZipEntry("mimetype"); entry.setMethod(ZipEntry.STORED);
+        entry.setSize(mimetype.length); CRC32 crc = new CRC32(); crc.update(mimetype); entry.setCrc(crc.getValue());
+        out.putNextEntry(entry); out.write(mimetype); out.closeEntry();
+        out.putNextEntry(new ZipEntry("stack.xml")); out.write(stack); out.closeEntry();
+        out.putNextEntry(new ZipEntry("data/Torso.png")); out.write(data); out.closeEntry();
+        out.setComment("Test archive");
+    }
+    
+    // Read archive and compare
+    ORAArchive archive = new ORAArchive(file);
+    assertEquals(Arrays.asList("mimetype", "stack.xml", "data/Torso.png"), new ArrayList(archive.getEntryNames()),
+        "Entry names");
+    assertBytes(mimetype, archive.getBytes("mimetype"), "Stored entry");
+    assertBytes(stack, archive.getBytes("stack.xml"), "Deflated entry");
+    assertBytes(data, archive.getBytes("data/Torso.png"), "Large deflated entry");
+    assertTrue(!archive.hasEntry("data/Head.png") && archive.getBytes("data/Head.png")==null, "Missing entry found");
+}
+
+/**
+ * Tests that a file that isn't a zip file is rejected.
+ */
+public static void testBadFile() throws IOException
+{
+    File file = new File(getTempDir(), "Bad.ora");
+    try (OutputStream out = new FileOutputStream(file)) { out.write(new byte[100]); }
+    try { new ORAArchive(file); throw new AssertionError("Bad file opened"); }
+    catch(ZipException e) { }
+}
+
+}
@@ -0,0 +1,69 @@
+package puppets.puppet;
+import snap.gfx.*;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for ORAReader stacks.
+ */
+public class ORAReaderTest {
+
+/**
+ * Tests that a downsampled stack composite (drawn in tiles) has scaled pixel size and layers in place and order.
+ */
+public static void testTiledComposite()
+{
+    // Create stack with large red layer and blue layer in front, spanning several tiles
+    ORAReader.Stack stack = new ORAReader.Stack("Body");
+    stack.entries.add(getLayer("Front", Color.BLUE, 900, 400, 300, 300));
+    stack.entries.add(getLayer("Back", Color.RED, 100, 50, 1200, 700));
+    stack.setScale(.25);
+    
+    // Get composite and check pixel size and colors (blue layer in front of red one, on both sides of tile edge)
+    Image img = stack.getImage();
+    assertTrue(img!=null, "No composite image");
+    assertEquals(300, img.getPixWidth(), "Composite pixel width");
+    assertEquals(175, img.getPixHeight(), "Composite pixel height");
+    assertColor(img, 50, 50, 0xffff0000, "Back layer");
+    assertColor(img, 237, 125, 0xff0000ff, "Front layer");
+    assertColor(img, 255, 125, 0xff0000ff, "Front layer at tile edge");
+    assertColor(img, 256, 125, 0xff0000ff, "Front layer at tile edge");
+}
+
+/**
+ * Tests that composite size cap applies to composite pixel size (not size in points).
+ */
+public static void testCompositeCap()
+{
+    // Create stack wider than cap in points: not composited at full scale, but composited at half scale
+    ORAReader.Stack stack = new ORAReader.Stack("Body");
+    stack.entries.add(getLayer("Wide", Color.RED, 0, 0, 6000, 10));
+    assertTrue(stack.getImage()==null, "Composite created over max pixel size");
+    stack.setScale(.5);
+    Image img = stack.getImage();
+    assertTrue(img!=null, "Composite not created under max pixel size");
+    assertEquals(3000, img.getPixWidth(), "Composite pixel width");
+}
+
+/**
+ * Returns a visible layer with a solid image of given color and bounds.
+ */
+static ORAReader.Layer getLayer(String aName, Color aColor, double aX, double aY, double aW, double aH)
+{
+    ORAReader.Layer layer = new ORAReader.Layer(aName, null, true, aX, aY);
+    Image img = Image.getImageForSizeAndScale(aW, aH, true, 1);
+    Painter pntr = img.getPainter(); pntr.setColor(aColor); pntr.fillRect(0, 0, aW, aH);
+    layer._img = img;
+    return layer;
+}
+
+/**
+ * Throws if pixel at given location isn't given ARGB color.
+ */
+static void assertColor(Image anImage, int aX, int aY, int anARGB, String aMsg)
+{
+    byte bytes[] = anImage.getBytesRGBA(); int i = (aY*anImage.getPixWidth() + aX)*4;
+    int argb = (bytes[i+3]&0xff)<<24 | (bytes[i]&0xff)<<16 | (bytes[i+1]&0xff)<<8 | bytes[i+2]&0xff;
+    assertEquals(Integer.toHexString(anARGB), Integer.toHexString(argb), aMsg + " color at " + aX + "," + aY);
+}
+
+}
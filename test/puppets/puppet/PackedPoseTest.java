@@ -0,0 +1,86 @@
+package puppets.puppet;
+import java.util.*;
+import snap.geom.Point;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PackedPose.
+ */
+public class PackedPoseTest {
+
+/**
+ * Tests that packed pose blends match blending pose marker maps joint by joint (also when bone angles wrap around).
+ */
+public static void testBlendPose()
+{
+    // Get test poses, plus two poses with right upper arm pointing nearly left from above and below (angle wraps)
+    Puppet puppet = TestPuppets.getPuppet("Test", 1);
+    PuppetAction action = TestPuppets.getAction("Wave", 4);
+    PuppetPose pose0 = action.getMove(0).getPose(), pose1 = action.getMove(1).getPose();
+    PuppetPose pose2 = pose0.clone(); pose2.setAngle(PuppetSchema.RArm_Joint, PuppetSchema.RArmMid_Joint, Math.PI*.99);
+    PuppetPose pose3 = pose0.clone(); pose3.setAngle(PuppetSchema.RArm_Joint, PuppetSchema.RArmMid_Joint, -Math.PI*.99);
+    PuppetPose poses[][] = { { pose0, pose1 }, { pose1, action.getMove(3).getPose() }, { pose2, pose3 } };
+    
+    // Iterate over pose pairs and ratios and check packed blends against map blend
+    PuppetPose blendPose = new PuppetPose();
+    for(PuppetPose pair[] : poses) {
+        for(double ratio : new double[] { 0, .25, .5, .9, 1 }) {
+            PuppetPose mapBlend = getBlendPoseByMap(puppet, pair[0], pair[1], ratio);
+            assertPose(mapBlend, pair[0].getBlendPose(puppet, pair[1], ratio), "getBlendPose " + ratio);
+            PackedPose packed = new PackedPose(); packed.setBlendPose(pair[0].getPacked(), pair[1].getPacked(), ratio);
+            assertPose(mapBlend, packed.toPose(), "PackedPose.setBlendPose " + ratio);
+            blendPose.setBlendPose(pair[0], pair[1], ratio);
+            assertPose(mapBlend, blendPose, "PuppetPose.setBlendPose " + ratio);
+        }
+    }
+}
+
+/**
+ * Returns a blend of given poses by walking marker maps from root joints (interpolates root joints and rotates
+ * outer joints).
+ */
+static PuppetPose getBlendPoseByMap(Puppet aPuppet, PuppetPose aPose0, PuppetPose aPose1, double aRatio)
+{
+    // Copy first pose markers
+    Map <String,Point> markers = new LinkedHashMap();
+    for(String key : aPose0.getMarkers().keySet()) markers.put(key, aPose0.getMarkerPoint(key));
+    
+    // Iterate over root joint names and blend root joint marker
+    PuppetSchema schema = aPuppet.getSchema();
+    for(String name : schema.getRootJointNames()) {
+        Point p0 = aPose0.getMarkerPoint(name), p1 = aPose1.getMarkerPoint(name);
+        markers.put(name, new Point(p0.x + (p1.x - p0.x)*aRatio, p0.y + (p1.y - p0.y)*aRatio));
+        
+        // Iterate over outer joints and rotate end of bone from blended start point
+        for(String j0 = name, j1 = schema.getNextJointNameForName(name); j1!=null;
+            j0 = j1, j1 = schema.getNextJointNameForName(j1)) {
+            Point p2 = aPose0.getMarkerPoint(j1), p3 = aPose1.getMarkerPoint(j1);
+            if(p2.equals(p3)) continue;
+            Point s0 = aPose0.getMarkerPoint(j0), s1 = aPose1.getMarkerPoint(j0);
+            double ang0 = Math.atan2(p2.y - s0.y, p2.x - s0.x), ang1 = Math.atan2(p3.y - s1.y, p3.x - s1.x);
+            double dang = ang1 - ang0;
+            if(Math.abs(dang)>Math.PI) dang = Math.copySign(2*Math.PI - Math.abs(dang), -dang);
+            double ang2 = ang0 + dang*aRatio, dist = s1.getDistance(p3) + .2;
+            Point start = markers.get(j0);
+            markers.put(j1, new Point(start.x + Math.cos(ang2)*dist, start.y + Math.sin(ang2)*dist));
+        }
+    }
+    
+    // Return pose
+    return new PuppetPose("Blend", markers);
+}
+
+/**
+ * Checks that given pose has same pose key points as expected pose.
+ */
+static void assertPose(PuppetPose aPose, PuppetPose aPose2, String aMsg)
+{
+    PuppetSchema schema = PackedPose._schema;
+    for(int i=0, iMax=schema.getPoseKeyCount(); i<iMax; i++) { String pkey = schema.getPoseKey(i);
+        Point p0 = aPose.getMarkerPoint(pkey), p1 = aPose2.getMarkerPoint(pkey);
+        assertTrue(p0!=null && p1!=null, aMsg + " pose " + pkey + " missing");
+        assertTrue(p0.getDistance(p1)<1e-9, aMsg + " pose " + pkey + " off by " + p0.getDistance(p1));
+    }
+}
+
+}
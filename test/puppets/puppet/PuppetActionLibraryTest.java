@@ -0,0 +1,100 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import snap.geom.Point;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetActionLibrary file (.acts).
+ */
+public class PuppetActionLibraryTest {
+
+/**
+ * Tests that actions written to library are read back with same names, poses and moves.
+ */
+public static void testRoundTrip() throws IOException
+{
+    // Write actions to library for actions XML path in temp dir
+    String path = new File(getTempDir(), "Actions.xml").getPath();
+    List <PuppetAction> actions = getActions();
+    PuppetActionLibrary.write(path, actions, 7);
+    
+    // Open library and check index
+    PuppetActionLibrary lib = new PuppetActionLibrary(PuppetActionLibrary.getLibraryFile(path));
+    assertEquals(7, lib.getSeq(), "Sequence number");
+    assertEquals(actions.size(), lib.getActionCount(), "Action count");
+    assertEquals("Wave", lib.getActionName(1), "Action name");
+    assertEquals(1, lib.getActionIndex("wave"), "Action index for lower case name");
+    assertEquals(-1, lib.getActionIndex("Jump"), "Action index for missing name");
+    
+    // Decode each action and compare
+    for(int i=0;i<actions.size();i++)
+        assertEquals(getString(actions.get(i)), getString(lib.getAction(i)), "Action " + i);
+    
+    // Close and check actions can't be decoded
+    lib.close();
+    assertTrue(lib.isClosed(), "Library not closed");
+    try { lib.getAction(0); throw new AssertionError("Action decoded after close"); }
+    catch(IllegalStateException e) { }
+}
+
+/**
+ * Tests that open libraries are released (with release handler) before library file is replaced.
+ */
+public static void testRelease() throws IOException
+{
+    // Write library, open it and set release handler
+    String path = new File(getTempDir(), "Actions.xml").getPath();
+    List <PuppetAction> actions = getActions();
+    PuppetActionLibrary.write(path, actions, 1);
+    PuppetActionLibrary lib = PuppetActionLibrary.getLibrary(path);
+    assertTrue(lib!=null, "Library not opened");
+    boolean released[] = new boolean[1];
+    lib.setReleaseHandler(() -> released[0] = true);
+    
+    // Write library again with fewer actions and check old library was released and new one has new actions
+    PuppetActionLibrary.write(path, actions.subList(0, 1), 2);
+    assertTrue(released[0] && lib.isClosed(), "Library not released");
+    PuppetActionLibrary lib2 = PuppetActionLibrary.getLibrary(path);
+    assertTrue(lib2!=null && lib2.getSeq()==2 && lib2.getActionCount()==1, "Library not replaced");
+    lib2.close();
+}
+
+/**
+ * Returns test actions.
+ */
+static List <PuppetAction> getActions()
+{
+    // Create walk action with two poses and moves
+    PuppetAction walk = new PuppetAction("Walk");
+    PuppetPose pose0 = new PuppetPose("Walk1"), pose1 = new PuppetPose("Walk2");
+    pose0.setMarkerPoint(PuppetSchema.Head_Joint, new Point(1.5, 2.5));
+    pose0.setMarkerPoint(PuppetSchema.Anchor_Joint, new Point(-3, 4));
+    pose1.setMarkerPoint(PuppetSchema.Head_Joint, new Point(1.75, 2.25));
+    walk.addPose(pose0); walk.addPose(pose1);
+    walk.addMoveForPoseAndTime(pose0, 500); walk.addMoveForPoseAndTime(pose1, 250);
+    walk.addMoveForPoseAndTime(pose0, 0);
+    
+    // Create wave action with one pose and move
+    PuppetAction wave = new PuppetAction("Wave");
+    PuppetPose pose2 = new PuppetPose("Wave1");
+    pose2.setMarkerPoint(PuppetSchema.Head_Joint, new Point(10, 20));
+    wave.addPose(pose2); wave.addMoveForPoseAndTime(pose2, 1000);
+    return new ArrayList(Arrays.asList(walk, wave));
+}
+
+/**
+ * Returns a string with action name, poses (with marker points) and moves (with pose name and time).
+ */
+static String getString(PuppetAction anAction)
+{
+    StringBuilder sb = new StringBuilder(anAction.getName());
+    for(PuppetPose pose : anAction.getPoses()) { sb.append(" pose ").append(pose.getName());
+        for(Map.Entry <String,Point> entry : pose.getMarkers().entrySet()) { Point pnt = entry.getValue();
+            sb.append(' ').append(entry.getKey()).append('=').append(pnt.x).append(',').append(pnt.y); } }
+    for(PuppetMove move : anAction.getMoves())
+        sb.append(" move ").append(move.getPoseName()).append('@').append(move.getTime());
+    return sb.toString();
+}
+
+}
@@ -0,0 +1,56 @@
+package puppets.puppet;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetAction.
+ */
+public class PuppetActionTest {
+
+/**
+ * Tests that timeline binary search lookups match a linear walk over moves for all times, also after moves change.
+ */
+public static void testTimeline()
+{
+    // Check empty action
+    PuppetAction action = new PuppetAction("Test");
+    assertTimeline(action, "Empty");
+    
+    // Add moves with uneven times (including zero time moves) and check
+    int times[] = { 250, 0, 100, 1, 500, 0, 0, 333, 250 };
+    for(int time : times) action.addMove(new PuppetMove(new PuppetPose("Pose"), time));
+    assertTimeline(action, "Added");
+    
+    // Retime, remove and add moves and check timeline is updated
+    action.getMove(2).setTime(75);
+    assertTimeline(action, "Retimed");
+    action.removeMove(4);
+    assertTimeline(action, "Removed");
+    action.addMove(new PuppetMove(new PuppetPose("Pose"), 40));
+    assertTimeline(action, "Added again");
+}
+
+/**
+ * Checks timeline max time, move start times and move index for every time against linear walk over moves.
+ */
+static void assertTimeline(PuppetAction anAction, String aMsg)
+{
+    // Check max time
+    int count = anAction.getMoveCount(), maxTime = 0;
+    for(int i=0;i<count-1;i++) maxTime += anAction.getMove(i).getTime();
+    assertEquals(maxTime, anAction.getMaxTime(), aMsg + " max time");
+    
+    // Check move start times
+    for(int i=0, start=0;i<count;i++) {
+        assertEquals(start, anAction.getMoveStartTime(i), aMsg + " start time of move " + i);
+        start += anAction.getMove(i).getTime(); }
+    
+    // Check move index for every time (before start to beyond end)
+    for(int t=-10, tMax=maxTime+300;t<=tMax;t++) {
+        int index = count - 1;
+        for(int i=0, time=0;i<count;i++) { time += anAction.getMove(i).getTime();
+            if(t<time) { index = i; break; } }
+        assertEquals(index, anAction.getMoveIndexAtTime(t), aMsg + " move index at time " + t);
+    }
+}
+
+}
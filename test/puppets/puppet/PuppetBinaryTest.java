@@ -0,0 +1,105 @@
+package puppets.puppet;
+import java.io.*;
+import snap.gfx.*;
+import snap.util.SnapUtils;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetBinary file (.pupb).
+ */
+public class PuppetBinaryTest {
+
+/**
+ * Tests that a puppet written to binary file is read back with same parts, images and joints.
+ */
+public static void testRoundTrip() throws IOException
+{
+    // Write puppet to binary file
+    Puppet puppet = getPuppet();
+    PuppetBinary.write(puppet);
+    assertTrue(PuppetBinary.getBinaryFile(puppet).isFile(), "Binary file not written");
+    
+    // Read into new puppet
+    Puppet puppet2 = new Puppet(); puppet2.setName("Test");
+    assertTrue(PuppetBinary.isBinaryFileCurrent(puppet2), "Binary file not current");
+    assertTrue(PuppetBinary.read(puppet2), "Binary file not read");
+    assertEquals(puppet.getSourceRelPath(), puppet2.getSourceRelPath(), "Source path");
+    
+    // Compare parts and images
+    for(String name : new String[] { PuppetSchema.Torso, PuppetSchema.Head }) {
+        PuppetPart part = puppet.getPart(name), part2 = puppet2._parts[puppet2.getSchema().getPartId(name)];
+        assertTrue(part2 instanceof PuppetBinary.BinaryPart, "Part not read: " + name);
+        assertTrue(part2.getX()==part.getX() && part2.getY()==part.getY() && part2.getWidth()==part.getWidth() &&
+            part2.getHeight()==part.getHeight(), "Part bounds: " + name);
+        assertBytes(part.getImage().getBytesRGBA(), part2.getImage().getBytesRGBA(), "Part image: " + name);
+    }
+    
+    // Compare joints
+    PuppetJoint joint = puppet2.getJoint(PuppetSchema.Head_Joint);
+    assertTrue(joint!=null && joint.getX()==12.5 && joint.getY()==-4, "Joint: " + joint);
+}
+
+/**
+ * Tests that binary file isn't read if a part image file changed since it was written.
+ */
+public static void testStaleImage() throws IOException
+{
+    // Write part image file, then binary file
+    Puppet puppet = getPuppet();
+    File ifile = puppet.getPart(PuppetSchema.Torso).getImageURL().getJavaFile();
+    SnapUtils.writeBytes(puppet.getPart(PuppetSchema.Torso).getImage().getBytesPNG(), ifile);
+    PuppetBinary.write(puppet);
+    
+    // Check binary file is read, then change image file and check it isn't
+    Puppet puppet2 = new Puppet(); puppet2.setName("Test");
+    assertTrue(PuppetBinary.read(puppet2), "Binary file not read");
+    try (OutputStream out = new FileOutputStream(ifile, true)) { out.write(0); }
+    Puppet puppet3 = new Puppet(); puppet3.setName("Test");
+    assertTrue(!PuppetBinary.read(puppet3), "Binary file read with stale image");
+    assertTrue(puppet3._parts[puppet3.getSchema().getPartId(PuppetSchema.Torso)]==null, "Stale part set");
+}
+
+/**
+ * Tests that a truncated binary file isn't read.
+ */
+public static void testTruncated() throws IOException
+{
+    // Write binary file and truncate
+    Puppet puppet = getPuppet();
+    PuppetBinary.write(puppet);
+    File file = PuppetBinary.getBinaryFile(puppet);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { raf.setLength(file.length() - 10); }
+    
+    // Check it isn't read
+    Puppet puppet2 = new Puppet(); puppet2.setName("Test");
+    assertTrue(!PuppetBinary.read(puppet2), "Truncated binary file read");
+}
+
+/**
+ * Returns a puppet with Torso and Head parts and a joint, with source in a new temp dir.
+ */
+static Puppet getPuppet() throws IOException
+{
+    // Set root to temp dir and create puppet dir
+    PuppetUtils.ROOT = getTempDir().getPath() + File.separator;
+    Puppet puppet = new Puppet(); puppet.setName("Test");
+    puppet.getSourceDirURL().getJavaFile().mkdirs();
+    
+    // Add parts and joint
+    puppet.setPart(new PuppetPart(PuppetSchema.Torso, getImage(Color.RED), 10, 20, 30, 40));
+    puppet.setPart(new PuppetPart(PuppetSchema.Head, getImage(Color.BLUE), -5.5, 60, 20, 20));
+    puppet.setJoint(new PuppetJoint(PuppetSchema.Head_Joint, 12.5, -4));
+    return puppet;
+}
+
+/**
+ * Returns a 20x20 image with a square of given color.
+ */
+static Image getImage(Color aColor)
+{
+    Image img = Image.getImageForSizeAndScale(20, 20, true, 1);
+    Painter pntr = img.getPainter(); pntr.setColor(aColor); pntr.fillRect(5, 5, 10, 10);
+    return img;
+}
+
+}
@@ -0,0 +1,68 @@
+package puppets.puppet;
+import java.util.*;
+import snap.gfx.Image;
+import snap.util.Loadable;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetCache eviction.
+ */
+public class PuppetCacheTest {
+
+/**
+ * Tests that least recently used puppets are evicted when cache is over max size, unless pinned or parent.
+ */
+public static void testEviction()
+{
+    // Add two puppets (400 bytes each) to cache with room for two
+    long maxSize = PuppetCache.getMaxSize(); PuppetCache.setMaxSize(1000);
+    List <PuppetUtils.PuppetEntry> entries = new ArrayList();
+    try {
+        PuppetUtils.PuppetEntry e1 = add(entries, null), e2 = add(entries, null);
+        assertEquals(800L, PuppetCache.getSize(), "Cache size");
+    
+        // Touch first and add third: second (least recently used) is evicted
+        PuppetCache.touch(e1);
+        PuppetUtils.PuppetEntry e3 = add(entries, null);
+        assertTrue(e1.isLoaded() && !e2.isLoaded() && e3.isLoaded(), "Least recently used not evicted");
+        assertEquals(800L, PuppetCache.getSize(), "Cache size after eviction");
+    
+        // Pin first (now least recently used) and add fourth: third is evicted instead
+        e1._puppet.pin();
+        PuppetUtils.PuppetEntry e4 = add(entries, null);
+        assertTrue(e1.isLoaded() && !e3.isLoaded() && e4.isLoaded(), "Pinned puppet evicted");
+    
+        // Unpin first and shrink cache: first is evicted
+        e1._puppet.unpin();
+        PuppetCache.setMaxSize(400);
+        assertTrue(!e1.isLoaded() && e4.isLoaded(), "Unpinned puppet not evicted");
+        assertEquals(1, PuppetCache.getCount(), "Cache count after shrink");
+    
+        // Add parent and child and shrink cache: parent of cached child isn't evicted
+        PuppetUtils.PuppetEntry e5 = add(entries, null), e6 = add(entries, e5._puppet);
+        PuppetCache.touch(e4);
+        PuppetCache.setMaxSize(0);
+        assertTrue(e5.isLoaded() && !e6.isLoaded() && !e4.isLoaded(), "Parent puppet evicted");
+    }
+    
+    // Remove entries and restore max size
+    finally {
+        for(PuppetUtils.PuppetEntry entry : entries) PuppetCache.remove(entry);
+        PuppetCache.setMaxSize(maxSize);
+    }
+}
+
+/**
+ * Adds entry to cache with new loaded puppet (with given parent and 10x10 torso image) and returns it.
+ */
+static PuppetUtils.PuppetEntry add(List <PuppetUtils.PuppetEntry> theEntries, Puppet aParent)
+{
+    Puppet puppet = new Puppet(aParent) { protected Loadable getLoadable()  { return null; } };
+    puppet.setPart(new PuppetPart(PuppetSchema.Torso, Image.getImageForSizeAndScale(10, 10, true, 1), 0, 0));
+    PuppetUtils.PuppetEntry entry = new PuppetUtils.PuppetEntry(); entry._puppet = puppet;
+    theEntries.add(entry);
+    PuppetCache.add(entry, puppet);
+    return entry;
+}
+
+}
@@ -0,0 +1,94 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetFitCache file (.fits).
+ */
+public class PuppetFitCacheTest {
+
+/**
+ * Tests that fits written to cache file are read back with same key and poses.
+ */
+public static void testRoundTrip() throws IOException
+{
+    // Create cache with fit for puppet in temp dir (some markers set, others left unset)
+    Puppet puppet = getPuppet();
+    PackedPose pose = new PackedPose(); pose.setXY(0, 1.5, -2.25); pose.setXY(2, 100, 200);
+    PuppetFitCache cache = new PuppetFitCache(puppet); cache._read = true;
+    cache._fits.put("Walk", new PuppetActionFit(puppet, 0x1234abcdL, new PackedPose[] { pose, new PackedPose() }));
+    cache._dirty = true;
+    cache.writeCache();
+    assertTrue(cache.getCacheFile().isFile(), "Cache file not written");
+    
+    // Read into new cache and compare
+    PuppetFitCache cache2 = new PuppetFitCache(puppet);
+    PuppetActionFit fit = cache2.getFitForName("Walk");
+    assertTrue(fit!=null, "Fit not read");
+    assertEquals(0x1234abcdL, fit.getKey(), "Fit key");
+    assertEquals(2, fit.getPoseCount(), "Fit pose count");
+    assertTrue(Arrays.equals(pose.getCoords(), fit.getPose(0).getCoords()), "Fit pose coords differ");
+    assertTrue(!fit.getPose(1).isSet(0), "Unset marker read as set");
+}
+
+/**
+ * Tests that a truncated cache file is ignored.
+ */
+public static void testTruncated() throws IOException
+{
+    // Write cache file
+    Puppet puppet = getPuppet();
+    PuppetFitCache cache = new PuppetFitCache(puppet); cache._read = true;
+    cache._fits.put("Walk", new PuppetActionFit(puppet, 1, new PackedPose[] { new PackedPose() }));
+    cache._dirty = true;
+    cache.writeCache();
+    
+    // Truncate file and read into new cache
+    File file = cache.getCacheFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { raf.setLength(file.length() - 8); }
+    assertTrue(new PuppetFitCache(puppet).getFitForName("Walk")==null, "Truncated fit was read");
+}
+
+/**
+ * Tests that fitActionsLater gets actions from list on loader threads (so lazy lists decode them there) and fits all.
+ */
+public static void testFitLater() throws IOException
+{
+    // Set reference puppet and create list that records threads that get actions
+    String path = TestPuppets.setReferencePuppet(getTempDir(), TestPuppets.getPuppet("Ref", 1));
+    try {
+        List <PuppetAction> actions = Arrays.asList(TestPuppets.getAction("Wave", 2), TestPuppets.getAction("Jump", 3));
+        Set <Thread> threads = Collections.synchronizedSet(new HashSet());
+        List <PuppetAction> list = new AbstractList <PuppetAction>() {
+            public PuppetAction get(int anIndex)  { threads.add(Thread.currentThread()); return actions.get(anIndex); }
+            public int size()  { return actions.size(); }
+        };
+    
+        // Fit actions later and check list wasn't read on calling thread and all actions were fit
+        Puppet puppet = TestPuppets.getPuppet("Test", 1.2);
+        puppet.setSource(new File(getTempDir(), "Test.pup").getPath());
+        CompletableFuture <Void> future = puppet.getFitCache().fitActionsLater(list);
+        assertTrue(!threads.contains(Thread.currentThread()), "Actions read on calling thread");
+        future.join();
+        assertTrue(!threads.contains(Thread.currentThread()), "Actions read on calling thread");
+        for(PuppetAction action : actions) { PuppetActionFit fit = puppet.getFitCache().getFitForName(action.getName());
+            assertTrue(fit!=null && fit.isValid(action), "Action not fit: " + action.getName()); }
+    }
+    
+    // Restore puppet file
+    finally { TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Returns a puppet with source in a new temp dir.
+ */
+static Puppet getPuppet() throws IOException
+{
+    Puppet puppet = new Puppet(); puppet.setName("Test");
+    puppet.setSource(new File(getTempDir(), "Test.pup").getPath());
+    return puppet;
+}
+
+}
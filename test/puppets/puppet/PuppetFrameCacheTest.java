@@ -0,0 +1,133 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import snap.geom.Insets;
+import snap.gfx.*;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetFrameCache file (.frames).
+ */
+public class PuppetFrameCacheTest {
+
+/**
+ * Tests that frames written to cache are read back with same size and pixels.
+ */
+public static void testRoundTrip() throws IOException
+{
+    // Write frames to cache in temp dir
+    setCacheDir();
+    List <Image> frames = Arrays.asList(getFrame(Color.RED, 0), getFrame(Color.BLUE, 4));
+    PuppetFrameCache.putFrames("0123456789abcdef", frames);
+    
+    // Read frames and compare
+    List <Image> frames2 = PuppetFrameCache.getFrames("0123456789abcdef", 20, 16);
+    assertTrue(frames2!=null, "Frames not read");
+    assertEquals(frames.size(), frames2.size(), "Frame count");
+    for(int i=0;i<frames.size();i++) { Image img = frames.get(i), img2 = frames2.get(i);
+        assertEquals(img.getPixWidth(), img2.getPixWidth(), "Frame width");
+        assertEquals(img.getPixHeight(), img2.getPixHeight(), "Frame height");
+        assertBytes(img.getBytesRGBA(), img2.getBytesRGBA(), "Frame " + i + " pixels");
+    }
+    assertTrue(!Arrays.equals(frames2.get(0).getBytesRGBA(), frames2.get(1).getBytesRGBA()), "Frames read the same");
+    
+    // Check that different frame size or key isn't found
+    assertTrue(PuppetFrameCache.getFrames("0123456789abcdef", 10, 8)==null, "Frames read for wrong size");
+    assertTrue(PuppetFrameCache.getFrames("fedcba9876543210", 20, 16)==null, "Frames read for wrong key");
+}
+
+/**
+ * Tests that repeated frames are written once and read back as the same image.
+ */
+public static void testRepeats() throws IOException
+{
+    // Write frames with repeats to cache in temp dir
+    setCacheDir();
+    Image img0 = getFrame(Color.RED, 0), img1 = getFrame(Color.BLUE, 8);
+    PuppetFrameCache.putFrames("00000000000000ff", Arrays.asList(img0, img0, img0, img1, img1));
+    File file = new File(PuppetFrameCache.getCacheDir(), "00000000000000ff.frames");
+    long size = file.length();
+    
+    // Check repeats only cost a marker in file
+    PuppetFrameCache.putFrames("00000000000000fe", Arrays.asList(img0, img1));
+    File file2 = new File(PuppetFrameCache.getCacheDir(), "00000000000000fe.frames");
+    assertEquals(file2.length() + 3*4, size, "File size with repeats");
+    
+    // Read frames and check repeats are same image
+    List <Image> frames = PuppetFrameCache.getFrames("00000000000000ff", 20, 16);
+    assertTrue(frames!=null, "Frames not read");
+    assertEquals(5, frames.size(), "Frame count");
+    assertTrue(frames.get(1)==frames.get(0) && frames.get(2)==frames.get(0), "Repeats of frame 0 not same image");
+    assertTrue(frames.get(4)==frames.get(3) && frames.get(3)!=frames.get(0), "Repeat of frame 3 not same image");
+    assertBytes(img1.getBytesRGBA(), frames.get(4).getBytesRGBA(), "Repeated frame pixels");
+}
+
+/**
+ * Tests that bad cache files (truncated, bad frame length or repeat of no frame) aren't read and are deleted.
+ */
+public static void testBadFile() throws IOException
+{
+    // Write frames, truncate file and check it isn't read and is deleted
+    setCacheDir();
+    PuppetFrameCache.putFrames("00000000000000aa", Arrays.asList(getFrame(Color.RED, 0), getFrame(Color.BLUE, 4)));
+    File file = new File(PuppetFrameCache.getCacheDir(), "00000000000000aa.frames");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { raf.setLength(file.length() - 8); }
+    assertTrue(PuppetFrameCache.getFrames("00000000000000aa", 20, 16)==null, "Truncated frames were read");
+    assertTrue(!file.exists(), "Truncated file not deleted");
+    
+    // Write file with bad frame length and with repeat as first frame and check neither is read
+    for(int len : new int[] { -2, -1 }) {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(PuppetFrameCache.MAGIC); out.writeInt(PuppetFrameCache.VERSION);
+            out.writeInt(20); out.writeInt(16); out.writeDouble(1); out.writeInt(1); out.writeInt(len);
+        }
+        assertTrue(PuppetFrameCache.getFrames("00000000000000aa", 20, 16)==null, "Bad frame length " + len + " read");
+        assertTrue(!file.exists(), "File with bad frame length " + len + " not deleted");
+    }
+    
+    // Check no temp files are left in cache dir
+    assertEquals(0, PuppetFrameCache.getCacheDir().listFiles((d,n) -> n.endsWith(".tmp")).length, "Temp files");
+}
+
+/**
+ * Tests that frame key changes when reference puppet (that action poses are fit against) changes.
+ */
+public static void testKeyForReference() throws IOException
+{
+    // Get key for puppet and action with reference puppet
+    Puppet puppet = TestPuppets.getPuppet("Test", 1);
+    PuppetAction action = TestPuppets.getAction("Wave", 3);
+    String path = TestPuppets.setReferencePuppet(getTempDir(), TestPuppets.getPuppet("Ref", 1));
+    try {
+        String key = PuppetFrameCache.getKey(puppet, action, 200, new Insets(5), 1, 4);
+        assertEquals(key, PuppetFrameCache.getKey(puppet, action, 200, new Insets(5), 1, 4), "Key for same reference");
+    
+        // Change reference puppet (move shoulder) and check key changes
+        Puppet ref2 = TestPuppets.getPuppet("Ref2", 1);
+        ref2.setJoint(new PuppetJoint(PuppetSchema.RArm_Joint, -60, 400));
+        TestPuppets.resetReferencePuppet(path);
+        path = TestPuppets.setReferencePuppet(getTempDir(), ref2);
+        String key2 = PuppetFrameCache.getKey(puppet, action, 200, new Insets(5), 1, 4);
+        assertTrue(!key.equals(key2), "Key same for different reference puppet");
+    }
+    
+    // Restore puppet file
+    finally { TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Sets cache dir to new temp dir.
+ */
+static void setCacheDir() throws IOException  { PuppetUtils.ROOT = getTempDir().getPath() + File.separator; }
+
+/**
+ * Returns a 20x16 frame with a 4x4 square of given color at given x.
+ */
+static Image getFrame(Color aColor, double aX)
+{
+    Image img = Image.getImageForSizeAndScale(20, 16, true, 1);
+    Painter pntr = img.getPainter(); pntr.setColor(aColor); pntr.fillRect(aX, 2, 4, 4);
+    return img;
+}
+
+}
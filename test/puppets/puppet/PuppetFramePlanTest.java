@@ -0,0 +1,122 @@
+package puppets.puppet;
+import java.io.*;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetFramePlan.
+ */
+public class PuppetFramePlanTest {
+
+    // The time between frames (in millis)
+    static final int STEP = PuppetImager.FRAME_DELAY_MILLIS;
+
+/**
+ * Tests that frames are only repeated when their pose is within tolerance of rendered frame pose.
+ */
+public static void testRepeats() throws Exception
+{
+    // Set root to temp dir (for fit cache) and set reference puppet
+    String root = PuppetUtils.ROOT; File dir = getTempDir();
+    PuppetUtils.ROOT = dir.getPath() + File.separator;
+    String path = TestPuppets.setReferencePuppet(dir, TestPuppets.getPuppet("Ref", 1));
+    try {
+    
+        // Get plan for action that holds first pose and check frames match rendered frames
+        PuppetActionFit fit = new PuppetActionFit(TestPuppets.getPuppet("Test", 1.2), getAction());
+        double scale = PuppetView.getScaleForHeight(PuppetImager.DEFAULT_HEIGHT);
+        int frameCount = fit.getAction().getMaxTime()/STEP + 1;
+        PuppetFramePlan plan = new PuppetFramePlan(fit, scale, frameCount, STEP, PuppetFramePlan.DEFAULT_TOLERANCE);
+        assertPlan(plan, fit, scale, PuppetFramePlan.DEFAULT_TOLERANCE, Integer.MAX_VALUE);
+        
+        // Check frames during hold repeat first frame (and moving frames don't)
+        for(int i=0;i<=400/STEP;i++)
+            assertEquals(0, plan.getKeyFrame(i), "Key frame for held frame " + i);
+        assertTrue(plan.isKeyFrame(400/STEP + 2), "Moving frame repeated");
+        
+        // Check zero tolerance plan renders every frame whose pose changed from last rendered pose
+        PuppetFramePlan plan0 = new PuppetFramePlan(fit, scale, frameCount, STEP, 0);
+        assertPlan(plan0, fit, scale, 0, Integer.MAX_VALUE);
+        PackedPose pose = new PackedPose(), keyPose = new PackedPose();
+        for(int i=0;i<frameCount;i++) { fit.getPoseForTime(i*STEP, scale, pose);
+            boolean changed = i==0 || pose.getMaxDistance(keyPose)>0;
+            assertEquals(changed, plan0.isKeyFrame(i), "Key frame " + i + " for zero tolerance");
+            if(changed) keyPose.setPose(pose);
+        }
+    }
+    
+    // Restore root and puppet file
+    finally { PuppetUtils.ROOT = root; TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Tests that adaptive sampling skips slow motion up to threshold and max interval, but renders fast motion.
+ */
+public static void testAdaptive() throws Exception
+{
+    // Set root to temp dir (for fit cache) and set reference puppet
+    String root = PuppetUtils.ROOT; File dir = getTempDir();
+    PuppetUtils.ROOT = dir.getPath() + File.separator;
+    String path = TestPuppets.setReferencePuppet(dir, TestPuppets.getPuppet("Ref", 1));
+    try {
+    
+        // Get default and adaptive plans and check adaptive plan frames match rendered frames
+        PuppetActionFit fit = new PuppetActionFit(TestPuppets.getPuppet("Test", 1.2), getAction());
+        double scale = PuppetView.getScaleForHeight(PuppetImager.DEFAULT_HEIGHT), tol = 2; int maxInterval = 150;
+        int frameCount = fit.getAction().getMaxTime()/STEP + 1;
+        PuppetFramePlan plan = new PuppetFramePlan(fit, scale, frameCount, STEP, PuppetFramePlan.DEFAULT_TOLERANCE);
+        PuppetFramePlan plan2 = new PuppetFramePlan(fit, scale, frameCount, STEP, tol, maxInterval);
+        assertPlan(plan2, fit, scale, tol, maxInterval);
+        assertTrue(plan2.getKeyFrameCount()<plan.getKeyFrameCount(), "Adaptive plan didn't skip frames");
+        
+        // Check frames that move more than threshold from previous frame are rendered (fast motion)
+        PackedPose pose = new PackedPose(), lastPose = new PackedPose(); int fastCount = 0;
+        for(int i=0;i<frameCount;i++) { fit.getPoseForTime(i*STEP, scale, pose);
+            if(i>0 && pose.getMaxDistance(lastPose)>tol) { fastCount++;
+                assertTrue(plan2.isKeyFrame(i), "Fast frame " + i + " not rendered"); }
+            lastPose.setPose(pose);
+        }
+        assertTrue(fastCount>0, "No fast frames in action");
+        
+        // Check hold is rendered again after max interval
+        assertTrue(plan2.isKeyFrame((maxInterval + STEP - 1)/STEP), "Hold not rendered at max interval");
+    }
+    
+    // Restore root and puppet file
+    finally { PuppetUtils.ROOT = root; TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Returns an action that holds first pose for 400 millis, then moves quickly and then slowly.
+ */
+static PuppetAction getAction()
+{
+    PuppetAction wave = TestPuppets.getAction("Wave", 3), action = new PuppetAction("Test");
+    int times[] = { 400, 300, 3000, 0 }, moves[] = { 0, 0, 1, 2 };
+    for(int i=0;i<times.length;i++) {
+        PuppetPose pose = wave.getMove(moves[i]).getPose().clone(); pose.setName("Pose" + moves[i]);
+        action.addMove(new PuppetMove(pose, times[i]));
+    }
+    return action;
+}
+
+/**
+ * Checks that plan frames are within tolerance of their rendered frame, no more than max interval from it and that
+ * rendered frame durations add up to frames.
+ */
+static void assertPlan(PuppetFramePlan aPlan, PuppetActionFit aFit, double aScale, double aTol, int aMaxInterval)
+{
+    PackedPose pose = new PackedPose(), keyPose = new PackedPose();
+    int duration = 0, keyCount = 0;
+    for(int i=0, iMax=aPlan.getFrameCount();i<iMax;i++) { int key = aPlan.getKeyFrame(i);
+        assertTrue(key<=i && aPlan.isKeyFrame(key), "Frame " + i + " shows bad key frame " + key);
+        if(key==i) { duration += aPlan.getDuration(i); keyCount++; }
+        aFit.getPoseForTime(i*STEP, aScale, pose); aFit.getPoseForTime(key*STEP, aScale, keyPose);
+        double dist = pose.getMaxDistance(keyPose);
+        assertTrue(dist<=aTol, "Frame " + i + " is " + dist + " from key frame " + key);
+        assertTrue((i - key)*STEP<aMaxInterval, "Frame " + i + " is too long after key frame " + key);
+    }
+    assertEquals(aPlan.getKeyFrameCount(), keyCount, "Key frame count");
+    assertEquals(aPlan.getFrameCount()*STEP, duration, "Total duration");
+}
+
+}
@@ -0,0 +1,86 @@
+package puppets.puppet;
+import java.io.*;
+import snap.geom.Insets;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetFrameStream.
+ */
+public class PuppetFrameStreamTest {
+
+/**
+ * Tests that stream renders buffer ahead of cursor, drops frames cursor moved past and wraps buffer when looping.
+ */
+public static void testBuffer() throws Exception
+{
+    // Set root to temp dir (for fit cache) and set reference puppet
+    String root = PuppetUtils.ROOT; File dir = getTempDir();
+    PuppetUtils.ROOT = dir.getPath() + File.separator;
+    String path = TestPuppets.setReferencePuppet(dir, TestPuppets.getPuppet("Ref", 1));
+    try {
+    
+        // Create stream with buffer of 5 and check first frames are rendered
+        Puppet puppet = TestPuppets.getPuppet("Test", 1.2);
+        PuppetFrameStream stream = new PuppetFrameStream(puppet, TestPuppets.getAction("Wave", 3), .5, new Insets(5),
+            5, false);
+        int count = stream.getFrameCount();
+        assertEquals(21, count, "Frame count");
+        waitForFill(stream);
+        assertReady(stream, 0, 5, "Start");
+        assertEquals(5, stream.getRenderCount(), "Render count at start");
+        
+        // Move cursor and check frames behind cursor are dropped and only new frames are rendered
+        stream.setCursor(3); waitForFill(stream);
+        assertReady(stream, 3, 8, "Cursor 3");
+        assertTrue(!stream.isFrameReady(0) && !stream.isFrameReady(2), "Frames behind cursor not dropped");
+        assertEquals(8, stream.getRenderCount(), "Render count at cursor 3");
+        
+        // Move cursor near end and check buffer stops at end (frames behind cursor are dropped as slots are needed)
+        stream.setCursor(18); waitForFill(stream);
+        assertReady(stream, 18, 21, "Cursor 18");
+        assertEquals(11, stream.getRenderCount(), "Render count at cursor 18");
+        
+        // Turn on looping and check buffer wraps around to start
+        stream.setLooping(true); waitForFill(stream);
+        for(int i=18;i<23;i++) assertTrue(stream.isFrameReady(i%count), "Looping frame " + i%count + " not ready");
+        assertReady(stream, 18, 21, "Looping");
+        assertEquals(13, stream.getRenderCount(), "Render count when looping");
+        
+        // Create stream that keeps frames and check frames cursor moved past are kept (and not rendered again)
+        PuppetFrameStream stream2 = new PuppetFrameStream(puppet, TestPuppets.getAction("Wave", 3), .5, new Insets(5),
+            5, true);
+        waitForFill(stream2);
+        stream2.setCursor(10); waitForFill(stream2);
+        for(int i=0;i<count;i++)
+            assertEquals(i<5 || i>=10 && i<15, stream2.isFrameReady(i), "Kept frame " + i + " ready");
+        stream2.setCursor(2); waitForFill(stream2);
+        assertEquals(12, stream2.getRenderCount(), "Render count when keeping frames");
+    }
+    
+    // Restore root and puppet file
+    finally { PuppetUtils.ROOT = root; TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Waits for stream to finish rendering frames ahead of cursor.
+ */
+static void waitForFill(PuppetFrameStream aStream) throws InterruptedException
+{
+    for(long end = System.currentTimeMillis() + 60000; System.currentTimeMillis()<end; Thread.sleep(5)) {
+        synchronized (aStream) { if(!aStream._filling) break; } }
+    assertTrue(!aStream.isFailed(), "Stream failed: " + aStream.getError());
+}
+
+/**
+ * Checks that frames from start to end index are ready and no more frames than buffer size are held.
+ */
+static void assertReady(PuppetFrameStream aStream, int aStart, int anEnd, String aMsg)
+{
+    int readyCount = 0;
+    for(int i=0, iMax=aStream.getFrameCount(); i<iMax; i++) { boolean ready = aStream.isFrameReady(i);
+        if(i>=aStart && i<anEnd) assertTrue(ready, aMsg + " frame " + i + " not ready");
+        if(ready) readyCount++; }
+    assertTrue(readyCount<=aStream.getBufferSize(), aMsg + " holds " + readyCount + " frames");
+}
+
+}
@@ -0,0 +1,67 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import snap.geom.Insets;
+import snap.gfx.*;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetImager.
+ */
+public class PuppetImagerTest {
+
+/**
+ * Tests that image has ImageSet with a frame for every frame when baked, read from frame cache or baked to atlas.
+ */
+public static void testImageSet() throws Exception
+{
+    // Set root to temp dir (for frame and fit caches) and set reference puppet
+    String root = PuppetUtils.ROOT; File dir = getTempDir();
+    PuppetUtils.ROOT = dir.getPath() + File.separator;
+    String path = TestPuppets.setReferencePuppet(dir, TestPuppets.getPuppet("Ref", 1));
+    try {
+    
+        // Bake images and check image set
+        Puppet puppet = TestPuppets.getPuppet("Test", 1.2);
+        PuppetAction action = TestPuppets.getAction("Wave", 3);
+        PuppetImager imager = getImager(puppet, action, false);
+        assertTrue(!imager.isCached(), "Images read from empty frame cache");
+        assertImageSet(imager);
+    
+        // Read images from frame cache and check image set
+        PuppetImager imager2 = getImager(puppet, action, false);
+        assertTrue(imager2.isCached(), "Images not read from frame cache");
+        assertImageSet(imager2);
+    
+        // Bake images to atlas and check image set
+        PuppetImager imager3 = getImager(puppet, action, true);
+        assertTrue(imager3.getAtlas()!=null, "Atlas not created");
+        assertImageSet(imager3);
+    }
+    
+    // Restore root and puppet file
+    finally { PuppetUtils.ROOT = root; TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Returns a new imager for given puppet, action and whether to render atlas, once it is done.
+ */
+static PuppetImager getImager(Puppet aPuppet, PuppetAction anAction, boolean doAtlas) throws Exception
+{
+    PuppetImager imager = new PuppetImager(aPuppet, anAction, .5, new Insets(5), doAtlas);
+    imager.getFuture().get(60, TimeUnit.SECONDS);
+    return imager;
+}
+
+/**
+ * Checks that imager image has ImageSet with imager frames.
+ */
+static void assertImageSet(PuppetImager anImager)
+{
+    ImageSet iset = anImager.getImage().getImageSet();
+    assertTrue(iset!=null, "No ImageSet for image");
+    assertEquals(anImager.getFrameCount(), iset.getCount(), "ImageSet count");
+    assertTrue(iset.getImage(0)==anImager.getImage(), "ImageSet first image isn't image");
+}
+
+}
@@ -0,0 +1,52 @@
+package puppets.puppet;
+import java.io.*;
+import snap.util.SnapUtils;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetManifest file (.hashes).
+ */
+public class PuppetManifestTest {
+
+/**
+ * Tests that manifest entries are read back with same hash and that changed image files aren't current.
+ */
+public static void testRoundTrip() throws IOException
+{
+    // Write image files and record them in manifest (one hash has high bit set)
+    File dir = getTempDir(), file = new File(dir, "Test" + PuppetManifest.EXT);
+    File torso = new File(dir, "Torso.png"), head = new File(dir, "Head.png");
+    byte bytes[] = { 1, 2, 3, 4 };
+    SnapUtils.writeBytes(bytes, torso); SnapUtils.writeBytes(new byte[] { 5, 6 }, head);
+    PuppetManifest manifest = new PuppetManifest(file);
+    manifest.put("Torso", PuppetManifest.getHash(bytes), torso);
+    manifest.put("Head", 0x8000000000000001L, head);
+    manifest.save();
+    assertTrue(file.isFile(), "Manifest not written");
+    
+    // Read into new manifest and compare
+    PuppetManifest manifest2 = new PuppetManifest(file);
+    assertEquals(PuppetManifest.getHash(bytes), manifest2.getHash("Torso"), "Torso hash");
+    assertEquals(0x8000000000000001L, manifest2.getHash("Head"), "Head hash");
+    assertTrue(manifest2.isCurrent("Torso", torso) && manifest2.isCurrent("Head", head), "Image files not current");
+    assertTrue(!manifest2.hasEntry("RArm") && !manifest2.isCurrent("RArm", torso), "Missing entry found");
+    
+    // Change image file and check it isn't current
+    SnapUtils.writeBytes(new byte[] { 1, 2, 3, 4, 5 }, torso);
+    assertTrue(!new PuppetManifest(file).isCurrent("Torso", torso), "Changed image file is current");
+}
+
+/**
+ * Tests that bad manifest lines are ignored.
+ */
+public static void testBadLines() throws IOException
+{
+    File file = new File(getTempDir(), "Test" + PuppetManifest.EXT);
+    SnapUtils.writeBytes("Torso\t1f\t4\t1000\nHead\tzz\t2\t1000\nRArm\t2f\nLArm\t3f\t5\t2000\n".getBytes(), file);
+    PuppetManifest manifest = new PuppetManifest(file);
+    assertEquals(0x1fL, manifest.getHash("Torso"), "Torso hash");
+    assertEquals(0x3fL, manifest.getHash("LArm"), "LArm hash");
+    assertTrue(!manifest.hasEntry("Head") && !manifest.hasEntry("RArm"), "Bad line read");
+}
+
+}
@@ -0,0 +1,94 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+
+/**
+ * A class to run puppet tests from a main method with simple assert and temp dir helpers (so tests don't need a
+ * test library).
+ */
+public class PuppetTests {
+
+    // The number of tests run and failed
+    static int          _runCount, _failCount;
+    
+    // The temp dirs created by tests (deleted on exit)
+    static List <File>  _tempDirs = new ArrayList();
+
+/**
+ * Runs given test and reports if it fails.
+ */
+public static void run(String aName, Test aTest)
+{
+    _runCount++;
+    try { aTest.run(); System.out.println("PASS " + aName); }
+    catch(Throwable e) { _failCount++; System.out.println("FAIL " + aName + ": " + e); e.printStackTrace(System.out); }
+}
+
+/**
+ * Returns the number of tests that failed.
+ */
+public static int getFailCount()  { return _failCount; }
+
+/**
+ * Returns a new temp dir (deleted on exit).
+ */
+public static File getTempDir() throws IOException
+{
+    File dir = File.createTempFile("PuppetTest", ""); dir.delete(); dir.mkdirs();
+    _tempDirs.add(dir);
+    return dir;
+}
+
+/**
+ * Deletes temp dirs created by tests.
+ */
+public static void deleteTempDirs()
+{
+    for(File dir : _tempDirs) delete(dir);
+    _tempDirs.clear();
+}
+
+/**
+ * Deletes given file (and its children, if dir).
+ */
+static void delete(File aFile)
+{
+    File files[] = aFile.listFiles();
+    if(files!=null) for(File file : files) delete(file);
+    aFile.delete();
+}
+
+/**
+ * Throws if given value isn't true.
+ */
+public static void assertTrue(boolean aValue, String aMsg)
+{
+    if(!aValue) throw new AssertionError(aMsg);
+}
+
+/**
+ * Throws if given objects aren't equal.
+ */
+public static void assertEquals(Object anExp, Object aVal, String aMsg)
+{
+    if(!Objects.equals(anExp, aVal)) throw new AssertionError(aMsg + ": expected " + anExp + " but was " + aVal);
+}
+
+/**
+ * Throws if given byte arrays aren't equal.
+ */
+public static void assertBytes(byte theExp[], byte theVals[], String aMsg)
+{
+    if(!Arrays.equals(theExp, theVals)) throw new AssertionError(aMsg + ": bytes differ");
+}
+
+/**
+ * An interface for a test.
+ */
+public interface Test {
+
+    /** Runs test. */
+    void run() throws Exception;
+}
+
+}
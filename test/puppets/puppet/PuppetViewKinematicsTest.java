@@ -0,0 +1,54 @@
+package puppets.puppet;
+import java.io.*;
+import snap.geom.Point;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for PuppetViewKinematics.
+ */
+public class PuppetViewKinematicsTest {
+
+/**
+ * Tests that kinematic posing places joints at pose points and near where physics posing resolves them.
+ */
+public static void testKinematicsMatchesPhysics() throws Exception
+{
+    // Set root to temp dir (for fit cache) and set reference puppet
+    String root = PuppetUtils.ROOT; File dir = getTempDir();
+    PuppetUtils.ROOT = dir.getPath() + File.separator;
+    String path = TestPuppets.setReferencePuppet(dir, TestPuppets.getPuppet("Ref", 1));
+    try {
+    
+        // Pose puppet view kinematically and check joints are at pose points for view puppet and scale
+        Puppet puppet = TestPuppets.getPuppet("Test", 1.2);
+        PuppetPose pose = TestPuppets.getAction("Wave", 3).getMove(1).getPose();
+        PuppetView kview = new PuppetView(puppet); kview.setPoseSmoothly(false);
+        kview.setPose(pose);
+        PuppetPose kpose = kview.getPose();
+        assertPose(pose.cloneForPuppetAtScale(puppet, kview.getScale()), kpose, .01, .01, "Kinematic");
+    
+        // Pose puppet view with physics and check joints are near kinematic joints (markers are only pulled to)
+        PuppetView pview = new PuppetView(puppet); pview.setPoseSmoothly(false);
+        pview.setPoseKinematic(false); pview.setPosable(true);
+        pview.setPose(pose);
+        assertPose(kpose, pview.getPose(), 1.5, 8, "Physics");
+    }
+    
+    // Restore root and puppet file
+    finally { PuppetUtils.ROOT = root; TestPuppets.resetReferencePuppet(path); }
+}
+
+/**
+ * Checks that each pose key point of given pose is within given tolerance (or marker tolerance) of expected pose.
+ */
+static void assertPose(PuppetPose aPose, PuppetPose aPose2, double aTol, double aMarkerTol, String aMsg)
+{
+    PuppetSchema schema = new PuppetSchema();
+    for(int i=0, iMax=schema.getPoseKeyCount(); i<iMax; i++) { String pkey = schema.getPoseKey(i);
+        Point p0 = aPose.getMarkerPoint(pkey), p1 = aPose2.getMarkerPoint(pkey);
+        double dist = p0.getDistance(p1), tol = schema.isMarkerName(pkey)? aMarkerTol : aTol;
+        assertTrue(dist<=tol, aMsg + " pose " + pkey + " off by " + dist);
+    }
+}
+
+}
@@ -0,0 +1,71 @@
+package puppets.puppet;
+import java.util.*;
+import snap.gfx.*;
+import static puppets.puppet.PuppetTests.*;
+
+/**
+ * Tests for SpriteAtlas.
+ */
+public class SpriteAtlasTest {
+
+/**
+ * Tests that packed frames are trimmed to opaque bounds, fit in their pages, don't overlap and keep their pixels.
+ */
+public static void testPacking()
+{
+    // Create frames (2x DPI) with opaque rect of random size and location (every seventh frame empty)
+    Random random = new Random(11);
+    List <Image> images = new ArrayList(); List <int[]> rects = new ArrayList();
+    SpriteAtlas.Builder builder = new SpriteAtlas.Builder(); builder.setMaxPageSize(100);
+    for(int i=0;i<40;i++) {
+        Image img = Image.getImageForSizeAndScale(40, 30, true, 2);
+        int w = 1 + random.nextInt(60), h = 1 + random.nextInt(50);
+        int rect[] = { random.nextInt(80 - w + 1), random.nextInt(60 - h + 1), w, h };
+        if(i%7==0) rect = null;
+        else { Painter pntr = img.getPainter(); pntr.setColor(new Color(i/40d, 1 - i/40d, .5));
+            pntr.fillRect(rect[0]/2d, rect[1]/2d, w/2d, h/2d); }
+        builder.addFrame(img, 20); images.add(img); rects.add(rect);
+    }
+    
+    // Build atlas and check multiple pages
+    SpriteAtlas atlas = builder.build();
+    assertEquals(40, atlas.getFrameCount(), "Frame count");
+    assertTrue(atlas.getPageCount()>1, "Frames not split across pages");
+    
+    // Iterate over frames and check trimmed rect, page bounds and pixels
+    for(int i=0;i<40;i++) { SpriteAtlas.Frame f = atlas.getFrame(i); int rect[] = rects.get(i);
+        if(rect==null) { assertTrue(f.getWidth()==0, "Empty frame " + i + " not empty"); continue; }
+        assertTrue(f.getOffsetX()*2==rect[0] && f.getOffsetY()*2==rect[1] && f.getWidth()*2==rect[2] &&
+            f.getHeight()*2==rect[3], "Frame " + i + " not trimmed to opaque bounds");
+        Image page = atlas.getPage(f.getPage());
+        int x = (int)Math.round(f.getX()*2), y = (int)Math.round(f.getY()*2);
+        assertTrue(x>=0 && y>=0 && x + rect[2]<=page.getPixWidth() && y + rect[3]<=page.getPixHeight(),
+            "Frame " + i + " outside page");
+        assertPixels(images.get(i), rect, page, x, y, "Frame " + i);
+    }
+    
+    // Check frames in same page don't overlap
+    for(int i=0;i<40;i++) { SpriteAtlas.Frame f0 = atlas.getFrame(i); if(f0.getWidth()==0) continue;
+        for(int j=i+1;j<40;j++) { SpriteAtlas.Frame f1 = atlas.getFrame(j);
+            if(f1.getWidth()==0 || f1.getPage()!=f0.getPage()) continue;
+            boolean overlap = f0.getX()<f1.getX() + f1.getWidth() && f1.getX()<f0.getX() + f0.getWidth() &&
+                f0.getY()<f1.getY() + f1.getHeight() && f1.getY()<f0.getY() + f0.getHeight();
+            assertTrue(!overlap, "Frames " + i + " and " + j + " overlap");
+        }
+    }
+}
+
+/**
+ * Checks that pixels of given rect in image match pixels at given location in page.
+ */
+static void assertPixels(Image anImage, int aRect[], Image aPage, int aX, int aY, String aMsg)
+{
+    byte src[] = anImage.getBytesRGBA(), dst[] = aPage.getBytesRGBA();
+    int sw = anImage.getPixWidth(), dw = aPage.getPixWidth();
+    for(int y=0;y<aRect[3];y++) for(int x=0;x<aRect[2];x++) for(int c=0;c<4;c++) {
+        int s = ((aRect[1] + y)*sw + aRect[0] + x)*4 + c, d = ((aY + y)*dw + aX + x)*4 + c;
+        if(src[s]!=dst[d]) { assertTrue(false, aMsg + " pixel " + x + "," + y + " doesn't match"); return; }
+    }
+}
+
+}
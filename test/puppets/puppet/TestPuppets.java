@@ -0,0 +1,106 @@
+package puppets.puppet;
+import java.io.*;
+import java.util.*;
+import snap.gfx.*;
+import snap.util.Loadable;
+
+/**
+ * A class to create synthetic human puppets and actions for tests (so tests don't need puppet files).
+ */
+public class TestPuppets {
+
+    // The joint names and rest locations of test puppet (puppet coords, y up)
+    static final Object  JOINTS[][] = {
+        { PuppetSchema.Anchor_Joint, 0, 250 }, { PuppetSchema.Head_Joint, 0, 450 },
+        { PuppetSchema.HeadTop_Joint, 0, 560 },
+        { PuppetSchema.RArm_Joint, -40, 430 }, { PuppetSchema.RArmMid_Joint, -60, 330 },
+        { PuppetSchema.RHand_Joint, -70, 240 }, { PuppetSchema.RHandEnd_Joint, -72, 200 },
+        { PuppetSchema.RLeg_Joint, -25, 250 }, { PuppetSchema.RLegMid_Joint, -30, 130 },
+        { PuppetSchema.RFoot_Joint, -32, 20 }, { PuppetSchema.RFootEnd_Joint, -60, 0 },
+        { PuppetSchema.LArm_Joint, 40, 430 }, { PuppetSchema.LArmMid_Joint, 60, 330 },
+        { PuppetSchema.LHand_Joint, 70, 240 }, { PuppetSchema.LHandEnd_Joint, 72, 200 },
+        { PuppetSchema.LLeg_Joint, 25, 250 }, { PuppetSchema.LLegMid_Joint, 30, 130 },
+        { PuppetSchema.LFoot_Joint, 32, 20 }, { PuppetSchema.LFootEnd_Joint, 60, 0 } };
+
+/**
+ * Returns a new loaded puppet with all schema joints (arms scaled out from shoulders by given scale) and a solid
+ * image part around the bone of each paint part.
+ */
+public static Puppet getPuppet(String aName, double anArmScale)
+{
+    // Create puppet that is always loaded
+    Puppet puppet = new Puppet() { protected Loadable getLoadable()  { return null; } };
+    puppet.setName(aName);
+    PuppetSchema schema = puppet.getSchema();
+    
+    // Add joints (scaling arm joints out from shoulder)
+    for(Object jnt[] : JOINTS) { String name = (String)jnt[0];
+        double x = ((Integer)jnt[1]).doubleValue(), y = ((Integer)jnt[2]).doubleValue();
+        if(name.startsWith("RArm") || name.startsWith("RHand") || name.startsWith("LArm") || name.startsWith("LHand")) {
+            double sx = name.startsWith("R")? -40 : 40;
+            x = sx + (x - sx)*anArmScale; y = 430 + (y - 430)*anArmScale; }
+        puppet.setJoint(new PuppetJoint(name, x, y));
+    }
+    
+    // Add part for each paint part around its bone (padded by 10)
+    for(int i=0, iMax=schema.getPaintPartCount(); i<iMax; i++) {
+        PuppetJoint j0 = puppet.getJoint(schema.getBoneJointId(i, 0));
+        PuppetJoint j1 = puppet.getJoint(schema.getBoneJointId(i, 1));
+        double x = Math.min(j0.getX(), j1.getX()) - 10, y = Math.min(j0.getY(), j1.getY()) - 10;
+        double w = Math.abs(j1.getX() - j0.getX()) + 20, h = Math.abs(j1.getY() - j0.getY()) + 20;
+        Image img = Image.getImageForSizeAndScale(Math.round(w), Math.round(h), true, 1);
+        Painter pntr = img.getPainter(); pntr.setColor(i%2==0? Color.RED : Color.BLUE);
+        pntr.fillRect(0, 0, img.getWidth(), img.getHeight());
+        puppet.setPart(new PuppetPart(schema.getPartName(i), img, x, y, w, h));
+    }
+    
+    // Return puppet
+    return puppet;
+}
+
+/**
+ * Returns a new action with given number of moves (each 250 millis) that swing arms and legs by pose index.
+ */
+public static PuppetAction getAction(String aName, int aCount)
+{
+    // Get reference pose (as defined by reference puppet at pose scale) and iterate over moves
+    PuppetAction action = new PuppetAction(aName);
+    Puppet ref = getPuppet("Ref", 1); PuppetSchema schema = ref.getSchema();
+    PackedPose refPose = ref.getPackedPose(500/ref.getBounds().height);
+    for(int m=0;m<aCount;m++) {
+    
+        // Rotate outer arm and leg joints around previous joint by angle for move
+        PackedPose pose = new PackedPose(); pose.setPose(refPose);
+        double ang = Math.toRadians(m%2==0? 20 : -20)*(m+1)/aCount, cos = Math.cos(ang), sin = Math.sin(ang);
+        for(int i=0, iMax=schema.getPoseKeyCount(); i<iMax; i++) { int j = schema.getNextPoseKeyIndex(i);
+            if(j<0 || schema.getPoseKey(i).startsWith("Head")) continue;
+            double dx = refPose.getX(j) - refPose.getX(i), dy = refPose.getY(j) - refPose.getY(i);
+            pose.setXY(j, pose.getX(i) + dx*cos - dy*sin, pose.getY(i) + dx*sin + dy*cos);
+        }
+    
+        // Add move
+        action.addMove(new PuppetMove(pose.toPose(), 250));
+    }
+    
+    // Return action
+    return action;
+}
+
+/**
+ * Sets puppet file to new file in given dir with given reference puppet (first puppet) and returns previous path.
+ */
+public static String setReferencePuppet(File aDir, Puppet aPuppet)
+{
+    PuppetUtils.PuppetFile pfile = PuppetUtils.getPuppetFile();
+    String path = pfile.getPath();
+    pfile.setPath(new File(aDir, "Puppets.xml").getPath());
+    pfile.getEntries().add(new PuppetUtils.PuppetEntry(aPuppet));
+    return path;
+}
+
+/**
+ * Restores puppet file to given path (as returned by setReferencePuppet).
+ */
+public static void resetReferencePuppet(String aPath)  { PuppetUtils.getPuppetFile().setPath(aPath); }
+
+}